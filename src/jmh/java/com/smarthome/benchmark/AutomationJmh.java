@@ -0,0 +1,64 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.sensors.LightSensor;
+import com.smarthome.util.EventLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link AutomationEngine#tick} over the rules of {@link RuleNetworkBenchmark}, whose
+ * conditions are all evaluated but never fire, with the linear loop and the compiled network,
+ * with and without per-rule profiling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutomationJmh {
+    @Param({"10", "100", "1000", "10000"})
+    int rules;
+
+    @Param({"false", "true"})
+    boolean compiled;
+
+    @Param({"false", "true"})
+    boolean profiling;
+
+    private AutomationEngine engine;
+
+    @Setup
+    public void setup() {
+        EventLog.setLevel(EventLog.Level.WARN);
+        Home home = new Home("Bench", "Addr");
+        for (int r = 0; r < RuleNetworkBenchmark.ROOMS; r++) {
+            Room room = new Room("Room " + r, "Floor", 10);
+            home.addRoom(room);
+            room.addSensor(new LightSensor("Sensor " + r, room.getName()));
+        }
+        engine = new AutomationEngine(home);
+        RuleNetworkBenchmark.buildRules(rules).forEach(engine::addRule);
+        engine.setCompiled(compiled);
+        engine.setProfiling(profiling);
+    }
+
+    @Benchmark
+    public void tick() {
+        engine.tick(0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Lookups and aggregates on the model: {@link Home#getDeviceByName} over every device in a
+ * shuffled order, and the home's power total, running and recomputed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HomeJmh {
+    @Param({"10", "1000", "10000", "100000"})
+    int devices;
+
+    private Home home;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        EventLog.setLevel(EventLog.Level.WARN);
+        home = PersistenceBenchmark.buildHome(devices);
+        List<String> all = home.getAllDevices().stream().map(SmartDevice::getName).collect(Collectors.toList());
+        Collections.shuffle(all, new Random(42)); // defeat any locality in the room order
+        names = all.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public SmartDevice getDeviceByName() {
+        if (++next == names.length) next = 0;
+        return home.getDeviceByName(names[next]);
+    }
+
+    @Benchmark
+    public double getTotalPowerConsumption() {
+        return home.getTotalPowerConsumption();
+    }
+
+    @Benchmark
+    public double recomputePowerConsumption() {
+        return home.recomputePowerConsumption();
+    }
+}
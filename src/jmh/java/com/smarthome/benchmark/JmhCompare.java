@@ -0,0 +1,73 @@
+package com.smarthome.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files ({@code -rf json}) benchmark by benchmark, keyed on the
+ * benchmark name and its parameters. All benchmarks here report average time, so a current
+ * score above the baseline by more than the threshold (default 10%) is a regression; the exit
+ * status is 1 when there is any.
+ * <pre>java -cp ... com.smarthome.benchmark.JmhCompare baseline.json target/jmh-result.json [0.10]</pre>
+ */
+public class JmhCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: JmhCompare <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        Map<String, Double> baseline = load(args[0]);
+        Map<String, Double> current = load(args[1]);
+        int regressions = 0;
+        for (Map.Entry<String, Double> e : current.entrySet()) {
+            Double before = baseline.get(e.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %12s %12.3f%n", e.getKey(), "-", e.getValue());
+                continue;
+            }
+            double ratio = e.getValue() / before;
+            boolean regressed = ratio > 1 + threshold;
+            if (regressed) regressions++;
+            System.out.printf("%-70s %12.3f %12.3f %7.2fx%s%n", e.getKey(), before, e.getValue(), ratio,
+                    regressed ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d regression(s) over %.0f%%%n", regressions, threshold * 100);
+        if (regressions > 0) System.exit(1);
+    }
+
+    /** Reads a result file into "benchmark {param=value, ...} unit" to primary score. */
+    static Map<String, Double> load(String file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            JsonArray runs = JsonParser.parseReader(in).getAsJsonArray();
+            for (JsonElement run : runs) {
+                JsonObject r = run.getAsJsonObject();
+                String name = r.get("benchmark").getAsString();
+                name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+                Map<String, String> params = new TreeMap<>();
+                if (r.has("params")) {
+                    for (Map.Entry<String, JsonElement> p : r.getAsJsonObject("params").entrySet()) {
+                        params.put(p.getKey(), p.getValue().getAsString());
+                    }
+                }
+                JsonObject metric = r.getAsJsonObject("primaryMetric");
+                String key = name + (params.isEmpty() ? "" : " " + params) + " " + metric.get("scoreUnit").getAsString();
+                scores.put(key, metric.get("score").getAsDouble());
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,78 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.model.Home;
+import com.smarthome.util.BinarySnapshot;
+import com.smarthome.util.DataPersistence;
+import com.smarthome.util.EventLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and binary save and load of a whole home through {@link DataPersistence} and
+ * {@link BinarySnapshot}, to files in the temp directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceJmh {
+    @Param({"10", "1000", "10000", "100000"})
+    int devices;
+
+    private Home home;
+    private Path json;
+    private Path binary;
+
+    @Setup
+    public void setup() throws IOException {
+        EventLog.setLevel(EventLog.Level.WARN);
+        home = PersistenceBenchmark.buildHome(devices);
+        json = Files.createTempFile("home-jmh", ".json");
+        binary = Files.createTempFile("home-jmh", ".bin");
+        DataPersistence.saveHome(home, json.toString());
+        BinarySnapshot.save(home, binary.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(binary);
+    }
+
+    @Benchmark
+    public void saveJson() throws IOException {
+        DataPersistence.saveHome(home, json.toString());
+    }
+
+    @Benchmark
+    public Home loadJson() throws IOException {
+        return DataPersistence.loadHome(json.toString());
+    }
+
+    @Benchmark
+    public void saveBinary() throws IOException {
+        BinarySnapshot.save(home, binary.toString());
+    }
+
+    @Benchmark
+    public Home loadBinary() throws IOException {
+        return BinarySnapshot.load(binary.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package com.smarthome.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+import com.smarthome.util.JsonAdapters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The REST API's device list serialization, written as UTF-8 bytes as the web servers send
+ * it: the {@link JsonAdapters} schema against the reflective Gson the API used before. Add
+ * {@code -prof gc} to the JMH arguments for bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationJmh {
+    @Param({"10", "1000", "10000", "100000"})
+    int devices;
+
+    private final Gson gson = JsonAdapters.register(new GsonBuilder()).create();
+    private final Gson reflective = new GsonBuilder()
+        .registerTypeAdapter(LocalDateTime.class,
+            (JsonSerializer<LocalDateTime>) (src, typeOfSrc, context) -> new JsonPrimitive(src.toString()))
+        .create();
+    private List<SmartDevice> all;
+
+    @Setup
+    public void setup() {
+        EventLog.setLevel(EventLog.Level.WARN);
+        all = PersistenceBenchmark.buildHome(devices).getAllDevices();
+    }
+
+    @Benchmark
+    public byte[] devicesJson() throws IOException {
+        return toJsonBytes(gson);
+    }
+
+    @Benchmark
+    public byte[] devicesJsonReflective() throws IOException {
+        return toJsonBytes(reflective);
+    }
+
+    private byte[] toJsonBytes(Gson with) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            with.toJson(all, out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -7,14 +7,22 @@ import com.smarthome.model.Room;
 import com.smarthome.model.devices.SmartLight;
 import com.smarthome.model.devices.SmartPlug;
 import com.smarthome.model.devices.SecurityCamera;
+import com.smarthome.model.sensors.Sensor;
 import com.smarthome.automation.Rule;
 import com.smarthome.automation.builtins.*;
 import com.smarthome.automation.Condition;
 import com.smarthome.automation.Action;
 import com.smarthome.scheduler.Scheduler;
+import com.smarthome.service.HomeGenerator;
+import com.smarthome.service.LoadSimulator;
 import com.smarthome.ui.ConsoleInterface;
+import com.smarthome.util.EventJournal;
+import com.smarthome.util.EventLog;
+import com.smarthome.web.HttpApiServer;
 import com.smarthome.web.WebServer;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalTime;
 import java.util.Arrays;
 
@@ -23,9 +31,32 @@ public class SmartHomeApplication {
     private static AutomationEngine engine;
     private static Thread automationThread;
     private static WebServer webServer;
+    private static EventJournal journal;
     
     public static void main(String[] args) throws InterruptedException {
-        initializeSmartHome();
+        // --log-level=debug|info|warn|error|off; warn keeps bulk operations off the console
+        Arrays.stream(args)
+            .filter(arg -> arg.startsWith("--log-level="))
+            .findFirst()
+            .ifPresent(arg -> EventLog.setLevel(EventLog.parseLevel(arg.substring("--log-level=".length()), EventLog.getLevel())));
+        // --journal=<dir> keeps a snapshot plus a device change log there and recovers from them
+        String journalDir = Arrays.stream(args)
+            .filter(arg -> arg.startsWith("--journal="))
+            .map(arg -> arg.substring("--journal=".length()))
+            .findFirst().orElse(null);
+        // --synthetic=<rooms>,<devices per room>[,<seed>] replaces the demo setup with a generated home
+        String synthetic = Arrays.stream(args)
+            .filter(arg -> arg.startsWith("--synthetic="))
+            .map(arg -> arg.substring("--synthetic=".length()))
+            .findFirst().orElse(null);
+        initializeSmartHome(journalDir, synthetic);
+        // --profile-rules records per-rule evaluation counts and time from the start
+        if (Arrays.asList(args).contains("--profile-rules")) engine.setProfiling(true);
+        // --load=<toggles/s>,<motion/s>,<samples/s> drives the home for soak tests
+        Arrays.stream(args)
+            .filter(arg -> arg.startsWith("--load="))
+            .findFirst()
+            .ifPresent(arg -> startLoad(arg.substring("--load=".length())));
         
         // Check launch mode
         boolean webMode = Arrays.stream(args).anyMatch(arg -> 
@@ -38,36 +69,46 @@ public class SmartHomeApplication {
 
         if (javafxMode) {
             // Launch JavaFX Professional Dashboard
-            System.out.println("🚀 Launching JavaFX Professional Dashboard...");
+            EventLog.print("🚀 Launching JavaFX Professional Dashboard...");
             launchJavaFX();
         } else if (webMode) {
             // Launch Web Interface
-            System.out.println("🌐 Launching Web Dashboard...");
-            launchWebInterface(8080);
+            EventLog.print("🌐 Launching Web Dashboard...");
+            // --server=jdk serves the same API on the JDK HTTP server; --http-threads=<n> sizes the pool
+            boolean jdkServer = Arrays.asList(args).contains("--server=jdk");
+            int threads = Arrays.stream(args)
+                .filter(arg -> arg.startsWith("--http-threads="))
+                .mapToInt(arg -> Integer.parseInt(arg.substring("--http-threads=".length())))
+                .findFirst().orElse(0);
+            launchWebInterface(8080, jdkServer, threads);
         } else {
             // Default: Enhanced CLI mode
             launchEnhancedCLI();
         }
     }
     
-    private static void initializeSmartHome() {
-        home = new Home("Smart Residence Pro", "456 Innovation Drive");
+    private static void initializeSmartHome(String journalDir, String synthetic) {
+        Home recovered = restoreHome(journalDir);
+        Home restored = recovered;
+        if (restored == null && synthetic != null) restored = generateHome(synthetic);
+        home = restored != null ? restored : new Home("Smart Residence Pro", "456 Innovation Drive");
         engine = new AutomationEngine(home);
         HomeController controller = new HomeController(home, engine);
         
         // Enhanced setup with more devices
-        addEnhancedSetup(controller);
+        if (restored == null) addEnhancedSetup(controller);
         
         // Add comprehensive automation rules
         addAutomationRules();
         
         // Start automation engine
         startAutomationEngine();
+        if (journalDir != null) openJournal(journalDir, recovered != null);
         
-        System.out.println("✅ Smart Home System Initialized:");
-        System.out.println("   - " + home.getRooms().size() + " Rooms");
-        System.out.println("   - " + home.getAllDevices().size() + " Devices");
-        System.out.println("   - " + engine.getRules().size() + " Automation Rules");
+        EventLog.print("✅ Smart Home System Initialized:");
+        EventLog.print("   - " + home.getRooms().size() + " Rooms");
+        EventLog.print("   - " + home.getDeviceCount() + " Devices");
+        EventLog.print("   - " + engine.getRules().size() + " Automation Rules");
     }
     
     private static void addEnhancedSetup(HomeController controller) {
@@ -98,7 +139,7 @@ public class SmartHomeApplication {
             home.getDeviceByName("Main Light").turnOn();
             home.getDeviceByName("Kitchen Light").turnOn();
         } catch (Exception e) {
-            System.out.println("Note: Some demo devices not available yet");
+            EventLog.print("Note: Some demo devices not available yet");
         }
     }
     
@@ -141,7 +182,72 @@ public class SmartHomeApplication {
         engine.addRule(securityRule);
     }
     
+    private static Home generateHome(String spec) {
+        String[] parts = spec.split(",");
+        HomeGenerator generator = new HomeGenerator(parts.length > 2 ? Long.parseLong(parts[2].trim()) : 1L)
+            .rooms(Integer.parseInt(parts[0].trim()))
+            .devicesPerRoom(parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 10);
+        Home generated = generator.generate();
+        EventLog.print("🏗️ Generated synthetic home: " + generated.getRooms().size() + " rooms, " + generated.getDeviceCount() + " devices");
+        return generated;
+    }
+    
+    private static void startLoad(String spec) {
+        String[] parts = spec.split(",");
+        LoadSimulator load = new LoadSimulator(home, 1L)
+            .toggles(Double.parseDouble(parts[0].trim()))
+            .motion(parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 0)
+            .samples(parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0);
+        load.start();
+        EventLog.print("📈 Load simulator running: " + spec + " (toggles/s, motion/s, samples/s)");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            load.stop();
+            EventLog.print("📈 " + load.report());
+            EventLog.flush();
+        }, "load-report"));
+    }
+    
+    private static Home restoreHome(String journalDir) {
+        if (journalDir == null) return null;
+        File snapshot = new File(journalDir, "home.bin"); // rooms are decoded on first use
+        if (!snapshot.exists()) snapshot = new File(journalDir, "home.json"); // written by older versions
+        if (!snapshot.exists()) return null;
+        try {
+            Home restored = EventJournal.recover(snapshot.getPath(), new File(journalDir, "journal.bin").getPath());
+            EventLog.print("📂 Restored home from " + journalDir);
+            return restored;
+        } catch (IOException | RuntimeException e) {
+            EventLog.print("⚠️ Could not restore from " + journalDir + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private static void openJournal(String journalDir, boolean restored) {
+        try {
+            new File(journalDir).mkdirs();
+            String snapshot = new File(journalDir, "home.bin").getPath();
+            journal = new EventJournal(new File(journalDir, "journal.bin").getPath());
+            journal.attach(home);
+            // A restored home keeps appending to the log it was replayed from, so startup does
+            // not have to decode every room just to write a fresh checkpoint
+            if (!restored) journal.checkpoint(snapshot);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.checkpoint(snapshot);
+                    journal.close();
+                } catch (IOException e) {
+                    EventLog.print("⚠️ Journal shutdown failed: " + e.getMessage());
+                }
+            }, "journal-shutdown"));
+        } catch (IOException e) {
+            EventLog.print("⚠️ Journaling disabled: " + e.getMessage());
+        }
+    }
+    
     private static void startAutomationEngine() {
+        // Device and sensor changes drive dependent rules immediately; the loop below
+        // only runs time-driven rules and samples sensors
+        engine.startEventMode();
         automationThread = new Thread(() -> {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
@@ -150,7 +256,7 @@ public class SmartHomeApplication {
                     
                     // Update sensor readings
                     home.getRooms().forEach(room -> {
-                        room.getSensors().forEach(sensor -> sensor.takeMeasurement());
+                        room.getSensors().forEach(Sensor::sample);
                     });
                     
                 } catch (InterruptedException e) {
@@ -169,20 +275,33 @@ public class SmartHomeApplication {
         } catch (Exception e) {
             System.err.println("❌ Failed to launch JavaFX: " + e.getMessage());
             e.printStackTrace();
-            System.out.println("🔄 Falling back to CLI mode...");
+            EventLog.print("🔄 Falling back to CLI mode...");
             launchEnhancedCLI();
         }
     }
     
-    private static void launchWebInterface(int port) {
-        webServer = new WebServer(home);
-        webServer.start(port);
+    private static void launchWebInterface(int port, boolean jdkServer, int threads) {
+        if (jdkServer) {
+            HttpApiServer server = threads > 0 ? new HttpApiServer(home, threads) : new HttpApiServer(home);
+            server.setAutomationEngine(engine);
+            try {
+                server.start(port);
+            } catch (IOException e) {
+                System.err.println("❌ Failed to start HTTP server: " + e.getMessage());
+                return;
+            }
+        } else {
+            webServer = new WebServer(home);
+            webServer.setThreads(threads);
+            webServer.setAutomationEngine(engine);
+            webServer.start(port);
+        }
         
         // Keep the application running
         try {
             Thread.currentThread().join();
         } catch (InterruptedException e) {
-            System.out.println("Web server interrupted");
+            EventLog.print("Web server interrupted");
         }
     }
     
@@ -190,14 +309,14 @@ public class SmartHomeApplication {
         HomeController controller = new HomeController(home, engine);
         home.displayHomeStatus();
         
-        System.out.println("\n🎮 Available Commands:");
-        System.out.println("   status           - Show home status");
-        System.out.println("   devices          - List all devices"); 
-        System.out.println("   on/off <device>  - Control devices");
-        System.out.println("   scene <name>     - Apply scene (morning/movie/night/away)");
-        System.out.println("   rules            - List automation rules");
-        System.out.println("   motion <room>    - Simulate motion");
-        System.out.println("   exit             - Quit application");
+        EventLog.print("\n🎮 Available Commands:");
+        EventLog.print("   status           - Show home status");
+        EventLog.print("   devices          - List all devices"); 
+        EventLog.print("   on/off <device>  - Control devices");
+        EventLog.print("   scene <name>     - Apply scene (morning/movie/night/away)");
+        EventLog.print("   rules            - List automation rules");
+        EventLog.print("   motion <room>    - Simulate motion");
+        EventLog.print("   exit             - Quit application");
         
         ConsoleInterface cli = new ConsoleInterface(home, controller);
         cli.start();
@@ -1,6 +1,14 @@
 package com.smarthome.automation;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface Action {
     void execute(Context context);
     default String describe() { return "action"; }
+    /**
+     * Rooms or devices this action mutates. Actions that declare nothing are assumed to
+     * touch anything: they run alone, after every earlier rule and before every later one.
+     */
+    default Collection<Dependency> writes() { return List.of(); }
 }
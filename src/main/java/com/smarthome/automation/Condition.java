@@ -1,6 +1,10 @@
 package com.smarthome.automation;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface Condition {
     boolean check(Context context);
     default String describe() { return "condition"; }
+    default Collection<Dependency> dependencies() { return List.of(); }
 }
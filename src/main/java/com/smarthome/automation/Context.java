@@ -5,10 +5,19 @@ import com.smarthome.model.Home;
 public class Context {
     private final Home home;
     private final long epochSeconds;
+    private final boolean profiling;
 
     public Context(Home home, long epochSeconds) {
+        this(home, epochSeconds, false);
+    }
+
+    /**
+     * @param profiling record each rule's evaluation into its {@link RuleProfile}
+     */
+    public Context(Home home, long epochSeconds, boolean profiling) {
         this.home = home;
         this.epochSeconds = epochSeconds;
+        this.profiling = profiling;
     }
 
     public Home getHome() {
@@ -18,4 +27,8 @@ public class Context {
     public long getEpochSeconds() {
         return epochSeconds;
     }
+
+    public boolean isProfiling() {
+        return profiling;
+    }
 }
@@ -0,0 +1,74 @@
+package com.smarthome.automation;
+
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.Sensor;
+
+import java.util.Locale;
+
+/**
+ * Declares which state changes can affect a rule, so the event-driven engine only
+ * re-evaluates rules whose inputs changed. Null fields match anything.
+ */
+public final class Dependency {
+    private final String roomName;   // lower-cased
+    private final String deviceName; // lower-cased
+    private final Class<? extends Sensor> sensorType;
+    private final boolean clock;
+
+    private static final Dependency CLOCK = new Dependency(null, null, null, true);
+
+    private Dependency(String roomName, String deviceName, Class<? extends Sensor> sensorType, boolean clock) {
+        this.roomName = roomName == null ? null : roomName.toLowerCase(Locale.ROOT);
+        this.deviceName = deviceName == null ? null : deviceName.toLowerCase(Locale.ROOT);
+        this.sensorType = sensorType;
+        this.clock = clock;
+    }
+
+    private Dependency(String roomName, String deviceName, Class<? extends Sensor> sensorType) {
+        this(roomName, deviceName, sensorType, false);
+    }
+
+    /** The passage of time: the rule is also evaluated on every periodic tick */
+    public static Dependency clock() { return CLOCK; }
+
+    /** Any device or sensor change in the room */
+    public static Dependency room(String roomName) { return new Dependency(roomName, null, null); }
+
+    /** Changes to the named device wherever it is */
+    public static Dependency device(String deviceName) { return new Dependency(null, deviceName, null); }
+
+    /** Readings from sensors of this type in any room */
+    public static Dependency sensor(Class<? extends Sensor> type) { return new Dependency(null, null, type); }
+
+    /** Readings from sensors of this type in the room */
+    public static Dependency sensorIn(String roomName, Class<? extends Sensor> type) { return new Dependency(roomName, null, type); }
+
+    public boolean isClock() { return clock; }
+
+    public boolean matches(Room room, SmartDevice device) {
+        if (clock || sensorType != null) return false;
+        if (roomName != null && !roomName.equals(room.getName().toLowerCase(Locale.ROOT))) return false;
+        return deviceName == null || deviceName.equals(device.getName().toLowerCase(Locale.ROOT));
+    }
+
+    public boolean matches(Room room, Sensor sensor) {
+        if (clock || deviceName != null) return false;
+        if (roomName != null && !roomName.equals(room.getName().toLowerCase(Locale.ROOT))) return false;
+        return sensorType == null || sensorType.isInstance(sensor);
+    }
+
+    public String getRoomName() { return roomName; }
+    public String getDeviceName() { return deviceName; }
+    public Class<? extends Sensor> getSensorType() { return sensorType; }
+
+    @Override
+    public String toString() {
+        if (clock) return "Dependency{clock}";
+        StringBuilder sb = new StringBuilder("Dependency{");
+        if (roomName != null) sb.append("room=").append(roomName).append(' ');
+        if (deviceName != null) sb.append("device=").append(deviceName).append(' ');
+        if (sensorType != null) sb.append("sensor=").append(sensorType.getSimpleName());
+        return sb.toString().trim() + "}";
+    }
+}
@@ -0,0 +1,148 @@
+package com.smarthome.automation;
+
+import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.model.Home;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates rule conditions in parallel, then runs the fired rules' actions so that rules
+ * writing the same room or device run one after another in rule order, while rules with
+ * disjoint write sets run concurrently. Device writes are resolved to the device's room.
+ * A rule with an action that declares no writes is a barrier: the lanes of the rules
+ * before it finish first, it runs alone, and the rules after it are scheduled afresh, so its
+ * effects land in the same order as in a serial loop.
+ */
+public class ParallelRuleExecutor {
+    private final ForkJoinPool pool;
+
+    public ParallelRuleExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelRuleExecutor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return number of rules fired
+     */
+    public int run(List<Rule> rules, Context context) {
+        List<Rule> fired = evaluate(rules, context);
+        if (fired.isEmpty()) return 0;
+
+        for (List<List<Rule>> segment : schedule(fired, context.getHome())) runLanes(segment, context);
+        return fired.size();
+    }
+
+    private void runLanes(List<List<Rule>> lanes, Context context) {
+        if (lanes.size() == 1) { // a barrier, or nothing to run alongside
+            lanes.get(0).forEach(r -> r.executeActions(context));
+            return;
+        }
+        CompletableFuture<?>[] running = new CompletableFuture<?>[lanes.size()];
+        for (int i = 0; i < lanes.size(); i++) {
+            List<Rule> lane = lanes.get(i);
+            running[i] = CompletableFuture.runAsync(() -> lane.forEach(r -> r.executeActions(context)), pool);
+        }
+        try {
+            CompletableFuture.allOf(running).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private List<Rule> evaluate(List<Rule> rules, Context context) {
+        boolean[] fire = new boolean[rules.size()];
+        pool.submit(() -> IntStream.range(0, rules.size()).parallel()
+            .forEach(i -> fire[i] = rules.get(i).shouldFire(context))).join();
+        List<Rule> fired = new ArrayList<>();
+        for (int i = 0; i < fire.length; i++) if (fire[i]) fired.add(rules.get(i));
+        return fired;
+    }
+
+    /**
+     * Split fired rules into segments run one after another: each barrier rule is a segment
+     * of its own, and the rules between barriers are unioned into lanes by overlapping write
+     * keys, each lane keeping rule order.
+     */
+    static List<List<List<Rule>>> schedule(List<Rule> fired, Home home) {
+        List<List<List<Rule>>> segments = new ArrayList<>();
+        List<Rule> between = new ArrayList<>();
+        List<List<String>> betweenKeys = new ArrayList<>();
+        for (Rule rule : fired) {
+            List<String> keys = writeKeys(rule, home);
+            if (keys != null) {
+                between.add(rule);
+                betweenKeys.add(keys);
+                continue;
+            }
+            if (!between.isEmpty()) segments.add(lanes(between, betweenKeys));
+            between = new ArrayList<>();
+            betweenKeys = new ArrayList<>();
+            segments.add(List.of(List.of(rule)));
+        }
+        if (!between.isEmpty()) segments.add(lanes(between, betweenKeys));
+        return segments;
+    }
+
+    private static List<List<Rule>> lanes(List<Rule> rules, List<List<String>> keys) {
+        int[] parent = new int[rules.size()];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+        Map<String, Integer> owner = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            for (String key : keys.get(i)) {
+                Integer other = owner.putIfAbsent(key, i);
+                if (other != null) union(parent, other, i);
+            }
+        }
+        Map<Integer, List<Rule>> byRoot = new LinkedHashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            byRoot.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(rules.get(i));
+        }
+        return new ArrayList<>(byRoot.values());
+    }
+
+    /** Room-level write keys for a rule, or null if any action leaves its writes undeclared */
+    private static List<String> writeKeys(Rule rule, Home home) {
+        List<String> keys = new ArrayList<>();
+        for (Action a : rule.getActions()) {
+            if (a.writes().isEmpty()) return null;
+            for (Dependency d : a.writes()) {
+                if (d.getRoomName() != null) {
+                    keys.add("room:" + d.getRoomName());
+                } else if (d.getDeviceName() != null) {
+                    try {
+                        String room = home.getDeviceByName(d.getDeviceName()).getLocation();
+                        keys.add("room:" + room.toLowerCase(Locale.ROOT));
+                    } catch (DeviceNotFoundException e) {
+                        keys.add("device:" + d.getDeviceName());
+                    }
+                } else {
+                    return null; // sensor-type writes are not meaningful; treat as global
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) i = parent[i] = parent[parent[i]];
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a), rb = find(parent, b);
+        if (ra != rb) parent[Math.max(ra, rb)] = Math.min(ra, rb);
+    }
+}
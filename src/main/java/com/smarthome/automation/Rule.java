@@ -1,22 +1,44 @@
 package com.smarthome.automation;
 
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.Sensor;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 public class Rule {
     private final String name;
     private final Trigger trigger;
     private final List<Condition> conditions = new ArrayList<>();
     private final List<Action> actions = new ArrayList<>();
+    private final List<Dependency> dependencies = new ArrayList<>();
     private boolean enabled = true;
+    private final LongAdder fires = new LongAdder();
+    private final LongSupplier fireCounter = fires::sum; // exported under Metrics.RULE_FIRES by the engine
+    private final RuleProfile profile = new RuleProfile();
 
     public Rule(String name, Trigger trigger) {
         this.name = name;
         this.trigger = trigger;
+        this.dependencies.addAll(trigger.dependencies());
     }
 
     public Rule addCondition(Condition condition) {
         conditions.add(condition);
+        profile.addCondition();
+        dependencies.addAll(condition.dependencies());
+        return this;
+    }
+
+    /**
+     * Declare a state change that can affect this rule. Rules with no dependencies, or
+     * with a {@link Dependency#clock()} dependency, also run on the periodic tick.
+     */
+    public Rule dependsOn(Dependency dependency) {
+        dependencies.add(dependency);
         return this;
     }
 
@@ -26,17 +48,85 @@ public class Rule {
     }
 
     public void evaluateAndExecute(Context context) {
-        if (!enabled) return;
-        if (!trigger.evaluate(context)) return;
+        if (shouldFire(context)) executeActions(context);
+    }
+
+    /**
+     * Evaluate the trigger and conditions only; these are reads and may run concurrently
+     */
+    public boolean shouldFire(Context context) {
+        if (!enabled) return false;
+        if (context.isProfiling()) return shouldFireProfiled(context);
+        if (!trigger.evaluate(context)) return false;
         for (Condition c : conditions) {
-            if (!c.check(context)) return;
+            if (!c.check(context)) return false;
         }
+        return true;
+    }
+
+    private boolean shouldFireProfiled(Context context) {
+        long t0 = System.nanoTime();
+        boolean hit = trigger.evaluate(context);
+        long t1 = System.nanoTime();
+        profile.evaluated(hit, t1 - t0);
+        if (!hit) return false;
+        try {
+            for (int i = 0; i < conditions.size(); i++) {
+                if (!conditions.get(i).check(context)) {
+                    profile.conditionFailed(i);
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            profile.conditionTime(System.nanoTime() - t1);
+        }
+    }
+
+    /**
+     * Run the actions without evaluating the trigger or conditions; used by
+     * {@link RuleNetwork}, which evaluates those through shared nodes.
+     */
+    public void executeActions(Context context) {
+        fires.increment();
+        long t0 = context.isProfiling() ? System.nanoTime() : 0;
         for (Action a : actions) {
             a.execute(context);
         }
+        if (context.isProfiling()) profile.actionsRan(System.nanoTime() - t0);
+    }
+
+    public List<Dependency> getDependencies() { return new ArrayList<>(dependencies); }
+    public boolean isEventDriven() {
+        for (Dependency d : dependencies) if (!d.isClock()) return true;
+        return false;
+    }
+
+    public boolean isTickDriven() {
+        if (dependencies.isEmpty()) return true;
+        for (Dependency d : dependencies) if (d.isClock()) return true;
+        return false;
+    }
+
+    public boolean isAffectedBy(Room room, SmartDevice device) {
+        for (Dependency d : dependencies) if (d.matches(room, device)) return true;
+        return false;
+    }
+
+    public boolean isAffectedBy(Room room, Sensor sensor) {
+        for (Dependency d : dependencies) if (d.matches(room, sensor)) return true;
+        return false;
     }
 
+    public Trigger getTrigger() { return trigger; }
+    public List<Condition> getConditions() { return new ArrayList<>(conditions); }
+    public List<Action> getActions() { return new ArrayList<>(actions); }
     public String getName() { return name; }
+    /** Times the actions ran since the rule was created, whether or not profiling */
+    public long getFireCount() { return fires.sum(); }
+    /** This rule's fire count, as added to and removed from a {@code Metrics.Sum} */
+    public LongSupplier getFireCounter() { return fireCounter; }
+    public RuleProfile getProfile() { return profile; }
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
 
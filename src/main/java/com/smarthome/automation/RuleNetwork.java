@@ -0,0 +1,138 @@
+package com.smarthome.automation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Rules compiled into a shared condition network (a small Rete-style alpha network).
+ * <p>
+ * Equal triggers and conditions (by {@code equals}) across all rules become a single node,
+ * so each distinct check runs once per tick however many rules use it. Every rule keeps a
+ * count of its nodes that are currently false; only nodes whose result changed since the
+ * previous tick update those counts, and rules whose count is zero fire in rule order.
+ * Every node is evaluated before any rule fires, so unlike a linear loop over the rules,
+ * an action that makes a later rule's conditions true does not fire that rule until the
+ * next tick. Conditions are assumed to be side-effect free. The network is a snapshot: recompile after
+ * adding conditions to a rule.
+ */
+public class RuleNetwork {
+    private final Node[] nodes;
+    private final Rule[] rules;
+    private final Node[][] ruleNodes; // per rule: trigger node, then one node per condition in order
+    private final int[] falseCounts;
+    private final BitSet satisfied;
+
+    private RuleNetwork(Node[] nodes, Rule[] rules, Node[][] ruleNodes, int[] falseCounts) {
+        this.nodes = nodes;
+        this.rules = rules;
+        this.ruleNodes = ruleNodes;
+        this.falseCounts = falseCounts;
+        this.satisfied = new BitSet(rules.length);
+    }
+
+    public static RuleNetwork compile(List<Rule> rules) {
+        Map<Object, Node> byKey = new LinkedHashMap<>();
+        Map<Node, List<Integer>> fanOut = new LinkedHashMap<>();
+        Rule[] compiled = rules.toArray(new Rule[0]);
+        Node[][] ordered = new Node[compiled.length][];
+        int[] falseCounts = new int[compiled.length];
+        for (int i = 0; i < compiled.length; i++) {
+            Rule rule = compiled[i];
+            List<Condition> conditions = rule.getConditions();
+            ordered[i] = new Node[conditions.size() + 1];
+            Trigger trigger = rule.getTrigger();
+            ordered[i][0] = byKey.computeIfAbsent(trigger, k -> new Node(k, trigger::evaluate));
+            for (int c = 0; c < conditions.size(); c++) {
+                Condition condition = conditions.get(c);
+                ordered[i][c + 1] = byKey.computeIfAbsent(condition, k -> new Node(k, condition::check));
+            }
+            Set<Node> ruleNodes = new LinkedHashSet<>(List.of(ordered[i]));
+            for (Node n : ruleNodes) fanOut.computeIfAbsent(n, k -> new ArrayList<>()).add(i);
+            falseCounts[i] = ruleNodes.size(); // every node starts out false
+        }
+        for (Map.Entry<Node, List<Integer>> e : fanOut.entrySet()) {
+            e.getKey().rules = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new RuleNetwork(byKey.values().toArray(new Node[0]), compiled, ordered, falseCounts);
+    }
+
+    /**
+     * Evaluate every distinct node once, propagate changed results and fire satisfied rules;
+     * actions run after all evaluation, so they affect the next tick's results.
+     * @return number of rules fired
+     */
+    public synchronized int tick(Context context) {
+        boolean profiling = context.isProfiling();
+        for (Node node : nodes) {
+            long t0 = profiling ? System.nanoTime() : 0;
+            boolean now = node.test.test(context);
+            if (profiling) node.nanos = System.nanoTime() - t0;
+            if (now == node.last) continue;
+            node.last = now;
+            for (int r : node.rules) {
+                if (now) {
+                    if (--falseCounts[r] == 0) satisfied.set(r);
+                } else {
+                    if (falseCounts[r]++ == 0) satisfied.clear(r);
+                }
+            }
+        }
+        if (profiling) profile();
+        int fired = 0;
+        for (int r = satisfied.nextSetBit(0); r >= 0; r = satisfied.nextSetBit(r + 1)) {
+            Rule rule = rules[r];
+            if (!rule.isEnabled()) continue;
+            rule.executeActions(context);
+            fired++;
+        }
+        return fired;
+    }
+
+    /**
+     * Charge each node's time from this tick to its rules, split evenly, and record trigger
+     * hits and the first failing condition as the rule's linear evaluation would have
+     */
+    private void profile() {
+        for (int r = 0; r < rules.length; r++) {
+            if (!rules[r].isEnabled()) continue;
+            RuleProfile profile = rules[r].getProfile();
+            Node[] own = ruleNodes[r];
+            Node trigger = own[0];
+            profile.evaluated(trigger.last, trigger.nanos / trigger.rules.length);
+            long conditionNanos = 0;
+            int failed = -1;
+            for (int c = 1; c < own.length; c++) {
+                Node n = own[c];
+                if (n != trigger) conditionNanos += n.nanos / n.rules.length;
+                if (failed < 0 && !n.last) failed = c - 1;
+            }
+            profile.conditionTime(conditionNanos);
+            if (trigger.last && failed >= 0) profile.conditionFailed(failed);
+        }
+    }
+
+    public int getNodeCount() { return nodes.length; }
+    public int getRuleCount() { return rules.length; }
+
+    private static final class Node {
+        final Object key;
+        final Predicate<Context> test;
+        int[] rules;
+        boolean last; // result from the previous tick
+        long nanos; // evaluation time in the last profiled tick
+
+        Node(Object key, Predicate<Context> test) {
+            this.key = key;
+            this.test = test;
+        }
+
+        @Override
+        public String toString() { return "Node{" + key + "}"; }
+    }
+}
@@ -0,0 +1,66 @@
+package com.smarthome.automation;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-rule accounting, recorded while evaluations run with a profiling {@link Context}:
+ * how often the rule was evaluated and its trigger hit, which condition stopped it, how
+ * often its actions ran and the nanoseconds spent in each stage. In a compiled
+ * {@link RuleNetwork} a shared node's time is split evenly between the rules that use it.
+ */
+public final class RuleProfile {
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder triggerHits = new LongAdder();
+    private final LongAdder actionsFired = new LongAdder();
+    private final LongAdder triggerNanos = new LongAdder();
+    private final LongAdder conditionNanos = new LongAdder();
+    private final LongAdder actionNanos = new LongAdder();
+    private final CopyOnWriteArrayList<LongAdder> conditionFailures = new CopyOnWriteArrayList<>(); // by condition index
+
+    void addCondition() {
+        conditionFailures.add(new LongAdder());
+    }
+
+    void evaluated(boolean triggerHit, long nanos) {
+        evaluations.increment();
+        if (triggerHit) triggerHits.increment();
+        triggerNanos.add(nanos);
+    }
+
+    void conditionFailed(int index) {
+        conditionFailures.get(index).increment();
+    }
+
+    void conditionTime(long nanos) {
+        conditionNanos.add(nanos);
+    }
+
+    void actionsRan(long nanos) {
+        actionsFired.increment();
+        actionNanos.add(nanos);
+    }
+
+    /** Evaluations of the trigger */
+    public long getEvaluations() { return evaluations.sum(); }
+    public long getTriggerHits() { return triggerHits.sum(); }
+    public long getActionsFired() { return actionsFired.sum(); }
+    public long getTriggerNanos() { return triggerNanos.sum(); }
+    public long getConditionNanos() { return conditionNanos.sum(); }
+    public long getActionNanos() { return actionNanos.sum(); }
+    public long getTotalNanos() { return getTriggerNanos() + getConditionNanos() + getActionNanos(); }
+
+    /** Times condition {@code index} was the first to fail after the trigger hit */
+    public long getConditionFailures(int index) { return conditionFailures.get(index).sum(); }
+    public int getConditionCount() { return conditionFailures.size(); }
+
+    public void reset() {
+        evaluations.reset();
+        triggerHits.reset();
+        actionsFired.reset();
+        triggerNanos.reset();
+        conditionNanos.reset();
+        actionNanos.reset();
+        for (LongAdder f : conditionFailures) f.reset();
+    }
+}
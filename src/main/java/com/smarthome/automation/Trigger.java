@@ -1,6 +1,10 @@
 package com.smarthome.automation;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface Trigger {
     boolean evaluate(Context context);
     default String describe() { return "trigger"; }
+    default Collection<Dependency> dependencies() { return List.of(); }
 }
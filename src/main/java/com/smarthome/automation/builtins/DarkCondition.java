@@ -2,11 +2,16 @@ package com.smarthome.automation.builtins;
 
 import com.smarthome.automation.Context;
 import com.smarthome.automation.Condition;
+import com.smarthome.automation.Dependency;
 import com.smarthome.model.Home;
 import com.smarthome.model.Room;
 import com.smarthome.model.sensors.LightSensor;
 import com.smarthome.model.sensors.Sensor;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
 public class DarkCondition implements Condition {
     private final String roomName;
 
@@ -28,4 +33,15 @@ public class DarkCondition implements Condition {
 
     @Override
     public String describe() { return "dark in " + roomName; }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DarkCondition && ((DarkCondition) o).roomName.equalsIgnoreCase(roomName);
+    }
+
+    @Override
+    public int hashCode() { return roomName.toLowerCase(Locale.ROOT).hashCode(); }
+
+    @Override
+    public Collection<Dependency> dependencies() { return List.of(Dependency.sensorIn(roomName, LightSensor.class)); }
 }
@@ -3,6 +3,7 @@ package com.smarthome.automation.builtins;
 import com.smarthome.automation.Action;
 import com.smarthome.automation.Condition;
 import com.smarthome.automation.Context;
+import com.smarthome.automation.Dependency;
 import com.smarthome.automation.Rule;
 import com.smarthome.automation.Trigger;
 import com.smarthome.model.Home;
@@ -11,8 +12,11 @@ import com.smarthome.model.SmartDevice;
 import com.smarthome.model.devices.SmartLight;
 import com.smarthome.model.sensors.MotionSensor;
 import com.smarthome.model.sensors.Sensor;
+import com.smarthome.util.EventLog;
 
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * IF motion detected AND time after sunset THEN turn on lights in room.
@@ -20,10 +24,11 @@ import java.time.LocalTime;
 public class MotionLightRule extends Rule {
     public MotionLightRule(String roomName) {
         super("MotionLight-" + roomName,
-                new Trigger() { // trigger: any motion sensor update considered by periodic tick
+                new Trigger() { // trigger: motion sensor readings in the room (event mode) or periodic tick
                     @Override public boolean evaluate(Context context) { return true; }
                 }
         );
+        dependsOn(Dependency.sensorIn(roomName, MotionSensor.class));
         addCondition(new Condition() {
             @Override public boolean check(Context context) {
                 Home home = context.getHome();
@@ -43,8 +48,9 @@ public class MotionLightRule extends Rule {
                 for (SmartDevice d : r.getDevices()) {
                     if (d instanceof SmartLight) { ((SmartLight) d).setBrightness(70); d.turnOn(); }
                 }
-                System.out.println("[Automation] Motion -> lights ON in " + roomName);
+                EventLog.info(() -> "[Automation] Motion -> lights ON in " + roomName);
             }
+            @Override public Collection<Dependency> writes() { return List.of(Dependency.room(roomName)); }
         });
     }
 }
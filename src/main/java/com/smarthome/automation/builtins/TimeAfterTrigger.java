@@ -1,9 +1,12 @@
 package com.smarthome.automation.builtins;
 
 import com.smarthome.automation.Context;
+import com.smarthome.automation.Dependency;
 import com.smarthome.automation.Trigger;
 
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
 
 public class TimeAfterTrigger implements Trigger {
     private final LocalTime time;
@@ -18,4 +21,15 @@ public class TimeAfterTrigger implements Trigger {
 
     @Override
     public String describe() { return "time after " + time; }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TimeAfterTrigger && ((TimeAfterTrigger) o).time.equals(time);
+    }
+
+    @Override
+    public int hashCode() { return time.hashCode(); }
+
+    @Override
+    public Collection<Dependency> dependencies() { return List.of(Dependency.clock()); }
 }
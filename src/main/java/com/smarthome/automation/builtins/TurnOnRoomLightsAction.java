@@ -2,9 +2,14 @@ package com.smarthome.automation.builtins;
 
 import com.smarthome.automation.Action;
 import com.smarthome.automation.Context;
+import com.smarthome.automation.Dependency;
 import com.smarthome.model.Room;
 import com.smarthome.model.SmartDevice;
 import com.smarthome.model.devices.SmartLight;
+import com.smarthome.util.EventLog;
+
+import java.util.Collection;
+import java.util.List;
 
 public class TurnOnRoomLightsAction implements Action {
     private final String roomName;
@@ -25,9 +30,12 @@ public class TurnOnRoomLightsAction implements Action {
                 d.turnOn();
             }
         }
-        System.out.println("[Rule] Lights on in " + roomName + " at " + brightness + "%");
+        EventLog.info(() -> "[Rule] Lights on in " + roomName + " at " + brightness + "%");
     }
 
     @Override
     public String describe() { return "turn on lights in " + roomName; }
+
+    @Override
+    public Collection<Dependency> writes() { return List.of(Dependency.room(roomName)); }
 }
@@ -1,36 +1,312 @@
 package com.smarthome.controller;
 
 import com.smarthome.automation.Context;
+import com.smarthome.automation.Dependency;
+import com.smarthome.automation.ParallelRuleExecutor;
 import com.smarthome.automation.Rule;
+import com.smarthome.automation.RuleNetwork;
+import com.smarthome.automation.RuleProfile;
 import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.StateChangeListener;
+import com.smarthome.model.sensors.Sensor;
+import com.smarthome.util.EventLog;
+import com.smarthome.util.Metrics;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Runs automation rules. In the default mode every rule is evaluated on each {@link #tick}.
+ * In event mode ({@link #startEventMode()}) the engine subscribes to the home's state changes
+ * and re-evaluates only rules whose declared {@link Dependency dependencies} match the change,
+ * on a dedicated dispatcher thread; {@link #tick} then only runs time-driven rules.
+ * With {@link #setCompiled(boolean) compiled} ticks, the rules are run through a shared
+ * {@link RuleNetwork} instead of the linear loop; with {@link #setParallel(boolean) parallel}
+ * ticks, conditions are evaluated concurrently and non-conflicting actions run concurrently.
+ * Compiled takes precedence when both are set. The linear loop evaluates each rule after the
+ * actions of the rules before it have run, so an action can enable a later rule in the same
+ * tick; compiled and parallel ticks evaluate every rule first and then run the actions, so
+ * such a rule fires on the next tick instead.
+ * With {@link #setProfiling(boolean) profiling} on, each rule's evaluations and time are
+ * recorded in its {@link RuleProfile} in any of these modes.
+ */
 public class AutomationEngine {
     private final Home home;
-    private final List<Rule> rules = new ArrayList<>();
+    private final List<Rule> rules = new CopyOnWriteArrayList<>(); // dashboard edits while the automation thread ticks
+
+    // Event mode state
+    private volatile RuleIndex index = RuleIndex.EMPTY;
+    private final BlockingQueue<Rule> pending = new LinkedBlockingQueue<>();
+    private final Set<Rule> queued = ConcurrentHashMap.newKeySet();
+    private final StateChangeListener listener = new StateChangeListener() {
+        @Override public void onDeviceChange(Room room, SmartDevice device) { dispatch(room, device); }
+        @Override public void onSensorChange(Room room, Sensor sensor) { dispatch(room, sensor); }
+    };
+    private volatile Thread dispatcher;
+    private volatile Rule running; // rule currently executing on the dispatcher thread
+
+    // Compiled tick state; the network is rebuilt lazily after rules or mode change
+    private volatile boolean compiled;
+    private volatile RuleNetwork network;
+    private volatile ParallelRuleExecutor parallel;
+    private volatile boolean profiling;
 
     public AutomationEngine(Home home) {
         this.home = home;
     }
 
-    public void addRule(Rule rule) {
+    /** Add a rule and export its fire count under {@link Metrics#RULE_FIRES} */
+    public synchronized void addRule(Rule rule) {
         rules.add(rule);
+        index = RuleIndex.build(rules);
+        network = null;
+        synchronized (Metrics.RULE_FIRES) { // engines share the series for a rule name
+            Metrics.RULE_FIRES.labels(rule.getName()).add(rule.getFireCounter());
+        }
     }
-    
-    public void removeRule(Rule rule) {
-        rules.remove(rule);
+
+    /**
+     * Remove a rule and its share of the {@link Metrics#RULE_FIRES} series, dropping the
+     * series once no rule of that name is left
+     */
+    public synchronized void removeRule(Rule rule) {
+        if (!rules.remove(rule)) return;
+        index = RuleIndex.build(rules);
+        network = null;
+        synchronized (Metrics.RULE_FIRES) {
+            if (Metrics.RULE_FIRES.labels(rule.getName()).remove(rule.getFireCounter())) {
+                Metrics.RULE_FIRES.remove(rule.getName());
+            }
+        }
     }
 
     public List<Rule> getRules() {
         return new ArrayList<>(rules);
     }
 
+    /**
+     * Run the ticked rules once; the duration is recorded in {@link Metrics#AUTOMATION_TICK}
+     */
     public void tick(long epochSeconds) {
-        Context ctx = new Context(home, epochSeconds);
+        long t0 = System.nanoTime();
+        try {
+            runTick(new Context(home, epochSeconds, profiling));
+        } finally {
+            Metrics.AUTOMATION_TICK.recordSince(t0);
+        }
+    }
+
+    private void runTick(Context ctx) {
+        boolean eventMode = isEventMode();
+        if (compiled) {
+            RuleNetwork n = network;
+            if (n == null) n = compileNetwork(eventMode);
+            n.tick(ctx);
+            return;
+        }
+        ParallelRuleExecutor executor = parallel;
+        if (executor != null) {
+            executor.run(tickedRules(eventMode), ctx);
+            return;
+        }
         for (Rule r : rules) {
+            if (eventMode && !r.isTickDriven()) continue;
             r.evaluateAndExecute(ctx);
         }
     }
+
+    /**
+     * Switch periodic ticks between the linear rule loop and a compiled {@link RuleNetwork}.
+     * Compiled ticks see the state from the start of the tick, so a rule enabled by another
+     * rule's action fires one tick later than in the linear loop. While compiled, the
+     * {@link #setParallel(boolean) parallel} setting is ignored.
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        network = null;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Evaluate rule conditions in parallel and run actions through a conflict-aware
+     * {@link ParallelRuleExecutor} on the common fork-join pool. As with compiled ticks,
+     * conditions see the state from the start of the tick. Has no effect while
+     * {@link #setCompiled(boolean) compiled} ticks are on.
+     */
+    public void setParallel(boolean enabled) {
+        this.parallel = enabled ? new ParallelRuleExecutor() : null;
+    }
+
+    public boolean isParallel() {
+        return parallel != null;
+    }
+
+    /**
+     * Record every rule evaluation, in ticks and in event mode, into the rule's
+     * {@link RuleProfile}; off by default, since timing each stage costs a few clock reads
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    public void resetProfiles() {
+        for (Rule r : rules) r.getProfile().reset();
+    }
+
+    /**
+     * Rules by time recorded in their profiles, most expensive first
+     */
+    public List<Rule> getRulesByCost() {
+        List<Rule> sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingLong((Rule r) -> r.getProfile().getTotalNanos()).reversed());
+        return sorted;
+    }
+
+    private synchronized RuleNetwork compileNetwork(boolean eventMode) {
+        if (network != null) return network;
+        network = RuleNetwork.compile(tickedRules(eventMode));
+        return network;
+    }
+
+    private List<Rule> tickedRules(boolean eventMode) {
+        List<Rule> ticked = new ArrayList<>();
+        for (Rule r : rules) if (!eventMode || r.isTickDriven()) ticked.add(r);
+        return ticked;
+    }
+
+    /**
+     * Subscribe to home state changes and evaluate dependent rules as changes happen
+     */
+    public synchronized void startEventMode() {
+        if (dispatcher != null) return;
+        Thread t = new Thread(this::drain, "automation-events");
+        t.setDaemon(true);
+        dispatcher = t;
+        home.addStateChangeListener(listener);
+        network = null;
+        t.start();
+    }
+
+    public synchronized void stopEventMode() {
+        Thread t = dispatcher;
+        if (t == null) return;
+        home.removeStateChangeListener(listener);
+        dispatcher = null;
+        network = null;
+        t.interrupt();
+        pending.clear();
+        queued.clear();
+    }
+
+    public boolean isEventMode() {
+        return dispatcher != null;
+    }
+
+    private void dispatch(Room room, SmartDevice device) {
+        for (Rule r : index.candidates(room.getName(), device.getName())) {
+            if (r.isAffectedBy(room, device)) enqueue(r);
+        }
+    }
+
+    private void dispatch(Room room, Sensor sensor) {
+        for (Rule r : index.candidates(room.getName(), null)) {
+            if (r.isAffectedBy(room, sensor)) enqueue(r);
+        }
+    }
+
+    private void enqueue(Rule rule) {
+        // A rule's own actions must not re-trigger it; coalesce repeated changes into one evaluation
+        if (rule == running && Thread.currentThread() == dispatcher) return;
+        if (queued.add(rule)) pending.add(rule);
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Rule rule;
+            try {
+                rule = pending.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            queued.remove(rule);
+            if (!index.contains(rule)) continue; // removed while queued
+            running = rule;
+            try {
+                rule.evaluateAndExecute(new Context(home, System.currentTimeMillis() / 1000L, profiling));
+            } catch (RuntimeException e) {
+                EventLog.warn("[Automation] Rule " + rule.getName() + " failed: " + e.getMessage());
+            } finally {
+                running = null;
+            }
+        }
+    }
+
+    /**
+     * Immutable lookup of event-driven rules by room and device name, rebuilt when rules change
+     */
+    private static final class RuleIndex {
+        static final RuleIndex EMPTY = new RuleIndex(Set.of(), Map.of(), Map.of(), List.of());
+
+        private final Set<Rule> members;
+        private final Map<String, List<Rule>> byRoom;
+        private final Map<String, List<Rule>> byDevice;
+        private final List<Rule> anywhere;
+
+        private RuleIndex(Set<Rule> members, Map<String, List<Rule>> byRoom, Map<String, List<Rule>> byDevice, List<Rule> anywhere) {
+            this.members = members;
+            this.byRoom = byRoom;
+            this.byDevice = byDevice;
+            this.anywhere = anywhere;
+        }
+
+        static RuleIndex build(List<Rule> rules) {
+            Map<String, List<Rule>> byRoom = new HashMap<>();
+            Map<String, List<Rule>> byDevice = new HashMap<>();
+            List<Rule> anywhere = new ArrayList<>();
+            for (Rule r : rules) {
+                for (Dependency d : r.getDependencies()) {
+                    if (d.isClock()) continue;
+                    List<Rule> bucket;
+                    if (d.getRoomName() != null) bucket = byRoom.computeIfAbsent(d.getRoomName(), k -> new ArrayList<>());
+                    else if (d.getDeviceName() != null) bucket = byDevice.computeIfAbsent(d.getDeviceName(), k -> new ArrayList<>());
+                    else bucket = anywhere;
+                    if (!bucket.contains(r)) bucket.add(r);
+                }
+            }
+            return new RuleIndex(new HashSet<>(rules), byRoom, byDevice, anywhere);
+        }
+
+        boolean contains(Rule rule) {
+            return members.contains(rule);
+        }
+
+        List<Rule> candidates(String roomName, String deviceName) {
+            List<Rule> inRoom = byRoom.getOrDefault(roomName.toLowerCase(Locale.ROOT), List.of());
+            List<Rule> forDevice = deviceName == null ? List.of() : byDevice.getOrDefault(deviceName.toLowerCase(Locale.ROOT), List.of());
+            if (forDevice.isEmpty() && anywhere.isEmpty()) return inRoom;
+            List<Rule> all = new ArrayList<>(inRoom);
+            all.addAll(forDevice);
+            all.addAll(anywhere);
+            return all;
+        }
+    }
 }
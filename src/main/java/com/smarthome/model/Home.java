@@ -2,25 +2,49 @@ package com.smarthome.model;
 
 import com.smarthome.model.devices.*;
 import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.Sensor;
 import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.util.EventLog;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 /**
- * Represents the entire smart home with multiple rooms and devices
+ * Represents the entire smart home with multiple rooms and devices.
+ * Safe for concurrent use: reads are lock-free over copy-on-write lists and
+ * concurrent maps, device writes lock only the affected room, and index
+ * maintenance is serialized on a small home-level lock.
  */
 public class Home {
     private String name;
     private String address;
     private List<Room> rooms;
     private Map<String, SmartDevice> deviceRegistry; // ID -> Device mapping
-    private boolean securitySystemArmed;
-    private double electricityRate; // Cost per kWh
+    private Map<String, Room> roomIndex; // lower-cased room name -> Room
+    private Map<String, SmartDevice> nameIndex; // lower-cased device name -> Device
+    private Map<Class<?>, List<SmartDevice>> typeIndex; // class (and superclasses) -> Devices
+    private final Object indexLock = new Object(); // guards compound index updates
+    private final LongAdder powerMicrowatts = new LongAdder(); // running total fed by room deltas
+    private final List<StateChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean securitySystemArmed;
+    private volatile double electricityRate; // Cost per kWh
+    private final AtomicBoolean dirty = new AtomicBoolean(true); // name, address, armed flag or rate unsaved
+    private final Set<Room> dirtyRooms = ConcurrentHashMap.newKeySet(); // rooms with unsaved changes
+    private final Set<Room> lazyRooms = ConcurrentHashMap.newKeySet(); // rooms whose contents are not loaded yet
+    private final AtomicLong version = new AtomicLong(); // bumped on every change, see getVersion
 
     public Home(String name, String address) {
         this.name = name;
         this.address = address;
-        this.rooms = new ArrayList<>();
-        this.deviceRegistry = new HashMap<>();
+        this.rooms = new CopyOnWriteArrayList<>();
+        this.deviceRegistry = new ConcurrentHashMap<>();
+        this.roomIndex = new ConcurrentHashMap<>();
+        this.nameIndex = new ConcurrentHashMap<>();
+        this.typeIndex = new ConcurrentHashMap<>();
         this.securitySystemArmed = false;
         this.electricityRate = 0.12; // Default $0.12 per kWh
     }
@@ -29,25 +53,233 @@ public class Home {
      * Add a room to the home
      */
     public void addRoom(Room room) {
-        rooms.add(room);
-        System.out.println("Added room: " + room.getName());
+        addRooms(Collections.singletonList(room));
+    }
+
+    /**
+     * Add several rooms at once; indexes are updated in one pass, which keeps loading
+     * a large home linear
+     */
+    public void addRooms(Collection<Room> added) {
+        synchronized (indexLock) {
+            rooms.addAll(added);
+            List<SmartDevice> devices = new ArrayList<>();
+            for (Room room : added) {
+                roomIndex.putIfAbsent(fold(room.getName()), room);
+                room.attach(this);
+                powerMicrowatts.add(room.getPowerMicrowatts());
+                devices.addAll(room.loadedDevices());
+                if (!room.isLoaded()) lazyRooms.add(room);
+            }
+            indexDevices(devices);
+        }
+        for (Room room : added) EventLog.info(() -> "Added room: " + room.getName());
+    }
+
+    /**
+     * Called by a room once its deferred contents are loaded
+     */
+    void roomLoaded(Room room, List<SmartDevice> devices) {
+        synchronized (indexLock) {
+            indexDevices(devices);
+        }
+        lazyRooms.remove(room);
+    }
+
+    /**
+     * Load every room still waiting on its content loader, indexing all of their devices
+     * in one batch; queries over the whole home call this first
+     */
+    public void loadAllRooms() {
+        loadRooms(room -> true);
+    }
+
+    /**
+     * Load the deferred rooms whose saved totals are unknown; enough for status queries
+     */
+    private void loadUnsummarizedRooms() {
+        loadRooms(room -> !room.hasSavedSummary());
+    }
+
+    private void loadRooms(Predicate<Room> which) {
+        if (lazyRooms.isEmpty()) return;
+        List<SmartDevice> devices = new ArrayList<>();
+        for (Room room : lazyRooms) {
+            if (!which.test(room)) continue;
+            List<SmartDevice> loaded = room.loadContents();
+            if (loaded != null) devices.addAll(loaded);
+        }
+        synchronized (indexLock) {
+            indexDevices(devices);
+        }
+        lazyRooms.removeIf(Room::isLoaded);
     }
 
     /**
      * Get room by name
      */
     public Room getRoom(String roomName) {
-        return rooms.stream()
-            .filter(r -> r.getName().equalsIgnoreCase(roomName))
-            .findFirst()
-            .orElse(null);
+        return roomName == null ? null : roomIndex.get(fold(roomName));
+    }
+
+    /**
+     * Add a device to the named room and index it
+     */
+    public void addDevice(String roomName, SmartDevice device) {
+        Room room = getRoom(roomName);
+        if (room == null) throw new IllegalArgumentException("Room not found: " + roomName);
+        room.addDevice(device);
+    }
+
+    /**
+     * Remove a device from whichever room holds it and drop it from the indexes
+     */
+    public boolean removeDevice(SmartDevice device) {
+        Room room = getRoom(device.getLocation());
+        if (room != null && room.removeDevice(device)) return true;
+        loadAllRooms();
+        for (Room r : rooms) {
+            if (r.removeDevice(device)) return true;
+        }
+        return unindexDevice(device);
     }
 
     /**
      * Register a device in the home
      */
     public void registerDevice(SmartDevice device) {
-        deviceRegistry.put(device.getId(), device);
+        indexDevice(device);
+    }
+
+    /**
+     * Called by rooms owned by this home whenever their device list changes.
+     */
+    void indexDevice(SmartDevice device) {
+        synchronized (indexLock) {
+            SmartDevice previous = deviceRegistry.put(device.getId(), device);
+            if (previous == device) return;
+            if (previous != null) unindexSecondary(previous);
+            nameIndex.putIfAbsent(fold(device.getName()), device);
+            for (Class<?> c = device.getClass(); c != null && SmartDevice.class.isAssignableFrom(c); c = c.getSuperclass()) {
+                typeIndex.computeIfAbsent(c, k -> new CopyOnWriteArrayList<>()).add(device);
+            }
+        }
+    }
+
+    /**
+     * Index a batch of devices, appending to each copy-on-write type bucket once
+     * instead of once per device.
+     */
+    private void indexDevices(List<SmartDevice> devices) {
+        Map<Class<?>, List<SmartDevice>> byType = new HashMap<>();
+        for (SmartDevice device : devices) {
+            SmartDevice previous = deviceRegistry.put(device.getId(), device);
+            if (previous == device) continue;
+            if (previous != null) unindexSecondary(previous);
+            nameIndex.putIfAbsent(fold(device.getName()), device);
+            for (Class<?> c = device.getClass(); c != null && SmartDevice.class.isAssignableFrom(c); c = c.getSuperclass()) {
+                byType.computeIfAbsent(c, k -> new ArrayList<>()).add(device);
+            }
+        }
+        byType.forEach((c, added) -> typeIndex.computeIfAbsent(c, k -> new CopyOnWriteArrayList<>()).addAll(added));
+    }
+
+    boolean unindexDevice(SmartDevice device) {
+        synchronized (indexLock) {
+            if (!deviceRegistry.remove(device.getId(), device)) return false;
+            unindexSecondary(device);
+            return true;
+        }
+    }
+
+    void reindexRoom(String oldName, Room room) {
+        synchronized (indexLock) {
+            roomIndex.remove(fold(oldName), room);
+            roomIndex.putIfAbsent(fold(room.getName()), room);
+        }
+    }
+
+    private void unindexSecondary(SmartDevice device) {
+        String key = fold(device.getName());
+        if (nameIndex.remove(key, device)) {
+            // Another device may share the name; fall back to the first remaining one
+            for (SmartDevice other : deviceRegistry.values()) {
+                if (fold(other.getName()).equals(key)) { nameIndex.put(key, other); break; }
+            }
+        }
+        for (Class<?> c = device.getClass(); c != null && SmartDevice.class.isAssignableFrom(c); c = c.getSuperclass()) {
+            List<SmartDevice> bucket = typeIndex.get(c);
+            if (bucket != null) bucket.remove(device);
+        }
+    }
+
+    void onPowerDelta(long microwatts) {
+        powerMicrowatts.add(microwatts);
+    }
+
+    /**
+     * Subscribe to device and sensor changes in any room of this home
+     */
+    public void addStateChangeListener(StateChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeStateChangeListener(StateChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    void markDirty(Room room) {
+        version.incrementAndGet();
+        dirtyRooms.add(room);
+    }
+
+    private void markDirty() {
+        version.incrementAndGet();
+        dirty.set(true);
+    }
+
+    /**
+     * Counter bumped by every device, sensor, room or home change; views derived from the
+     * home stay valid while it is unchanged
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Remove and return rooms that have unsaved changes; the caller drains each room's
+     * own flags. Rooms changed again afterwards are reported by the next call.
+     */
+    public List<Room> drainDirtyRooms() {
+        List<Room> drained = new ArrayList<>();
+        for (Iterator<Room> it = dirtyRooms.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+
+    /** True if the home's own fields (name, address, armed flag, rate) changed since last saved */
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    public boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    void fireDeviceChange(Room room, SmartDevice device) {
+        version.incrementAndGet();
+        for (StateChangeListener l : listeners) l.onDeviceChange(room, device);
+    }
+
+    void fireSensorChange(Room room, Sensor sensor) {
+        version.incrementAndGet();
+        for (StateChangeListener l : listeners) l.onSensorChange(room, sensor);
+    }
+
+    private static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -55,44 +287,64 @@ public class Home {
      */
     public SmartDevice getDeviceById(String deviceId) {
         SmartDevice d = deviceRegistry.get(deviceId);
+        if (d == null && !lazyRooms.isEmpty()) {
+            loadAllRooms();
+            d = deviceRegistry.get(deviceId);
+        }
         if (d == null) throw new DeviceNotFoundException("Device ID not found: " + deviceId);
         return d;
     }
 
     /**
-     * Get device by name (searches all rooms)
+     * Get device by name (searches all rooms, loading deferred ones until it is found)
      */
     public SmartDevice getDeviceByName(String deviceName) {
-        for (Room room : rooms) {
-            SmartDevice device = room.getDevice(deviceName);
-            if (device != null) return device;
+        String key = deviceName == null ? null : fold(deviceName);
+        SmartDevice device = key == null ? null : nameIndex.get(key);
+        for (Iterator<Room> it = lazyRooms.iterator(); device == null && key != null && it.hasNext(); ) {
+            it.next().getDevices(); // runs the loader, which indexes the room's devices
+            device = nameIndex.get(key);
         }
-        throw new DeviceNotFoundException("Device name not found: " + deviceName);
+        if (device == null) throw new DeviceNotFoundException("Device name not found: " + deviceName);
+        return device;
     }
 
     /**
      * Get all devices in the home
      */
     public List<SmartDevice> getAllDevices() {
+        loadAllRooms();
         List<SmartDevice> allDevices = new ArrayList<>();
         for (Room room : rooms) allDevices.addAll(room.getDevices());
         return allDevices;
     }
 
     /**
-     * Get all devices of a specific type
+     * Get all devices of a specific type (read-only view backed by the type index)
      */
     public List<SmartDevice> getDevicesByType(Class<? extends SmartDevice> deviceClass) {
-        List<SmartDevice> result = new ArrayList<>();
-        for (SmartDevice device : getAllDevices()) if (deviceClass.isInstance(device)) result.add(device);
-        return result;
+        loadAllRooms();
+        List<SmartDevice> bucket = typeIndex.get(deviceClass);
+        return bucket == null ? Collections.emptyList() : Collections.unmodifiableList(bucket);
+    }
+
+    /**
+     * Get the number of devices known to the home without copying any list; rooms not
+     * loaded yet count from their saved totals
+     */
+    public int getDeviceCount() {
+        loadUnsummarizedRooms();
+        int count = deviceRegistry.size();
+        for (Room room : lazyRooms) if (room.hasSavedSummary()) count += room.getDeviceCount();
+        return count;
     }
 
     /**
      * Turn off all devices in the entire home
      */
     public void turnOffAllDevices() {
-        System.out.println("\n🏠 Turning off all devices in " + name + "...");
+        EventLog.info(() -> "\n🏠 Turning off all devices in " + name + "...");
+        loadAllRooms();
         for (Room room : rooms) {
             room.turnOffAllDevices();
         }
@@ -102,7 +354,8 @@ public class Home {
      * Turn on all lights in the home
      */
     public void turnOnAllLights() {
-        System.out.println("\n💡 Turning on all lights in " + name + "...");
+        EventLog.info(() -> "\n💡 Turning on all lights in " + name + "...");
+        loadAllRooms();
         for (Room room : rooms) {
             room.turnOnAllLights();
         }
@@ -112,7 +365,7 @@ public class Home {
      * Lock all doors in the home
      */
     public void lockAllDoors() {
-        System.out.println("\n🔒 Locking all doors...");
+        EventLog.info("\n🔒 Locking all doors...");
         List<SmartDevice> locks = getDevicesByType(DoorLock.class);
         for (SmartDevice device : locks) ((DoorLock) device).lock();
     }
@@ -122,7 +375,8 @@ public class Home {
      */
     public void armSecuritySystem() {
         this.securitySystemArmed = true;
-        System.out.println("\n🛡️  SECURITY SYSTEM ARMED");
+        markDirty();
+        EventLog.info("\n🛡️  SECURITY SYSTEM ARMED");
         
         // Enable motion detection on all cameras
         List<SmartDevice> cameras = getDevicesByType(SecurityCamera.class);
@@ -143,15 +397,33 @@ public class Home {
      */
     public void disarmSecuritySystem() {
         this.securitySystemArmed = false;
-        System.out.println("\n🛡️  Security system disarmed");
+        markDirty();
+        EventLog.info("\n🛡️  Security system disarmed");
+    }
+
+    /**
+     * Restore the armed flag without touching cameras or locks (used when loading saved state)
+     */
+    public void setSecuritySystemArmed(boolean armed) {
+        this.securitySystemArmed = armed;
+        markDirty();
     }
 
     /**
-     * Get total power consumption of the entire home
+     * Get total power consumption of the entire home (running total, O(1))
      */
     public double getTotalPowerConsumption() {
+        loadUnsummarizedRooms(); // the others hold their saved draw
+        return powerMicrowatts.sum() / 1_000_000.0;
+    }
+
+    /**
+     * Re-sum every device in every room; a verification path for the running total
+     */
+    public double recomputePowerConsumption() {
+        loadAllRooms();
         return rooms.stream()
-            .mapToDouble(Room::getTotalPowerConsumption)
+            .mapToDouble(Room::recomputePowerConsumption)
             .sum();
     }
 
@@ -168,6 +440,7 @@ public class Home {
      * Get count of all active devices
      */
     public int getTotalActiveDevices() {
+        loadUnsummarizedRooms();
         return rooms.stream()
             .mapToInt(Room::getActiveDeviceCount)
             .sum();
@@ -177,53 +450,53 @@ public class Home {
      * Display complete home status
      */
     public void displayHomeStatus() {
-        System.out.println("\n" + "═".repeat(70));
-        System.out.println("🏠 " + name + " - Smart Home Status");
-        System.out.println("📍 " + address);
-        System.out.println("═".repeat(70));
+        EventLog.print("\n" + "═".repeat(70));
+        EventLog.print("🏠 " + name + " - Smart Home Status");
+        EventLog.print("📍 " + address);
+        EventLog.print("═".repeat(70));
         
-        System.out.printf("Rooms: %d | Total Devices: %d | Active: %d%n",
-            rooms.size(), getAllDevices().size(), getTotalActiveDevices());
+        EventLog.print(String.format("Rooms: %d | Total Devices: %d | Active: %d",
+            rooms.size(), getDeviceCount(), getTotalActiveDevices()));
         
-        System.out.printf("Power Consumption: %.1fW (%.2f kWh) | Cost: $%.2f/hour%n",
-            getTotalPowerConsumption(), getTotalPowerConsumption() / 1000.0, getEstimatedHourlyCost());
+        EventLog.print(String.format("Power Consumption: %.1fW (%.2f kWh) | Cost: $%.2f/hour",
+            getTotalPowerConsumption(), getTotalPowerConsumption() / 1000.0, getEstimatedHourlyCost()));
         
-        System.out.printf("Security System: %s%n",
-            securitySystemArmed ? "🛡️  ARMED" : "DISARMED");
+        EventLog.print(String.format("Security System: %s",
+            securitySystemArmed ? "🛡️  ARMED" : "DISARMED"));
         
-        System.out.println("═".repeat(70));
+        EventLog.print("═".repeat(70));
         
         // Display each room
         for (Room room : rooms) {
             room.displayDevices();
         }
         
-        System.out.println("═".repeat(70) + "\n");
+        EventLog.print("═".repeat(70) + "\n");
     }
 
     /**
      * Get a summary report
      */
     public void printSummaryReport() {
-        System.out.println("\n📊 HOME SUMMARY REPORT");
-        System.out.println("─".repeat(50));
-        System.out.println("Home: " + name);
-        System.out.println("Total Rooms: " + rooms.size());
-        System.out.println("Total Devices: " + getAllDevices().size());
-        System.out.println("Active Devices: " + getTotalActiveDevices());
-        System.out.printf("Current Power Draw: %.1f W%n", getTotalPowerConsumption());
-        System.out.printf("Estimated Daily Cost: $%.2f%n", getEstimatedHourlyCost() * 24);
-        System.out.printf("Estimated Monthly Cost: $%.2f%n", getEstimatedHourlyCost() * 24 * 30);
-        System.out.println("─".repeat(50));
+        EventLog.print("\n📊 HOME SUMMARY REPORT");
+        EventLog.print("─".repeat(50));
+        EventLog.print("Home: " + name);
+        EventLog.print("Total Rooms: " + rooms.size());
+        EventLog.print("Total Devices: " + getDeviceCount());
+        EventLog.print("Active Devices: " + getTotalActiveDevices());
+        EventLog.print(String.format("Current Power Draw: %.1f W", getTotalPowerConsumption()));
+        EventLog.print(String.format("Estimated Daily Cost: $%.2f", getEstimatedHourlyCost() * 24));
+        EventLog.print(String.format("Estimated Monthly Cost: $%.2f", getEstimatedHourlyCost() * 24 * 30));
+        EventLog.print("─".repeat(50));
         
         // Device type breakdown
-        System.out.println("\nDevice Breakdown:");
+        EventLog.print("\nDevice Breakdown:");
         Map<String, Long> deviceCounts = new HashMap<>();
         for (SmartDevice device : getAllDevices()) {
             deviceCounts.merge(device.getType(), 1L, Long::sum);
         }
         deviceCounts.forEach((type, count) -> 
-            System.out.println("  • " + type + ": " + count));
+            EventLog.print("  • " + type + ": " + count));
     }
 
     // Getters and Setters
@@ -233,6 +506,7 @@ public class Home {
 
     public void setName(String name) {
         this.name = name;
+        markDirty();
     }
 
     public String getAddress() {
@@ -241,6 +515,7 @@ public class Home {
 
     public void setAddress(String address) {
         this.address = address;
+        markDirty();
     }
 
     public List<Room> getRooms() {
@@ -257,11 +532,12 @@ public class Home {
 
     public void setElectricityRate(double rate) {
         this.electricityRate = rate;
+        markDirty();
     }
 
     @Override
     public String toString() {
         return String.format("Home[%s, %d rooms, %d devices]", 
-            name, rooms.size(), getAllDevices().size());
+            name, rooms.size(), getDeviceCount());
     }
 }
@@ -3,54 +3,276 @@ package com.smarthome.model;
 import com.smarthome.model.devices.*;
 import com.smarthome.model.SmartDevice;
 import com.smarthome.model.sensors.Sensor;
+import com.smarthome.util.EventLog;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Represents a room in the smart home containing multiple devices
+ * Represents a room in the smart home containing multiple devices.
+ * Device and sensor lists are copy-on-write so readers never block; writers
+ * serialize on this room's own lock, so rooms never contend with each other.
  */
 public class Room {
-    private String name;
+    private volatile String name;
     private String floor;
     private List<SmartDevice> devices;
     private List<Sensor> sensors;
     private double area; // Square meters
-    private double currentTemperature;
+    private volatile double currentTemperature;
+    private transient volatile Home home; // owning home, notified so it can keep its indexes current
+    private final transient Object writeLock = new Object();
+    private final transient LongAdder powerMicrowatts = new LongAdder(); // running total fed by device deltas
+    // Unsaved changes: structure is name, floor and membership; state is the temperature
+    private final transient AtomicBoolean structureDirty = new AtomicBoolean(true);
+    private final transient AtomicBoolean stateDirty = new AtomicBoolean();
+    private final transient Set<SmartDevice> dirtyDevices = ConcurrentHashMap.newKeySet();
+    private final transient Set<Sensor> dirtySensors = ConcurrentHashMap.newKeySet();
+    private transient volatile ContentLoader contentLoader; // devices and sensors not yet read, see setContentLoader
+    private transient Thread loadingThread; // guarded by writeLock
+    private transient volatile Summary savedSummary; // totals of contents not loaded yet, if known
+
+    /**
+     * Supplies a room's devices and sensors on first use by calling {@link #addDevice} and
+     * {@link #addSensor}; lets a large saved home be opened without decoding every room
+     */
+    @FunctionalInterface
+    public interface ContentLoader {
+        void load(Room room);
+    }
+
+    /** Device count, active devices and power of a room as last saved */
+    private static final class Summary {
+        final int devices, activeDevices;
+        final long powerMicrowatts;
+
+        Summary(int devices, int activeDevices, long powerMicrowatts) {
+            this.devices = devices;
+            this.activeDevices = activeDevices;
+            this.powerMicrowatts = powerMicrowatts;
+        }
+    }
 
     public Room(String name, String floor, double area) {
         this.name = name;
         this.floor = floor;
         this.area = area;
-        this.devices = new ArrayList<>();
-        this.sensors = new ArrayList<>();
+        this.devices = new CopyOnWriteArrayList<>();
+        this.sensors = new CopyOnWriteArrayList<>();
         this.currentTemperature = 20.0; // Default room temperature
     }
 
+    /**
+     * Defer this room's devices and sensors to {@code loader}, run once by whichever access
+     * first needs them. Loading does not mark the room or its contents as unsaved.
+     */
+    public void setContentLoader(ContentLoader loader) {
+        contentLoader = loader;
+    }
+
+    /**
+     * Defer contents as above, with the device count, active devices and power draw saved
+     * alongside them; until loaded, those totals answer status queries without loading
+     */
+    public void setContentLoader(ContentLoader loader, int deviceCount, int activeDevices, double powerWatts) {
+        synchronized (writeLock) {
+            Summary summary = new Summary(deviceCount, activeDevices, Math.round(powerWatts * 1_000_000.0));
+            contentLoader = loader;
+            savedSummary = summary;
+            onPowerDelta(summary.powerMicrowatts); // replaced by the devices' own draw once loaded
+        }
+    }
+
+    /** True while contents are pending and their saved totals are known */
+    boolean hasSavedSummary() {
+        return savedSummary != null;
+    }
+
+    /** False while a {@link ContentLoader} is still pending */
+    public boolean isLoaded() {
+        return contentLoader == null;
+    }
+
+    private void ensureLoaded() {
+        if (contentLoader == null) return;
+        List<SmartDevice> loaded = loadContents();
+        Home owner = home;
+        if (loaded != null && owner != null) owner.roomLoaded(this, loaded);
+    }
+
+    /**
+     * Run the pending loader, if any, without indexing the new devices in the home
+     * @return the devices loaded, or null if there was nothing to load
+     */
+    List<SmartDevice> loadContents() {
+        synchronized (writeLock) {
+            ContentLoader loader = contentLoader;
+            if (loader == null || loadingThread != null) return null;
+            int before = devices.size();
+            loadingThread = Thread.currentThread();
+            try {
+                loader.load(this);
+                contentLoader = null;
+                Summary summary = savedSummary;
+                if (summary != null) {
+                    savedSummary = null;
+                    onPowerDelta(-summary.powerMicrowatts);
+                }
+            } finally {
+                loadingThread = null;
+            }
+            return new ArrayList<>(devices.subList(before, devices.size()));
+        }
+    }
+
+    private boolean isLoading() {
+        return loadingThread == Thread.currentThread();
+    }
+
     /**
      * Add a device to this room
      */
     public void addDevice(SmartDevice device) {
-        devices.add(device);
-        device.setLocation(name);
-        System.out.println("Added " + device.getName() + " to " + name);
+        ensureLoaded();
+        synchronized (writeLock) {
+            devices.add(device);
+            device.setLocation(name);
+            device.bindRoom(this);
+            if (isLoading()) return; // indexed and announced by the home in one batch
+            Home owner = home;
+            if (owner != null) owner.indexDevice(device);
+            markStructureDirty();
+        }
+        EventLog.info(() -> "Added " + device.getName() + " to " + name);
     }
 
     /**
      * Add a sensor to this room
      */
     public void addSensor(Sensor sensor) {
+        ensureLoaded();
         sensors.add(sensor);
-        System.out.println("Added sensor " + sensor.getName() + " to " + name);
+        sensor.setChangeListener(this::onSensorChange);
+        if (isLoading()) return;
+        markStructureDirty();
+        EventLog.info(() -> "Added sensor " + sensor.getName() + " to " + name);
     }
 
     /**
      * Remove a device from this room
      */
-    public boolean removeDevice(SmartDevice device) { return devices.remove(device); }
+    public boolean removeDevice(SmartDevice device) {
+        ensureLoaded();
+        synchronized (writeLock) {
+            boolean removed = devices.remove(device);
+            if (removed) device.unbindRoom();
+            if (!removed) return false;
+            Home owner = home;
+            if (owner != null) owner.unindexDevice(device);
+            if (dirtyDevices.remove(device)) device.clearDirty();
+            markStructureDirty();
+            return true;
+        }
+    }
+
+    void attach(Home home) {
+        this.home = home;
+        markStructureDirty();
+    }
+
+    void onDeviceChange(SmartDevice device) {
+        if (device.markDirty()) {
+            dirtyDevices.add(device);
+            markDirtyInHome();
+        }
+        Home owner = home;
+        if (owner != null) owner.fireDeviceChange(this, device);
+    }
+
+    private void onSensorChange(Sensor sensor) {
+        if (sensor.markDirty()) {
+            dirtySensors.add(sensor);
+            markDirtyInHome();
+        }
+        Home owner = home;
+        if (owner != null) owner.fireSensorChange(this, sensor);
+    }
+
+    private void markStructureDirty() {
+        structureDirty.set(true);
+        markDirtyInHome();
+    }
+
+    private void markDirtyInHome() {
+        Home owner = home;
+        if (owner != null) owner.markDirty(this);
+    }
+
+    /** True if the name, floor or set of devices and sensors changed since last saved */
+    public boolean isStructureDirty() {
+        return structureDirty.get();
+    }
+
+    public boolean clearStructureDirty() {
+        return structureDirty.getAndSet(false);
+    }
+
+    /** Clear the temperature-changed flag; true if it was set */
+    public boolean clearStateDirty() {
+        return stateDirty.getAndSet(false);
+    }
+
+    /**
+     * Remove and return devices changed since they were last drained, clearing their flags
+     * first so changes made while they are being saved mark them again
+     */
+    public List<SmartDevice> drainDirtyDevices() {
+        List<SmartDevice> drained = new ArrayList<>();
+        for (Iterator<SmartDevice> it = dirtyDevices.iterator(); it.hasNext(); ) {
+            SmartDevice d = it.next();
+            it.remove();
+            d.clearDirty();
+            drained.add(d);
+        }
+        return drained;
+    }
+
+    /**
+     * Remove and return sensors with readings changed since they were last drained
+     */
+    public List<Sensor> drainDirtySensors() {
+        List<Sensor> drained = new ArrayList<>();
+        for (Iterator<Sensor> it = dirtySensors.iterator(); it.hasNext(); ) {
+            Sensor s = it.next();
+            it.remove();
+            s.clearDirty();
+            drained.add(s);
+        }
+        return drained;
+    }
+
+    void onPowerDelta(long microwatts) {
+        powerMicrowatts.add(microwatts);
+        Home owner = home;
+        if (owner != null) owner.onPowerDelta(microwatts);
+    }
+
+    long getPowerMicrowatts() {
+        return powerMicrowatts.sum();
+    }
+
+    /** Devices present now, without running a pending loader */
+    List<SmartDevice> loadedDevices() {
+        return new ArrayList<>(devices);
+    }
 
     /**
      * Get device by name
      */
     public SmartDevice getDevice(String deviceName) {
+        ensureLoaded();
         return devices.stream()
             .filter(d -> d.getName().equalsIgnoreCase(deviceName))
             .findFirst()
@@ -61,6 +283,7 @@ public class Room {
      * Get all devices of a specific type
      */
     public List<SmartDevice> getDevicesByType(String type) {
+        ensureLoaded();
         List<SmartDevice> result = new ArrayList<>();
         for (SmartDevice device : devices) {
             if (device.getType().equalsIgnoreCase(type)) {
@@ -74,7 +297,8 @@ public class Room {
      * Turn off all devices in the room
      */
     public void turnOffAllDevices() {
-        System.out.println("\n🔌 Turning off all devices in " + name + "...");
+        ensureLoaded();
+        EventLog.info(() -> "\n🔌 Turning off all devices in " + name + "...");
         for (SmartDevice device : devices) {
             if (device.isOn()) {
                 device.turnOff();
@@ -86,7 +310,8 @@ public class Room {
      * Turn on all lights in the room
      */
     public void turnOnAllLights() {
-        System.out.println("\n💡 Turning on all lights in " + name + "...");
+        ensureLoaded();
+        EventLog.info(() -> "\n💡 Turning on all lights in " + name + "...");
         for (SmartDevice device : devices) {
             if (device instanceof SmartLight) {
                 device.turnOn();
@@ -95,9 +320,18 @@ public class Room {
     }
 
     /**
-     * Get total power consumption of all devices in this room
+     * Get total power consumption of all devices in this room (running total, O(1))
      */
     public double getTotalPowerConsumption() {
+        if (savedSummary == null) ensureLoaded();
+        return powerMicrowatts.sum() / 1_000_000.0;
+    }
+
+    /**
+     * Re-sum every device's power draw; used to verify the running total
+     */
+    public double recomputePowerConsumption() {
+        ensureLoaded();
         return devices.stream()
             .mapToDouble(SmartDevice::getCurrentPowerConsumption)
             .sum();
@@ -107,15 +341,29 @@ public class Room {
      * Get count of active (on) devices
      */
     public int getActiveDeviceCount() {
+        Summary summary = savedSummary;
+        if (summary != null) return summary.activeDevices;
+        ensureLoaded();
         return (int) devices.stream()
             .filter(SmartDevice::isOn)
             .count();
     }
 
+    /**
+     * Get the number of devices in this room
+     */
+    public int getDeviceCount() {
+        Summary summary = savedSummary;
+        if (summary != null) return summary.devices;
+        ensureLoaded();
+        return devices.size();
+    }
+
     /**
      * Update temperature for thermostats in this room
      */
     public void updateTemperature(double ambientTemp) {
+        ensureLoaded();
         this.currentTemperature = ambientTemp;
         for (SmartDevice device : devices) {
             if (device instanceof Thermostat) {
@@ -128,6 +376,7 @@ public class Room {
      * Get room status summary
      */
     public String getStatusSummary() {
+        ensureLoaded();
         return String.format("%s (%s) - %d devices (%d active) - %.1fW - %.1f°C",
             name, floor, devices.size(), getActiveDeviceCount(), 
             getTotalPowerConsumption(), currentTemperature);
@@ -137,18 +386,19 @@ public class Room {
      * Display all devices in the room
      */
     public void displayDevices() {
-        System.out.println("\n📍 " + name + " (" + floor + "):");
-        System.out.println("─".repeat(60));
+        ensureLoaded();
+        EventLog.print("\n📍 " + name + " (" + floor + "):");
+        EventLog.print("─".repeat(60));
         if (devices.isEmpty()) {
-            System.out.println("  No devices in this room");
+            EventLog.print("  No devices in this room");
         } else {
             for (SmartDevice device : devices) {
-                System.out.printf("  • %s: %s (%.1fW)%n", 
-                    device.getName(), device.getStatus(), device.getCurrentPowerConsumption());
+                EventLog.print(String.format("  • %s: %s (%.1fW)", 
+                    device.getName(), device.getStatus(), device.getCurrentPowerConsumption()));
             }
         }
-        System.out.printf("  Total Power: %.1fW | Temperature: %.1f°C%n", 
-            getTotalPowerConsumption(), currentTemperature);
+        EventLog.print(String.format("  Total Power: %.1fW | Temperature: %.1f°C", 
+            getTotalPowerConsumption(), currentTemperature));
     }
 
     // Getters and Setters
@@ -157,7 +407,13 @@ public class Room {
     }
 
     public void setName(String name) {
-        this.name = name;
+        synchronized (writeLock) {
+            String oldName = this.name;
+            this.name = name;
+            Home owner = home;
+            if (owner != null) owner.reindexRoom(oldName, this);
+            markStructureDirty();
+        }
     }
 
     public String getFloor() {
@@ -166,11 +422,16 @@ public class Room {
 
     public void setFloor(String floor) {
         this.floor = floor;
+        markStructureDirty();
     }
 
-    public List<SmartDevice> getDevices() { return new ArrayList<>(devices); }
+    public List<SmartDevice> getDevices() {
+        ensureLoaded();
+        return new ArrayList<>(devices);
+    }
 
     public List<Sensor> getSensors() {
+        ensureLoaded();
         return new ArrayList<>(sensors);
     }
 
@@ -184,10 +445,13 @@ public class Room {
 
     public void setCurrentTemperature(double temperature) {
         this.currentTemperature = temperature;
+        stateDirty.set(true);
+        markDirtyInHome();
     }
 
     @Override
     public String toString() {
+        ensureLoaded();
         return String.format("Room[%s, %s, %d devices]", name, floor, devices.size());
     }
 }
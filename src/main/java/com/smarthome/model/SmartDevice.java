@@ -2,18 +2,27 @@ package com.smarthome.model;
 
 import com.smarthome.oop.Controllable;
 import com.smarthome.oop.EnergyConsumer;
+import com.smarthome.util.Metrics;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class SmartDevice implements Controllable, EnergyConsumer {
     protected String id;
     protected String name;
     protected String type;
-    protected boolean isOn;
+    protected volatile boolean isOn;
     protected String location;
-    protected LocalDateTime lastUpdated;
-    protected boolean isConnected;
+    protected volatile LocalDateTime lastUpdated;
+    protected volatile boolean isConnected;
+    private transient Room room; // owning room, receives power deltas
+    private transient long publishedMicrowatts; // power last reported to the room
+    private final transient AtomicBoolean dirty = new AtomicBoolean(); // state changed since last saved
 
     protected SmartDevice(String name, String type, String location) {
         this.id = UUID.randomUUID().toString();
@@ -26,17 +35,115 @@ public abstract class SmartDevice implements Controllable, EnergyConsumer {
     }
 
     @Override
-    public void turnOn() { if (isConnected) { isOn = true; lastUpdated = LocalDateTime.now(); onStateChange(); } }
+    public void turnOn() {
+        Metrics.DEVICE_COMMANDS.labels(type, "on").increment();
+        if (isConnected) { isOn = true; lastUpdated = LocalDateTime.now(); onSwitched(true); onStateChange(); }
+    }
 
     @Override
-    public void turnOff() { if (isConnected) { isOn = false; lastUpdated = LocalDateTime.now(); onStateChange(); } }
+    public void turnOff() {
+        Metrics.DEVICE_COMMANDS.labels(type, "off").increment();
+        if (isConnected) { isOn = false; lastUpdated = LocalDateTime.now(); onSwitched(false); onStateChange(); }
+    }
+
+    /**
+     * Called by {@link #turnOn} and {@link #turnOff} after {@code isOn} is set and before the
+     * change is published; subclasses update state that follows the switch here, so
+     * listeners see one change rather than an intermediate state
+     */
+    protected void onSwitched(boolean on) {}
 
     @Override
     public boolean isOn() { return isOn; }
 
     public void toggle() { if (isOn) turnOff(); else turnOn(); }
 
-    protected void onStateChange() { }
+    /**
+     * Called after any state change. Publishes the power delta since the last call to the
+     * owning room so room and home totals stay current without re-summing, and lets the
+     * home notify its state change listeners. Subclasses that override must call super.
+     * The delta is published under the same lock as {@link #bindRoom} and
+     * {@link #unbindRoom}, so it always reaches the room that {@code publishedMicrowatts}
+     * is accounted to; listeners are notified after the lock is released.
+     */
+    protected void onStateChange() {
+        Room owner;
+        synchronized (this) {
+            long now = toMicrowatts(getCurrentPowerConsumption());
+            long delta = now - publishedMicrowatts;
+            publishedMicrowatts = now;
+            owner = room;
+            if (owner != null && delta != 0) owner.onPowerDelta(delta);
+        }
+        if (owner != null) owner.onDeviceChange(this);
+    }
+
+    /** Account this device's current draw to {@code room} */
+    synchronized void bindRoom(Room room) {
+        this.room = room;
+        publishedMicrowatts = toMicrowatts(getCurrentPowerConsumption());
+        room.onPowerDelta(publishedMicrowatts);
+    }
+
+    /** Take back from the owning room everything published to it */
+    synchronized void unbindRoom() {
+        if (room != null) room.onPowerDelta(-publishedMicrowatts);
+        room = null;
+    }
+
+    static long toMicrowatts(double watts) { return Math.round(watts * 1_000_000.0); }
+
+    /**
+     * {@code value} rounded half-up to {@code decimals} places, as {@code %.Nf} prints it,
+     * without parsing a format string; status strings are built for every serialized device
+     */
+    protected static String fixed(double value, int decimals) {
+        return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * Flag unsaved state; called by the owning room on every change
+     * @return true if the device was clean
+     */
+    public boolean markDirty() {
+        return !dirty.get() && dirty.compareAndSet(false, true);
+    }
+
+    /**
+     * Clear the unsaved-state flag before reading state to save it
+     * @return true if the device was dirty
+     */
+    public boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    public boolean isDirty() { return dirty.get(); }
+
+    /**
+     * Persistable state as field name to string value. Subclasses add their own fields
+     * after calling super; {@link #applyStateField} must accept every field listed here.
+     */
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("on", String.valueOf(isOn));
+        fields.put("connected", String.valueOf(isConnected));
+        return fields;
+    }
+
+    /**
+     * Restore one field from {@link #getStateFields} directly, without the side effects of
+     * the public setters (used when replaying or loading saved state).
+     * @return false if the field is unknown
+     */
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "on": isOn = Boolean.parseBoolean(value); break;
+            case "connected": isConnected = Boolean.parseBoolean(value); break;
+            default: return false;
+        }
+        onStateChange();
+        return true;
+    }
 
     public abstract double getCurrentPowerConsumption();
     public abstract String getStatus();
@@ -48,7 +155,7 @@ public abstract class SmartDevice implements Controllable, EnergyConsumer {
     public void setLocation(String location) { this.location = location; }
     public LocalDateTime getLastUpdated() { return lastUpdated; }
     public boolean isConnected() { return isConnected; }
-    public void setConnected(boolean connected) { this.isConnected = connected; }
+    public void setConnected(boolean connected) { this.isConnected = connected; onStateChange(); }
 
     @Override
     public String toString() { return String.format("%s [%s] in %s - %s", name, type, location, isOn ? "ON" : "OFF"); }
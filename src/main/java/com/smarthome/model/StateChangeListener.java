@@ -0,0 +1,13 @@
+package com.smarthome.model;
+
+import com.smarthome.model.sensors.Sensor;
+
+/**
+ * Receives device and sensor state changes published by a {@link Home}.
+ * Callbacks run on the thread that made the change, so implementations should hand
+ * work off rather than block.
+ */
+public interface StateChangeListener {
+    default void onDeviceChange(Room room, SmartDevice device) { }
+    default void onSensorChange(Room room, Sensor sensor) { }
+}
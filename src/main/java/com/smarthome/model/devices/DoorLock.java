@@ -1,6 +1,9 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
+import java.util.Map;
 
 /**
  * Smart Door Lock with access control
@@ -21,9 +24,11 @@ public class DoorLock extends SmartDevice {
     }
 
     @Override
-    public void turnOn() {
-        super.turnOn();
-        lock();
+    protected void onSwitched(boolean on) {
+        if (on) {
+            this.isLocked = true;
+            EventLog.info(() -> "🔒 " + name + " LOCKED");
+        }
     }
 
     @Override
@@ -34,30 +39,32 @@ public class DoorLock extends SmartDevice {
 
     public boolean lock() {
         if (!isConnected) {
-            System.out.println("Cannot lock: " + name + " is disconnected");
+            EventLog.warn("Cannot lock: " + name + " is disconnected");
             return false;
         }
         this.isLocked = true;
-        System.out.println("🔒 " + name + " LOCKED");
+        onStateChange();
+        EventLog.info(() -> "🔒 " + name + " LOCKED");
         return true;
     }
 
     public boolean unlock(String code) {
         if (!isConnected) {
-            System.out.println("Cannot unlock: " + name + " is disconnected");
+            EventLog.warn("Cannot unlock: " + name + " is disconnected");
             return false;
         }
         
         if (code.equals(lockCode)) {
             this.isLocked = false;
-            System.out.println("🔓 " + name + " UNLOCKED");
+            onStateChange();
+            EventLog.info(() -> "🔓 " + name + " UNLOCKED");
             
             if (autoLockEnabled) {
-                System.out.println("Auto-lock will engage in " + autoLockDelay + " seconds");
+                EventLog.info(() -> "Auto-lock will engage in " + autoLockDelay + " seconds");
             }
             return true;
         } else {
-            System.out.println("❌ INVALID CODE for " + name);
+            EventLog.warn("❌ INVALID CODE for " + name);
             return false;
         }
     }
@@ -65,19 +72,41 @@ public class DoorLock extends SmartDevice {
     public void changeLockCode(String oldCode, String newCode) {
         if (oldCode.equals(lockCode)) {
             this.lockCode = newCode;
-            System.out.println("Lock code changed successfully for " + name);
+            EventLog.info(() -> "Lock code changed successfully for " + name);
         } else {
-            System.out.println("❌ Invalid old code. Cannot change lock code.");
+            EventLog.warn("❌ Invalid old code. Cannot change lock code.");
         }
     }
 
     public void setAutoLock(boolean enabled, int delaySeconds) {
         this.autoLockEnabled = enabled;
         this.autoLockDelay = delaySeconds;
-        System.out.println(name + " auto-lock " + (enabled ? "enabled" : "disabled") + 
+        onStateChange();
+        EventLog.info(() -> name + " auto-lock " + (enabled ? "enabled" : "disabled") + 
                          (enabled ? " with " + delaySeconds + "s delay" : ""));
     }
 
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("locked", String.valueOf(isLocked));
+        fields.put("autoLock", String.valueOf(autoLockEnabled));
+        fields.put("autoLockDelay", String.valueOf(autoLockDelay));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "locked": isLocked = Boolean.parseBoolean(value); break;
+            case "autoLock": autoLockEnabled = Boolean.parseBoolean(value); break;
+            case "autoLockDelay": autoLockDelay = Integer.parseInt(value); break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
+    }
+
     @Override
     public double getCurrentPowerConsumption() {
         return isConnected ? POWER : 0.0;
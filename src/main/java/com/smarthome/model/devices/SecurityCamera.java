@@ -1,7 +1,10 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Security Camera with motion detection and recording capabilities
@@ -26,29 +29,31 @@ public class SecurityCamera extends SmartDevice {
     @Override
     public void turnOn() {
         super.turnOn();
-        System.out.println(name + " is now monitoring");
+        EventLog.info(() -> name + " is now monitoring");
     }
 
     @Override
     public void turnOff() {
         super.turnOff();
         stopRecording();
-        System.out.println(name + " stopped monitoring");
+        EventLog.info(() -> name + " stopped monitoring");
     }
 
     public void startRecording() {
         if (!isOn) {
-            System.out.println("Cannot record: " + name + " is off");
+            EventLog.warn("Cannot record: " + name + " is off");
             return;
         }
         this.isRecording = true;
-        System.out.println(name + " started recording at " + resolution + "p");
+        onStateChange();
+        EventLog.info(() -> name + " started recording at " + resolution + "p");
     }
 
     public void stopRecording() {
         this.isRecording = false;
+        onStateChange();
         if (isOn) {
-            System.out.println(name + " stopped recording");
+            EventLog.info(() -> name + " stopped recording");
         }
     }
 
@@ -56,7 +61,7 @@ public class SecurityCamera extends SmartDevice {
         if (!isOn || !motionDetectionEnabled) return;
         
         this.lastMotionDetected = LocalDateTime.now();
-        System.out.println("⚠️  MOTION DETECTED by " + name + " at " + lastMotionDetected);
+        EventLog.warn("⚠️  MOTION DETECTED by " + name + " at " + lastMotionDetected);
         
         if (!isRecording) {
             startRecording();
@@ -68,22 +73,49 @@ public class SecurityCamera extends SmartDevice {
             throw new IllegalArgumentException("Resolution must be 720, 1080, or 2160 (4K)");
         }
         this.resolution = resolution;
-        System.out.println(name + " resolution set to " + resolution + "p");
+        onStateChange();
+        EventLog.info(() -> name + " resolution set to " + resolution + "p");
     }
 
     public void enableMotionDetection() {
         this.motionDetectionEnabled = true;
-        System.out.println(name + " motion detection enabled");
+        onStateChange();
+        EventLog.info(() -> name + " motion detection enabled");
     }
 
     public void disableMotionDetection() {
         this.motionDetectionEnabled = false;
-        System.out.println(name + " motion detection disabled");
+        onStateChange();
+        EventLog.info(() -> name + " motion detection disabled");
     }
 
     public void toggleNightVision() {
         this.nightVisionActive = !nightVisionActive;
-        System.out.println(name + " night vision " + (nightVisionActive ? "enabled" : "disabled"));
+        onStateChange();
+        EventLog.info(() -> name + " night vision " + (nightVisionActive ? "enabled" : "disabled"));
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("recording", String.valueOf(isRecording));
+        fields.put("motionDetection", String.valueOf(motionDetectionEnabled));
+        fields.put("resolution", String.valueOf(resolution));
+        fields.put("nightVision", String.valueOf(nightVisionActive));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "recording": isRecording = Boolean.parseBoolean(value); break;
+            case "motionDetection": motionDetectionEnabled = Boolean.parseBoolean(value); break;
+            case "resolution": resolution = Integer.parseInt(value); break;
+            case "nightVision": nightVisionActive = Boolean.parseBoolean(value); break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
     }
 
     @Override
@@ -1,6 +1,9 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
+import java.util.Map;
 
 /**
  * Smart Blinds/Curtains with automatic positioning
@@ -18,15 +21,8 @@ public class SmartBlinds extends SmartDevice {
     }
 
     @Override
-    public void turnOn() {
-        super.turnOn();
-        open();
-    }
-
-    @Override
-    public void turnOff() {
-        super.turnOff();
-        close();
+    protected void onSwitched(boolean on) {
+        moveTo(on ? 100 : 0);
     }
 
     public void open() {
@@ -43,27 +39,32 @@ public class SmartBlinds extends SmartDevice {
         }
         
         if (!isConnected) {
-            System.out.println("Cannot move: " + name + " is disconnected");
+            EventLog.warn("Cannot move: " + name + " is disconnected");
             return;
         }
         
-        int oldPosition = this.position;
-        this.position = position;
         this.isOn = position > 0;
         this.lastUpdated = java.time.LocalDateTime.now();
-        
+        moveTo(position);
+        onStateChange();
+    }
+
+    private void moveTo(int position) {
+        int oldPosition = this.position;
+        this.position = position;
         String movement = position > oldPosition ? "opening" : "closing";
-        System.out.println(name + " " + movement + " to " + position + "%");
+        EventLog.info(() -> name + " " + movement + " to " + position + "%");
     }
 
     public void tilt(int degrees) {
         // Simulate tilt adjustment (for horizontal blinds)
-        System.out.println(name + " tilted to " + degrees + " degrees");
+        EventLog.info(() -> name + " tilted to " + degrees + " degrees");
     }
 
     public void setAutoMode(boolean enabled) {
         this.autoMode = enabled;
-        System.out.println(name + " automatic mode " + (enabled ? "enabled" : "disabled"));
+        onStateChange();
+        EventLog.info(() -> name + " automatic mode " + (enabled ? "enabled" : "disabled"));
     }
 
     /**
@@ -81,6 +82,25 @@ public class SmartBlinds extends SmartDevice {
         }
     }
 
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("position", String.valueOf(position));
+        fields.put("autoMode", String.valueOf(autoMode));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "position": position = Integer.parseInt(value); break;
+            case "autoMode": autoMode = Boolean.parseBoolean(value); break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
+    }
+
     @Override
     public double getCurrentPowerConsumption() {
         if (!isConnected) return 0.0;
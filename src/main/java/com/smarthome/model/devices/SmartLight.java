@@ -1,6 +1,9 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
+import java.util.Map;
 
 /**
  * Smart Light with dimming and color temperature control
@@ -21,13 +24,13 @@ public class SmartLight extends SmartDevice {
     @Override
     public void turnOn() {
         super.turnOn();
-        System.out.println(name + " turned ON at " + brightness + "% brightness");
+        EventLog.info(() -> name + " turned ON at " + brightness + "% brightness");
     }
 
     @Override
     public void turnOff() {
         super.turnOff();
-        System.out.println(name + " turned OFF");
+        EventLog.info(() -> name + " turned OFF");
     }
 
     public void setBrightness(int brightness) {
@@ -36,7 +39,8 @@ public class SmartLight extends SmartDevice {
         }
         this.brightness = brightness;
         this.lastUpdated = java.time.LocalDateTime.now();
-        System.out.println(name + " brightness set to " + brightness + "%");
+        onStateChange();
+        EventLog.info(() -> name + " brightness set to " + brightness + "%");
     }
 
     public void dim(int amount) {
@@ -52,12 +56,35 @@ public class SmartLight extends SmartDevice {
             throw new IllegalArgumentException("Color temperature must be between 2700K and 6500K");
         }
         this.colorTemperature = kelvin;
-        System.out.println(name + " color temperature set to " + kelvin + "K");
+        onStateChange();
+        EventLog.info(() -> name + " color temperature set to " + kelvin + "K");
     }
 
     public void setColor(String hexColor) {
         this.color = hexColor;
-        System.out.println(name + " color set to " + hexColor);
+        onStateChange();
+        EventLog.info(() -> name + " color set to " + hexColor);
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("brightness", String.valueOf(brightness));
+        fields.put("colorTemperature", String.valueOf(colorTemperature));
+        fields.put("color", color);
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "brightness": brightness = Integer.parseInt(value); break;
+            case "colorTemperature": colorTemperature = Integer.parseInt(value); break;
+            case "color": color = value; break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
     }
 
     @Override
@@ -69,7 +96,7 @@ public class SmartLight extends SmartDevice {
     @Override
     public String getStatus() {
         if (!isOn) return "OFF";
-        return String.format("ON - %d%% brightness, %dK, %s", brightness, colorTemperature, color);
+        return "ON - " + brightness + "% brightness, " + colorTemperature + "K, " + color;
     }
 
     // Getters
@@ -1,6 +1,9 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
+import java.util.Map;
 
 /**
  * Smart Plug that can control power to connected devices
@@ -23,32 +26,35 @@ public class SmartPlug extends SmartDevice {
     @Override
     public void turnOn() {
         super.turnOn();
-        System.out.println(name + " turned ON" + 
+        EventLog.info(() -> name + " turned ON" + 
             (connectedDevice.equals("None") ? "" : " - Powering " + connectedDevice));
     }
 
     @Override
     public void turnOff() {
         super.turnOff();
-        System.out.println(name + " turned OFF" + 
+        EventLog.info(() -> name + " turned OFF" + 
             (connectedDevice.equals("None") ? "" : " - " + connectedDevice + " powered down"));
     }
 
     public void connectDevice(String deviceName, double powerRating) {
         this.connectedDevice = deviceName;
         this.connectedDevicePower = powerRating;
-        System.out.println(connectedDevice + " (" + powerRating + "W) connected to " + name);
+        onStateChange();
+        EventLog.info(() -> connectedDevice + " (" + powerRating + "W) connected to " + name);
     }
 
     public void disconnectDevice() {
-        System.out.println(connectedDevice + " disconnected from " + name);
+        EventLog.info(() -> connectedDevice + " disconnected from " + name);
         this.connectedDevice = "None";
         this.connectedDevicePower = 0.0;
+        onStateChange();
     }
 
     public void resetEnergyStats() {
         this.energyUsedToday = 0.0;
-        System.out.println("Energy statistics reset for " + name);
+        onStateChange();
+        EventLog.info(() -> "Energy statistics reset for " + name);
     }
 
     /**
@@ -58,7 +64,31 @@ public class SmartPlug extends SmartDevice {
         if (isOn && connectedDevicePower > 0) {
             double energyUsed = (connectedDevicePower / 1000.0) * hours; // Convert to kWh
             energyUsedToday += energyUsed;
+            onStateChange();
+        }
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("connectedDevice", connectedDevice);
+        fields.put("connectedDevicePower", String.valueOf(connectedDevicePower));
+        fields.put("scheduleEnabled", String.valueOf(scheduleEnabled));
+        fields.put("energyUsedToday", String.valueOf(energyUsedToday));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "connectedDevice": connectedDevice = value; break;
+            case "connectedDevicePower": connectedDevicePower = Double.parseDouble(value); break;
+            case "scheduleEnabled": scheduleEnabled = Boolean.parseBoolean(value); break;
+            case "energyUsedToday": energyUsedToday = Double.parseDouble(value); break;
+            default: return super.applyStateField(field, value);
         }
+        onStateChange();
+        return true;
     }
 
     @Override
@@ -77,7 +107,7 @@ public class SmartPlug extends SmartDevice {
             status.append(" | Connected: ").append(connectedDevice);
             status.append(" (").append(connectedDevicePower).append("W)");
         }
-        status.append(String.format(" | Today: %.2f kWh", energyUsedToday));
+        status.append(" | Today: ").append(fixed(energyUsedToday, 2)).append(" kWh");
         return status.toString();
     }
 
@@ -100,5 +130,6 @@ public class SmartPlug extends SmartDevice {
 
     public void setScheduleEnabled(boolean enabled) {
         this.scheduleEnabled = enabled;
+        onStateChange();
     }
 }
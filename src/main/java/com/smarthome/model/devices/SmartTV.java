@@ -2,6 +2,8 @@ package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
 
+import java.util.Map;
+
 public class SmartTV extends SmartDevice {
     private int volume; // 0-100
     private int channel;
@@ -19,11 +21,33 @@ public class SmartTV extends SmartDevice {
     public void setVolume(int volume) {
         if (volume < 0 || volume > 100) throw new IllegalArgumentException("Volume 0-100");
         this.volume = volume;
+        onStateChange();
+    }
+
+    public void channelUp() { channel++; onStateChange(); }
+    public void channelDown() { if (channel > 1) channel--; onStateChange(); }
+    public void openApp(String app) { this.app = app; if (!isOn) turnOn(); else onStateChange(); }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("volume", String.valueOf(volume));
+        fields.put("channel", String.valueOf(channel));
+        fields.put("app", app);
+        return fields;
     }
 
-    public void channelUp() { channel++; }
-    public void channelDown() { if (channel > 1) channel--; }
-    public void openApp(String app) { this.app = app; if (!isOn) turnOn(); }
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "volume": volume = Integer.parseInt(value); break;
+            case "channel": channel = Integer.parseInt(value); break;
+            case "app": app = value; break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
+    }
 
     @Override
     public double getCurrentPowerConsumption() {
@@ -35,6 +59,10 @@ public class SmartTV extends SmartDevice {
 
     @Override
     public String getStatus() {
-        return isOn ? String.format("Channel %d | Vol %d | App %s", channel, volume, app) : "OFF";
+        return isOn ? "Channel " + channel + " | Vol " + volume + " | App " + app : "OFF";
     }
+
+    public int getVolume() { return volume; }
+    public int getChannel() { return channel; }
+    public String getApp() { return app; }
 }
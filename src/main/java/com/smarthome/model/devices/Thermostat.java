@@ -1,6 +1,9 @@
 package com.smarthome.model.devices;
 
 import com.smarthome.model.SmartDevice;
+import com.smarthome.util.EventLog;
+
+import java.util.Map;
 
 /**
  * Smart Thermostat with heating/cooling modes and scheduling
@@ -33,15 +36,18 @@ public class Thermostat extends SmartDevice {
     @Override
     public void turnOn() {
         super.turnOn();
-        this.mode = ThermostatMode.AUTO;
-        System.out.println(name + " turned ON in AUTO mode");
+        EventLog.info(() -> name + " turned ON in AUTO mode");
     }
 
     @Override
     public void turnOff() {
         super.turnOff();
-        this.mode = ThermostatMode.OFF;
-        System.out.println(name + " turned OFF");
+        EventLog.info(() -> name + " turned OFF");
+    }
+
+    @Override
+    protected void onSwitched(boolean on) {
+        this.mode = on ? ThermostatMode.AUTO : ThermostatMode.OFF;
     }
 
     public void setTargetTemperature(double temperature) {
@@ -50,8 +56,9 @@ public class Thermostat extends SmartDevice {
         }
         this.targetTemperature = temperature;
         this.lastUpdated = java.time.LocalDateTime.now();
-        System.out.printf("%s target temperature set to %.1f°C%n", name, temperature);
+        EventLog.info(() -> name + " target temperature set to " + fixed(temperature, 1) + "°C");
         adjustMode();
+        onStateChange();
     }
 
     public void setMode(ThermostatMode mode) {
@@ -59,12 +66,14 @@ public class Thermostat extends SmartDevice {
         if (mode != ThermostatMode.OFF) {
             this.isOn = true;
         }
-        System.out.println(name + " mode set to " + mode);
+        onStateChange();
+        EventLog.info(() -> name + " mode set to " + mode);
     }
 
     public void setFanSpeed(FanSpeed speed) {
         this.fanSpeed = speed;
-        System.out.println(name + " fan speed set to " + speed);
+        onStateChange();
+        EventLog.info(() -> name + " fan speed set to " + speed);
     }
 
     /**
@@ -98,18 +107,42 @@ public class Thermostat extends SmartDevice {
             }
         }
         currentTemperature = Math.round(currentTemperature * 10.0) / 10.0;
+        onStateChange();
     }
 
     private void adjustMode() {
         if (mode == ThermostatMode.AUTO) {
             if (currentTemperature < targetTemperature - 2) {
-                System.out.println(name + " automatically switched to HEAT mode");
+                EventLog.info(() -> name + " automatically switched to HEAT mode");
             } else if (currentTemperature > targetTemperature + 2) {
-                System.out.println(name + " automatically switched to COOL mode");
+                EventLog.info(() -> name + " automatically switched to COOL mode");
             }
         }
     }
 
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("targetTemperature", String.valueOf(targetTemperature));
+        fields.put("currentTemperature", String.valueOf(currentTemperature));
+        fields.put("mode", mode.name());
+        fields.put("fanSpeed", fanSpeed.name());
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "targetTemperature": targetTemperature = Double.parseDouble(value); break;
+            case "currentTemperature": currentTemperature = Double.parseDouble(value); break;
+            case "mode": mode = ThermostatMode.valueOf(value); break;
+            case "fanSpeed": fanSpeed = FanSpeed.valueOf(value); break;
+            default: return super.applyStateField(field, value);
+        }
+        onStateChange();
+        return true;
+    }
+
     @Override
     public double getCurrentPowerConsumption() {
         if (!isOn || mode == ThermostatMode.OFF) return 0.0;
@@ -133,8 +166,8 @@ public class Thermostat extends SmartDevice {
 
     @Override
     public String getStatus() {
-        return String.format("Mode: %s, Current: %.1f°C, Target: %.1f°C, Fan: %s",
-            mode, currentTemperature, targetTemperature, fanSpeed);
+        return "Mode: " + mode + ", Current: " + fixed(currentTemperature, 1) + "°C, Target: "
+            + fixed(targetTemperature, 1) + "°C, Fan: " + fanSpeed;
     }
 
     // Getters
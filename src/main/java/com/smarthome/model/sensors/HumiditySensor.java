@@ -1,6 +1,7 @@
 package com.smarthome.model.sensors;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -10,7 +11,7 @@ public class HumiditySensor extends Sensor {
     private double currentHumidity; // Percentage 0-100
     private double minNormal = 30.0;
     private double maxNormal = 60.0;
-    private Random random = new Random();
+    private transient Random random = new Random();
 
     public HumiditySensor(String name, String location) {
         super(name, location);
@@ -25,6 +26,7 @@ public class HumiditySensor extends Sensor {
         currentHumidity = Math.max(0, Math.min(100, currentHumidity)); // Clamp to 0-100
         currentHumidity = Math.round(currentHumidity * 10.0) / 10.0;
         lastReading = LocalDateTime.now();
+        onReadingChange();
     }
 
     /**
@@ -36,6 +38,26 @@ public class HumiditySensor extends Sensor {
         }
         this.currentHumidity = humidity;
         this.lastReading = LocalDateTime.now();
+        onReadingChange();
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("humidity", String.valueOf(currentHumidity));
+        fields.put("minNormal", String.valueOf(minNormal));
+        fields.put("maxNormal", String.valueOf(maxNormal));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "humidity": currentHumidity = Double.parseDouble(value); return true;
+            case "minNormal": minNormal = Double.parseDouble(value); return true;
+            case "maxNormal": maxNormal = Double.parseDouble(value); return true;
+            default: return super.applyStateField(field, value);
+        }
     }
 
     @Override
@@ -43,6 +65,11 @@ public class HumiditySensor extends Sensor {
         return String.format("%.1f%%", currentHumidity);
     }
 
+    @Override
+    public double getNumericValue() {
+        return currentHumidity;
+    }
+
     @Override
     public boolean isValueNormal() {
         return currentHumidity >= minNormal && currentHumidity <= maxNormal;
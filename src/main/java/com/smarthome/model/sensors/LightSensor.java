@@ -1,6 +1,7 @@
 package com.smarthome.model.sensors;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -8,7 +9,7 @@ import java.util.Random;
  */
 public class LightSensor extends Sensor {
     private int lightLevel; // Lux (0-100000)
-    private Random random = new Random();
+    private transient Random random = new Random();
 
     public LightSensor(String name, String location) {
         super(name, location);
@@ -22,6 +23,7 @@ public class LightSensor extends Sensor {
         lightLevel += variation;
         lightLevel = Math.max(0, Math.min(100000, lightLevel));
         lastReading = LocalDateTime.now();
+        onReadingChange();
     }
 
     /**
@@ -33,6 +35,22 @@ public class LightSensor extends Sensor {
         }
         this.lightLevel = lux;
         this.lastReading = LocalDateTime.now();
+        onReadingChange();
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("lightLevel", String.valueOf(lightLevel));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "lightLevel": lightLevel = Integer.parseInt(value); return true;
+            default: return super.applyStateField(field, value);
+        }
     }
 
     @Override
@@ -40,6 +58,11 @@ public class LightSensor extends Sensor {
         return lightLevel + " lux (" + getLightDescription() + ")";
     }
 
+    @Override
+    public double getNumericValue() {
+        return lightLevel;
+    }
+
     @Override
     public boolean isValueNormal() {
         // Normal range depends on context, but we'll use typical indoor range
@@ -1,6 +1,9 @@
 package com.smarthome.model.sensors;
 
+import com.smarthome.util.EventLog;
+
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -10,7 +13,7 @@ public class MotionSensor extends Sensor {
     private boolean motionDetected;
     private LocalDateTime lastMotionTime;
     private int sensitivityLevel; // 1-10
-    private Random random = new Random();
+    private transient Random random = new Random();
 
     public MotionSensor(String name, String location) {
         super(name, location);
@@ -21,12 +24,12 @@ public class MotionSensor extends Sensor {
     @Override
     public void takeMeasurement() {
         // Simulate random motion detection
+        lastReading = LocalDateTime.now();
         if (random.nextInt(100) < 15) { // 15% chance of detecting motion
             detectMotion();
         } else {
-            motionDetected = false;
+            clearMotion();
         }
-        lastReading = LocalDateTime.now();
     }
 
     /**
@@ -35,14 +38,36 @@ public class MotionSensor extends Sensor {
     public void detectMotion() {
         this.motionDetected = true;
         this.lastMotionTime = LocalDateTime.now();
-        System.out.println("⚠️  MOTION DETECTED by " + name + " in " + location);
+        EventLog.warn("⚠️  MOTION DETECTED by " + name + " in " + location);
+        onReadingChange();
     }
 
     /**
      * Clear motion detection flag
      */
     public void clearMotion() {
+        boolean changed = motionDetected;
         this.motionDetected = false;
+        if (changed) onReadingChange();
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("motionDetected", String.valueOf(motionDetected));
+        fields.put("lastMotionTime", lastMotionTime == null ? null : lastMotionTime.toString());
+        fields.put("sensitivityLevel", String.valueOf(sensitivityLevel));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "motionDetected": motionDetected = Boolean.parseBoolean(value); return true;
+            case "lastMotionTime": lastMotionTime = value == null ? null : LocalDateTime.parse(value); return true;
+            case "sensitivityLevel": sensitivityLevel = Integer.parseInt(value); return true;
+            default: return super.applyStateField(field, value);
+        }
     }
 
     @Override
@@ -56,6 +81,11 @@ public class MotionSensor extends Sensor {
         }
     }
 
+    @Override
+    public double getNumericValue() {
+        return motionDetected ? 1.0 : 0.0;
+    }
+
     @Override
     public boolean isValueNormal() {
         // For security purposes, motion detection is "abnormal"
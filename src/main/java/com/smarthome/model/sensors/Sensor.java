@@ -1,6 +1,12 @@
 package com.smarthome.model.sensors;
 
+import com.smarthome.util.Metrics;
+
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Base class for environmental sensors
@@ -11,6 +17,9 @@ public abstract class Sensor {
     protected String location;
     protected LocalDateTime lastReading;
     protected boolean isActive;
+    private transient volatile Consumer<Sensor> changeListener; // set by the owning room
+    private final transient TimeSeries history = new TimeSeries();
+    private final transient AtomicBoolean dirty = new AtomicBoolean(); // reading changed since last saved
 
     public Sensor(String name, String location) {
         this.id = java.util.UUID.randomUUID().toString();
@@ -25,6 +34,15 @@ public abstract class Sensor {
      */
     public abstract void takeMeasurement();
 
+    /**
+     * Take a reading, timed into {@link Metrics#SENSOR_SAMPLE}
+     */
+    public void sample() {
+        long t0 = System.nanoTime();
+        takeMeasurement();
+        Metrics.SENSOR_SAMPLE.recordSince(t0);
+    }
+
     /**
      * Get current sensor value as a string
      */
@@ -35,6 +53,68 @@ public abstract class Sensor {
      */
     public abstract boolean isValueNormal();
 
+    /**
+     * Current reading as a number, recorded into the sensor's history
+     */
+    public abstract double getNumericValue();
+
+    /**
+     * Called by subclasses after every new reading so the owning room can publish it
+     */
+    protected void onReadingChange() {
+        history.record(System.currentTimeMillis(), getNumericValue());
+        Consumer<Sensor> l = changeListener;
+        if (l != null) l.accept(this);
+    }
+
+    /**
+     * Persistable state as field name to string value; subclasses add their readings
+     * after calling super. Reading history is not included.
+     */
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("active", String.valueOf(isActive));
+        fields.put("lastReading", lastReading == null ? null : lastReading.toString());
+        return fields;
+    }
+
+    /**
+     * Restore one field from {@link #getStateFields} without taking a reading or
+     * notifying the room
+     * @return false if the field is unknown
+     */
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "active": isActive = Boolean.parseBoolean(value); return true;
+            case "lastReading": lastReading = value == null ? null : LocalDateTime.parse(value); return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Flag an unsaved reading; called by the owning room on every change
+     * @return true if the sensor was clean
+     */
+    public boolean markDirty() {
+        return !dirty.get() && dirty.compareAndSet(false, true);
+    }
+
+    /**
+     * Clear the unsaved-reading flag before reading state to save it
+     * @return true if the sensor was dirty
+     */
+    public boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    public void setChangeListener(Consumer<Sensor> listener) {
+        this.changeListener = listener;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -48,6 +128,10 @@ public abstract class Sensor {
         return location;
     }
 
+    public TimeSeries getHistory() {
+        return history;
+    }
+
     public LocalDateTime getLastReading() {
         return lastReading;
     }
@@ -1,6 +1,7 @@
 package com.smarthome.model.sensors;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -10,7 +11,7 @@ public class TemperatureSensor extends Sensor {
     private double currentTemperature; // Celsius
     private double minNormal = 18.0;
     private double maxNormal = 26.0;
-    private Random random = new Random();
+    private transient Random random = new Random();
 
     public TemperatureSensor(String name, String location) {
         super(name, location);
@@ -24,6 +25,7 @@ public class TemperatureSensor extends Sensor {
         currentTemperature += variation;
         currentTemperature = Math.round(currentTemperature * 10.0) / 10.0;
         lastReading = LocalDateTime.now();
+        onReadingChange();
     }
 
     /**
@@ -32,6 +34,26 @@ public class TemperatureSensor extends Sensor {
     public void setTemperature(double temperature) {
         this.currentTemperature = temperature;
         this.lastReading = LocalDateTime.now();
+        onReadingChange();
+    }
+
+    @Override
+    public Map<String, String> getStateFields() {
+        Map<String, String> fields = super.getStateFields();
+        fields.put("temperature", String.valueOf(currentTemperature));
+        fields.put("minNormal", String.valueOf(minNormal));
+        fields.put("maxNormal", String.valueOf(maxNormal));
+        return fields;
+    }
+
+    @Override
+    public boolean applyStateField(String field, String value) {
+        switch (field) {
+            case "temperature": currentTemperature = Double.parseDouble(value); return true;
+            case "minNormal": minNormal = Double.parseDouble(value); return true;
+            case "maxNormal": maxNormal = Double.parseDouble(value); return true;
+            default: return super.applyStateField(field, value);
+        }
     }
 
     @Override
@@ -39,6 +61,11 @@ public class TemperatureSensor extends Sensor {
         return String.format("%.1f°C", currentTemperature);
     }
 
+    @Override
+    public double getNumericValue() {
+        return currentTemperature;
+    }
+
     @Override
     public boolean isValueNormal() {
         return currentTemperature >= minNormal && currentTemperature <= maxNormal;
@@ -0,0 +1,209 @@
+package com.smarthome.model.sensors;
+
+/**
+ * Fixed-size history of one sensor's readings. Raw samples live in primitive ring buffers
+ * and are rolled up as they arrive into 1-minute and 1-hour tiers holding min/max/sum/count,
+ * so recording and range queries never box. Rings start empty and double on demand up to
+ * their capacity, so a sensor whose history is never recorded costs no ring memory; once at
+ * capacity, oldest entries are overwritten. Timestamps are treated as non-decreasing; an
+ * earlier timestamp is clamped to the latest one.
+ */
+public class TimeSeries {
+    public static final long MINUTE_MILLIS = 60_000L;
+    public static final long HOUR_MILLIS = 3_600_000L;
+
+    public static final int DEFAULT_RAW_CAPACITY = 512;
+    public static final int DEFAULT_MINUTE_CAPACITY = 6 * 60;  // six hours
+    public static final int DEFAULT_HOUR_CAPACITY = 14 * 24;   // two weeks
+    private static final int INITIAL_CAPACITY = 8;
+    private static final long[] NO_LONGS = {};
+    private static final double[] NO_DOUBLES = {};
+    private static final int[] NO_INTS = {};
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(long timeMillis, double value);
+    }
+
+    @FunctionalInterface
+    public interface AggregateConsumer {
+        void accept(long bucketStartMillis, double min, double max, double avg, int count);
+    }
+
+    // Raw ring
+    private final int rawCapacity;
+    private long[] times = NO_LONGS;
+    private double[] values = NO_DOUBLES;
+    private int rawHead; // index of next write
+    private int rawSize;
+
+    private final Tier minutes;
+    private final Tier hours;
+
+    public TimeSeries() {
+        this(DEFAULT_RAW_CAPACITY, DEFAULT_MINUTE_CAPACITY, DEFAULT_HOUR_CAPACITY);
+    }
+
+    public TimeSeries(int rawCapacity, int minuteCapacity, int hourCapacity) {
+        if (rawCapacity < 1 || minuteCapacity < 1 || hourCapacity < 1) {
+            throw new IllegalArgumentException("Capacities must be positive");
+        }
+        this.rawCapacity = rawCapacity;
+        this.minutes = new Tier(MINUTE_MILLIS, minuteCapacity);
+        this.hours = new Tier(HOUR_MILLIS, hourCapacity);
+    }
+
+    public synchronized void record(long timeMillis, double value) {
+        if (rawSize > 0) {
+            long last = times[(rawHead - 1 + times.length) % times.length];
+            if (timeMillis < last) timeMillis = last;
+        }
+        if (rawSize == times.length && rawSize < rawCapacity) growRaw();
+        times[rawHead] = timeMillis;
+        values[rawHead] = value;
+        rawHead = (rawHead + 1) % times.length;
+        if (rawSize < times.length) rawSize++;
+        minutes.add(timeMillis, value);
+        hours.add(timeMillis, value);
+    }
+
+    /** Unroll the full raw ring, oldest first, into arrays twice as large */
+    private void growRaw() {
+        int capacity = grownCapacity(times.length, rawCapacity);
+        long[] t = new long[capacity];
+        double[] v = new double[capacity];
+        for (int i = 0; i < rawSize; i++) {
+            int idx = (rawHead + i) % times.length; // full, so the head is the oldest
+            t[i] = times[idx];
+            v[i] = values[idx];
+        }
+        times = t;
+        values = v;
+        rawHead = rawSize;
+    }
+
+    private static int grownCapacity(int current, int max) {
+        return (int) Math.min(max, Math.max(INITIAL_CAPACITY, 2L * current));
+    }
+
+    /**
+     * Visit raw samples with {@code from <= time < to}, oldest first
+     * @return number of samples visited
+     */
+    public synchronized int rawRange(long from, long to, SampleConsumer consumer) {
+        if (rawSize == 0) return 0;
+        int oldest = (rawHead - rawSize + times.length) % times.length;
+        int start = lowerBound(times, oldest, rawSize, from);
+        int n = 0;
+        for (int i = start; i < rawSize; i++) {
+            int idx = (oldest + i) % times.length;
+            if (times[idx] >= to) break;
+            consumer.accept(times[idx], values[idx]);
+            n++;
+        }
+        return n;
+    }
+
+    /** Visit 1-minute buckets that start in {@code [from, to)}, oldest first */
+    public synchronized int minuteRange(long from, long to, AggregateConsumer consumer) {
+        return minutes.range(from, to, consumer);
+    }
+
+    /** Visit 1-hour buckets that start in {@code [from, to)}, oldest first */
+    public synchronized int hourRange(long from, long to, AggregateConsumer consumer) {
+        return hours.range(from, to, consumer);
+    }
+
+    public synchronized int size() {
+        return rawSize;
+    }
+
+    /** Most recent value, or NaN if nothing was recorded */
+    public synchronized double latest() {
+        return rawSize == 0 ? Double.NaN : values[(rawHead - 1 + values.length) % values.length];
+    }
+
+    public synchronized long latestTime() {
+        return rawSize == 0 ? Long.MIN_VALUE : times[(rawHead - 1 + times.length) % times.length];
+    }
+
+    /** First logical position in the ring whose time is >= key */
+    private static int lowerBound(long[] ring, int oldest, int size, long key) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ring[(oldest + mid) % ring.length] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class Tier {
+        final long width;
+        final int capacity;
+        long[] starts = NO_LONGS;
+        double[] mins = NO_DOUBLES, maxs = NO_DOUBLES, sums = NO_DOUBLES;
+        int[] counts = NO_INTS;
+        int head; // index of the bucket currently being filled
+        int size;
+
+        Tier(long width, int capacity) {
+            this.width = width;
+            this.capacity = capacity;
+        }
+
+        void add(long time, double value) {
+            long start = Math.floorDiv(time, width) * width;
+            if (size == 0 || starts[head] != start) {
+                if (size == starts.length && size < capacity) grow();
+                if (size > 0) head = (head + 1) % starts.length;
+                if (size < starts.length) size++;
+                starts[head] = start;
+                mins[head] = value;
+                maxs[head] = value;
+                sums[head] = value;
+                counts[head] = 1;
+                return;
+            }
+            if (value < mins[head]) mins[head] = value;
+            if (value > maxs[head]) maxs[head] = value;
+            sums[head] += value;
+            counts[head]++;
+        }
+
+        /** Unroll the full ring, oldest first, into arrays twice as large */
+        private void grow() {
+            int length = grownCapacity(starts.length, capacity);
+            long[] s = new long[length];
+            double[] mn = new double[length], mx = new double[length], sm = new double[length];
+            int[] c = new int[length];
+            for (int i = 0; i < size; i++) {
+                int idx = (head + 1 + i) % starts.length; // full, so the oldest follows the head
+                s[i] = starts[idx];
+                mn[i] = mins[idx];
+                mx[i] = maxs[idx];
+                sm[i] = sums[idx];
+                c[i] = counts[idx];
+            }
+            starts = s;
+            mins = mn;
+            maxs = mx;
+            sums = sm;
+            counts = c;
+            head = Math.max(0, size - 1); // the newest bucket
+        }
+
+        int range(long from, long to, AggregateConsumer consumer) {
+            if (size == 0) return 0;
+            int oldest = (head - size + 1 + starts.length) % starts.length;
+            int start = lowerBound(starts, oldest, size, from);
+            int n = 0;
+            for (int i = start; i < size; i++) {
+                int idx = (oldest + i) % starts.length;
+                if (starts[idx] >= to) break;
+                consumer.accept(starts[idx], mins[idx], maxs[idx], sums[idx] / counts[idx], counts[idx]);
+                n++;
+            }
+            return n;
+        }
+    }
+}
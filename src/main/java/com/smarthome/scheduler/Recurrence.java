@@ -0,0 +1,134 @@
+package com.smarthome.scheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * When a scheduled task runs. {@link #next} returns the first run strictly after the given
+ * instant (epoch millis), or -1 when the task should not run again.
+ */
+public interface Recurrence {
+    long next(long afterMillis, ZoneId zone);
+
+    /** Once at the given instant */
+    static Recurrence once(Instant at) {
+        long millis = at.toEpochMilli();
+        return (after, zone) -> millis > after ? millis : -1;
+    }
+
+    /** Every day at the given local time, including across midnight */
+    static Recurrence daily(LocalTime time) {
+        return new Recurrence() {
+            @Override public long next(long after, ZoneId zone) {
+                ZonedDateTime from = Instant.ofEpochMilli(after).atZone(zone);
+                ZonedDateTime candidate = from.toLocalDate().atTime(time).atZone(zone);
+                if (!candidate.isAfter(from)) candidate = from.toLocalDate().plusDays(1).atTime(time).atZone(zone);
+                return candidate.toInstant().toEpochMilli();
+            }
+            @Override public String toString() { return "daily at " + time; }
+        };
+    }
+
+    /** At a fixed interval measured from the previous run, so runs do not drift */
+    static Recurrence every(Duration period) {
+        if (period.isZero() || period.isNegative()) throw new IllegalArgumentException("Period must be positive");
+        long millis = period.toMillis();
+        return new Recurrence() {
+            @Override public long next(long after, ZoneId zone) { return after + millis; }
+            @Override public String toString() { return "every " + period; }
+        };
+    }
+
+    /**
+     * Five-field cron expression: minute hour day-of-month month day-of-week (0 or 7 = Sunday).
+     * Fields accept {@code *}, numbers, ranges {@code a-b}, lists {@code a,b} and steps {@code /n}.
+     */
+    static Recurrence cron(String expression) {
+        return new Cron(expression);
+    }
+
+    final class Cron implements Recurrence {
+        private final String expression;
+        private final BitSet minutes, hours, daysOfMonth, months, daysOfWeek;
+        private final boolean anyDayOfMonth, anyDayOfWeek;
+
+        private Cron(String expression) {
+            String[] f = expression.trim().split("\\s+");
+            if (f.length != 5) throw new IllegalArgumentException("Cron needs 5 fields: " + expression);
+            this.expression = expression;
+            minutes = parse(f[0], 0, 59);
+            hours = parse(f[1], 0, 23);
+            daysOfMonth = parse(f[2], 1, 31);
+            months = parse(f[3], 1, 12);
+            daysOfWeek = parse(f[4], 0, 7);
+            if (daysOfWeek.get(7)) daysOfWeek.set(0);
+            anyDayOfMonth = f[2].equals("*");
+            anyDayOfWeek = f[4].equals("*");
+        }
+
+        private static BitSet parse(String field, int min, int max) {
+            BitSet bits = new BitSet(max + 1);
+            for (String part : field.split(",")) {
+                int step = 1;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    part = part.substring(0, slash);
+                }
+                int lo, hi;
+                if (part.equals("*")) { lo = min; hi = max; }
+                else if (part.contains("-")) {
+                    String[] r = part.split("-");
+                    lo = Integer.parseInt(r[0]);
+                    hi = Integer.parseInt(r[1]);
+                } else {
+                    lo = Integer.parseInt(part);
+                    hi = slash >= 0 ? max : lo;
+                }
+                if (lo < min || hi > max || lo > hi || step < 1) {
+                    throw new IllegalArgumentException("Bad cron field '" + field + "'");
+                }
+                for (int v = lo; v <= hi; v += step) bits.set(v);
+            }
+            return bits;
+        }
+
+        private boolean dayMatches(LocalDateTime t) {
+            boolean dom = daysOfMonth.get(t.getDayOfMonth());
+            boolean dow = daysOfWeek.get(t.getDayOfWeek().getValue() % 7);
+            // Standard cron: when both day fields are restricted, either may match
+            if (!anyDayOfMonth && !anyDayOfWeek) return dom || dow;
+            return dom && dow;
+        }
+
+        @Override
+        public long next(long after, ZoneId zone) {
+            LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(after), zone)
+                .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+            LocalDateTime limit = t.plusYears(5);
+            while (t.isBefore(limit)) {
+                if (!months.get(t.getMonthValue())) {
+                    t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+                } else if (!dayMatches(t)) {
+                    t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                } else if (!hours.get(t.getHour())) {
+                    t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                } else if (!minutes.get(t.getMinute())) {
+                    t = t.plusMinutes(1);
+                } else {
+                    return t.atZone(zone).toInstant().toEpochMilli();
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String toString() { return "cron " + expression; }
+    }
+}
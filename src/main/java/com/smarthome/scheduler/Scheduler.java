@@ -1,39 +1,234 @@
 package com.smarthome.scheduler;
 
+import com.smarthome.util.EventLog;
+
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Hierarchical timing-wheel scheduler. Tasks hash into one of {@value #LEVELS} wheels of
+ * {@value #SLOTS} slots by how far away they are, so insert and cancel are O(1) and each tick
+ * only touches the current slot (plus an occasional cascade from a coarser wheel). A single
+ * timer thread started with {@link #start()} drives the wheel; {@link #tick()} advances it
+ * manually for callers that run their own loop. Actions run on the advancing thread.
+ */
 public class Scheduler {
+    private static final int WHEEL_BITS = 6;
+    private static final int SLOTS = 1 << WHEEL_BITS; // 64
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 5; // 64^5 ticks: years at the default resolution
+    private static final long DEFAULT_TICK_MILLIS = 100;
+
     public static class ScheduledTask {
-        public final LocalTime time;
-        public final Runnable action;
         public final String description;
-        public ScheduledTask(LocalTime time, String description, Runnable action) {
-            this.time = time; this.description = description; this.action = action; }
+        public final Runnable action;
+        public final Recurrence recurrence;
+        private volatile long nextRunMillis;
+        private long deadlineTick;
+        private volatile boolean cancelled;
+        // Intrusive slot list links, guarded by the scheduler
+        private ScheduledTask prev, next;
+        private Slot slot;
+
+        ScheduledTask(String description, Runnable action, Recurrence recurrence) {
+            this.description = description; this.action = action; this.recurrence = recurrence; }
+
+        public long getNextRunMillis() { return nextRunMillis; }
+        public boolean isCancelled() { return cancelled; }
+
+        @Override
+        public String toString() { return description + " (" + recurrence + ")"; }
+    }
+
+    private static final class Slot {
+        final ScheduledTask head = new ScheduledTask(null, null, null); // sentinel
+        Slot() { head.prev = head; head.next = head; }
+
+        void add(ScheduledTask t) {
+            t.slot = this;
+            t.prev = head.prev;
+            t.next = head;
+            head.prev.next = t;
+            head.prev = t;
+        }
+
+        static void remove(ScheduledTask t) {
+            t.prev.next = t.next;
+            t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.slot = null;
+        }
+
+        /** Detach and return every task in this slot */
+        List<ScheduledTask> drain() {
+            List<ScheduledTask> out = new ArrayList<>();
+            for (ScheduledTask t = head.next; t != head; ) {
+                ScheduledTask n = t.next;
+                t.prev = t.next = null;
+                t.slot = null;
+                out.add(t);
+                t = n;
+            }
+            head.prev = head.next = head;
+            return out;
+        }
+    }
+
+    private final Clock clock;
+    private final long tickMillis;
+    private final long originMillis;
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    private final Set<ScheduledTask> tasks = ConcurrentHashMap.newKeySet();
+    private long currentTick;
+    private Thread timer;
+
+    public Scheduler() {
+        this(Clock.systemDefaultZone(), DEFAULT_TICK_MILLIS);
+    }
+
+    public Scheduler(Clock clock, long tickMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("Tick must be positive");
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.originMillis = clock.millis();
+        for (Slot[] wheel : wheels) for (int i = 0; i < SLOTS; i++) wheel[i] = new Slot();
     }
 
-    private final List<ScheduledTask> tasks = new ArrayList<>();
-    private LocalTime lastRunCheck = LocalTime.MIN;
+    /**
+     * Run the action every day at the given time
+     */
+    public ScheduledTask add(LocalTime time, String description, Runnable action) {
+        return schedule(Recurrence.daily(time), description, action);
+    }
+
+    /**
+     * Schedule an action; the first run is the recurrence's first occurrence after now
+     */
+    public ScheduledTask schedule(Recurrence recurrence, String description, Runnable action) {
+        ScheduledTask task = new ScheduledTask(description, action, recurrence);
+        long first = recurrence.next(clock.millis(), clock.getZone());
+        if (first < 0) return task;
+        tasks.add(task);
+        synchronized (this) {
+            place(task, first);
+        }
+        return task;
+    }
 
-    public void add(LocalTime time, String description, Runnable action) {
-        tasks.add(new ScheduledTask(time, description, action));
+    /**
+     * Remove a task in O(1); a run already in progress is not interrupted
+     */
+    public boolean cancel(ScheduledTask task) {
+        task.cancelled = true;
+        synchronized (this) {
+            if (task.slot != null) Slot.remove(task);
+        }
+        return tasks.remove(task);
     }
 
+    /**
+     * Advance the wheel to the current time, running every task that has come due
+     */
     public void tick() {
-        LocalTime now = LocalTime.now();
-        for (ScheduledTask t : tasks) {
-            if (!hasRun(t, now) && now.isAfter(t.time)) {
-                System.out.println("[Scheduler] Executing: " + t.description);
-                try { t.action.run(); } catch (Exception e) { System.out.println("[Scheduler] Task failed: " + e.getMessage()); }
+        advanceTo(clock.millis());
+    }
+
+    public synchronized void start() {
+        if (timer != null) return;
+        timer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long wait;
+                synchronized (this) {
+                    wait = originMillis + (currentTick + 1) * tickMillis - clock.millis();
+                }
+                try {
+                    if (wait > 0) Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                tick();
             }
-        }
-        lastRunCheck = now;
+        }, "scheduler-timer");
+        timer.setDaemon(true);
+        timer.start();
     }
 
-    private boolean hasRun(ScheduledTask t, LocalTime now) {
-        return lastRunCheck.isAfter(t.time) || lastRunCheck.equals(t.time);
+    public synchronized void stop() {
+        if (timer == null) return;
+        timer.interrupt();
+        timer = null;
     }
 
     public List<ScheduledTask> getTasks() { return new ArrayList<>(tasks); }
+
+    private void advanceTo(long millis) {
+        long target = Math.floorDiv(millis - originMillis, tickMillis);
+        while (true) {
+            List<ScheduledTask> due;
+            synchronized (this) {
+                if (currentTick >= target) return;
+                currentTick++;
+                cascade(currentTick);
+                due = wheels[0][(int) (currentTick & MASK)].drain();
+            }
+            for (ScheduledTask t : due) run(t, millis);
+        }
+    }
+
+    /** Move tasks from coarser wheels down whenever a finer wheel wraps */
+    private void cascade(long tick) {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) break;
+            int idx = (int) ((tick >>> (WHEEL_BITS * level)) & MASK);
+            for (ScheduledTask t : wheels[level][idx].drain()) insert(t);
+        }
+    }
+
+    private void run(ScheduledTask t, long nowMillis) {
+        if (t.cancelled) return;
+        EventLog.info(() -> "[Scheduler] Executing: " + t.description);
+        try { t.action.run(); } catch (Exception e) { EventLog.warn("[Scheduler] Task failed: " + e.getMessage()); }
+        long next = t.recurrence.next(t.nextRunMillis, clock.getZone());
+        // After a stall, skip missed runs instead of replaying them back to back
+        if (next >= 0 && next <= nowMillis) next = t.recurrence.next(nowMillis, clock.getZone());
+        if (next < 0 || t.cancelled) {
+            tasks.remove(t);
+            return;
+        }
+        synchronized (this) {
+            if (!t.cancelled) place(t, next);
+        }
+    }
+
+    private void place(ScheduledTask t, long runAtMillis) {
+        t.nextRunMillis = runAtMillis;
+        long tick = Math.floorDiv(runAtMillis - originMillis + tickMillis - 1, tickMillis); // round up
+        t.deadlineTick = Math.max(tick, currentTick + 1);
+        insert(t);
+    }
+
+    private void insert(ScheduledTask t) {
+        long deadline = t.deadlineTick;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            if ((deadline >>> shift) - (currentTick >>> shift) < SLOTS) {
+                wheels[level][(int) ((deadline >>> shift) & MASK)].add(t);
+                return;
+            }
+        }
+        // Beyond the top wheel: park in its furthest slot and re-insert when it cascades
+        int shift = WHEEL_BITS * (LEVELS - 1);
+        wheels[LEVELS - 1][(int) (((currentTick >>> shift) + SLOTS - 1) & MASK)].add(t);
+    }
+
+    @Override
+    public String toString() {
+        return "Scheduler{" + tasks.size() + " tasks, next tick at " +
+            Instant.ofEpochMilli(originMillis + (currentTick + 1) * tickMillis) + "}";
+    }
 }
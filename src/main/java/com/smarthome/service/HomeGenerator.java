@@ -0,0 +1,117 @@
+package com.smarthome.service;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.util.DataPersistence;
+import com.smarthome.util.DeviceFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds synthetic homes of any size for scalability and soak tests. Rooms, device types
+ * (drawn from a weighted mix of {@link DeviceFactory} types), sensor types and which devices
+ * start on all come from one seeded {@link Random}, so a seed always yields the same layout;
+ * device ids and sensor readings are not seeded.
+ * <pre>Home home = new HomeGenerator(42).rooms(500).devicesPerRoom(20).sensorsPerRoom(1.5).generate();</pre>
+ */
+public class HomeGenerator {
+    private static final String[] SENSOR_TYPES = {"LightSensor", "MotionSensor", "TemperatureSensor", "HumiditySensor"};
+    private static final int ROOMS_PER_FLOOR = 10;
+
+    private final long seed;
+    private int rooms = 10;
+    private int devicesPerRoom = 10;
+    private double sensorsPerRoom = 1.0;
+    private double onFraction = 0.3;
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+
+    public HomeGenerator(long seed) {
+        this.seed = seed;
+        // Roughly a lived-in home: mostly lights and plugs
+        mix.put("Smart Light", 40);
+        mix.put("Smart Plug", 20);
+        mix.put("Smart Blinds", 10);
+        mix.put("Thermostat", 8);
+        mix.put("Security Camera", 8);
+        mix.put("Door Lock", 7);
+        mix.put("Smart TV", 7);
+    }
+
+    public HomeGenerator rooms(int rooms) {
+        this.rooms = rooms;
+        return this;
+    }
+
+    public HomeGenerator devicesPerRoom(int devicesPerRoom) {
+        this.devicesPerRoom = devicesPerRoom;
+        return this;
+    }
+
+    /**
+     * Average sensors per room; a fraction gives some rooms one more sensor than others
+     */
+    public HomeGenerator sensorsPerRoom(double sensorsPerRoom) {
+        this.sensorsPerRoom = sensorsPerRoom;
+        return this;
+    }
+
+    /** Share of devices that start switched on */
+    public HomeGenerator onFraction(double onFraction) {
+        this.onFraction = onFraction;
+        return this;
+    }
+
+    /**
+     * Set the relative weight of a device type; 0 removes it from the mix
+     */
+    public HomeGenerator mix(String type, int weight) {
+        DeviceFactory.codec(type); // fail fast on an unknown type
+        if (weight <= 0) mix.remove(type);
+        else mix.put(type, weight);
+        return this;
+    }
+
+    /**
+     * Clear the mix, so only types added with {@link #mix} are generated
+     */
+    public HomeGenerator clearMix() {
+        mix.clear();
+        return this;
+    }
+
+    public Home generate() {
+        if (mix.isEmpty()) throw new IllegalStateException("device mix is empty");
+        Random random = new Random(seed);
+        String[] types = mix.keySet().toArray(new String[0]);
+        int[] cumulative = new int[types.length];
+        int total = 0;
+        for (int i = 0; i < types.length; i++) cumulative[i] = total += mix.get(types[i]);
+
+        Home home = new Home("Synthetic Home " + seed, rooms + " rooms");
+        List<Room> built = new ArrayList<>(rooms);
+        for (int r = 0; r < rooms; r++) {
+            Room room = new Room("Room " + r, "Floor " + (r / ROOMS_PER_FLOOR), 10 + random.nextInt(31));
+            for (int d = 0; d < devicesPerRoom; d++) {
+                int pick = random.nextInt(total);
+                int t = 0;
+                while (cumulative[t] <= pick) t++;
+                SmartDevice device = DeviceFactory.create(types[t], types[t] + " " + r + "-" + d, room.getName());
+                if (random.nextDouble() < onFraction) device.applyStateField("on", "true"); // a state, not a command
+                room.addDevice(device);
+            }
+            int sensors = (int) sensorsPerRoom + (random.nextDouble() < sensorsPerRoom % 1 ? 1 : 0);
+            for (int s = 0; s < sensors; s++) {
+                String type = SENSOR_TYPES[random.nextInt(SENSOR_TYPES.length)];
+                room.addSensor(DataPersistence.createSensor(type, type + " " + r + "-" + s, room.getName()));
+            }
+            built.add(room);
+        }
+        home.addRooms(built);
+        return home;
+    }
+}
@@ -0,0 +1,162 @@
+package com.smarthome.service;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.MotionSensor;
+import com.smarthome.model.sensors.Sensor;
+import com.smarthome.util.EventLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a home at fixed rates: toggles random devices, fires motion on random motion
+ * sensors and samples random sensors, through the same model methods as the UIs and the
+ * sampling loop, so automation, journaling, SSE and metrics all see the load. A driver
+ * thread ({@link #start}) applies the operations due every few milliseconds; tests can call
+ * {@link #advance} instead. Targets are picked from a seeded {@link Random}. Motion logs a
+ * warning per event, so run soak tests at {@code --log-level=error}.
+ */
+public class LoadSimulator {
+    private static final long STEP_MILLIS = 10;
+
+    private final Random random;
+    private final List<SmartDevice> devices;
+    private final List<MotionSensor> motionSensors = new ArrayList<>();
+    private final List<Sensor> sensors = new ArrayList<>();
+    private volatile double togglesPerSecond;
+    private volatile double motionPerSecond;
+    private volatile double samplesPerSecond;
+    private double toggleDue, motionDue, sampleDue; // fractional operations carried to the next step
+    private final AtomicLong toggles = new AtomicLong();
+    private final AtomicLong motionEvents = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile Thread driver;
+    private volatile long startedNanos;
+
+    /**
+     * Targets are the home's devices and sensors at construction
+     */
+    public LoadSimulator(Home home, long seed) {
+        this.random = new Random(seed);
+        this.devices = home.getAllDevices();
+        for (Room room : home.getRooms()) {
+            for (Sensor s : room.getSensors()) {
+                sensors.add(s);
+                if (s instanceof MotionSensor) motionSensors.add((MotionSensor) s);
+            }
+        }
+    }
+
+    public LoadSimulator toggles(double perSecond) {
+        this.togglesPerSecond = perSecond;
+        return this;
+    }
+
+    public LoadSimulator motion(double perSecond) {
+        this.motionPerSecond = perSecond;
+        return this;
+    }
+
+    public LoadSimulator samples(double perSecond) {
+        this.samplesPerSecond = perSecond;
+        return this;
+    }
+
+    /**
+     * Run the operations due over {@code seconds} at the configured rates, on this thread
+     */
+    public synchronized void advance(double seconds) {
+        toggleDue += togglesPerSecond * seconds;
+        motionDue += motionPerSecond * seconds;
+        sampleDue += samplesPerSecond * seconds;
+        for (; toggleDue >= 1; toggleDue--) {
+            if (devices.isEmpty()) { toggleDue = 0; break; }
+            run(() -> devices.get(random.nextInt(devices.size())).toggle(), toggles);
+        }
+        for (; motionDue >= 1; motionDue--) {
+            if (motionSensors.isEmpty()) { motionDue = 0; break; }
+            run(() -> motionSensors.get(random.nextInt(motionSensors.size())).detectMotion(), motionEvents);
+        }
+        for (; sampleDue >= 1; sampleDue--) {
+            if (sensors.isEmpty()) { sampleDue = 0; break; }
+            run(() -> sensors.get(random.nextInt(sensors.size())).sample(), samples);
+        }
+    }
+
+    private void run(Runnable op, AtomicLong count) {
+        try {
+            op.run();
+            count.incrementAndGet();
+        } catch (RuntimeException e) {
+            if (errors.incrementAndGet() == 1) EventLog.warn("[Load] Operation failed: " + e);
+        }
+    }
+
+    /**
+     * Apply the load on a daemon thread until {@link #stop}; a step that overruns is
+     * caught up on the next one, so the long-run rate holds while the home keeps up
+     */
+    public synchronized void start() {
+        if (driver != null) return;
+        startedNanos = System.nanoTime();
+        Thread t = new Thread(() -> {
+            long last = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(STEP_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                long now = System.nanoTime();
+                advance((now - last) / 1e9);
+                last = now;
+            }
+        }, "load-simulator");
+        t.setDaemon(true);
+        driver = t;
+        t.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = driver;
+            driver = null;
+        }
+        if (t == null) return;
+        t.interrupt();
+        try {
+            t.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return driver != null;
+    }
+
+    public long getToggles() { return toggles.get(); }
+    public long getMotionEvents() { return motionEvents.get(); }
+    public long getSamples() { return samples.get(); }
+    public long getErrors() { return errors.get(); }
+
+    /**
+     * Operation counts and achieved rates since {@link #start}
+     */
+    public String report() {
+        double seconds = startedNanos == 0 ? 0 : (System.nanoTime() - startedNanos) / 1e9;
+        return String.format("toggles %d (%.0f/s), motion %d (%.0f/s), samples %d (%.0f/s), errors %d over %.1f s",
+            getToggles(), rate(getToggles(), seconds), getMotionEvents(), rate(getMotionEvents(), seconds),
+            getSamples(), rate(getSamples(), seconds), getErrors(), seconds);
+    }
+
+    private static double rate(long count, double seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+}
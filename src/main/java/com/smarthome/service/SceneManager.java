@@ -4,6 +4,7 @@ import com.smarthome.model.Home;
 import com.smarthome.model.Room;
 import com.smarthome.model.SmartDevice;
 import com.smarthome.model.devices.*;
+import com.smarthome.util.EventLog;
 
 public class SceneManager {
     private final Home home;
@@ -16,9 +17,9 @@ public class SceneManager {
             case "movie": applyMovie(); break;
             case "night": applyNight(); break;
             case "morning": applyMorning(); break;
-            default: System.out.println("Unknown scene: " + scene); return;
+            default: EventLog.warn("Unknown scene: " + scene); return;
         }
-        System.out.println("[Scene] Applied: " + scene);
+        EventLog.info(() -> "[Scene] Applied: " + scene);
     }
 
     private void applyAway() {
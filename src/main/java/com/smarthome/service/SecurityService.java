@@ -4,6 +4,7 @@ import com.smarthome.model.Home;
 import com.smarthome.model.Room;
 import com.smarthome.model.devices.SecurityCamera;
 import com.smarthome.model.devices.DoorLock;
+import com.smarthome.util.EventLog;
 
 public class SecurityService {
     private final Home home;
@@ -17,7 +18,7 @@ public class SecurityService {
         Room room = home.getRoom(roomName);
         if (room == null) return;
         if (!home.isSecuritySystemArmed()) {
-            System.out.println("[Security] Motion ignored (system disarmed)");
+            EventLog.info("[Security] Motion ignored (system disarmed)");
             return;
         }
         // Start recording on all cameras in the home
@@ -30,7 +31,7 @@ public class SecurityService {
         }
         // Lock doors as precaution
         home.lockAllDoors();
-        System.out.println("[Security] Intrusion procedure executed for room " + roomName);
+        EventLog.warn("[Security] Intrusion procedure executed for room " + roomName);
     }
 
     public void unlockDoor(String name, String code) {
@@ -9,7 +9,11 @@ import com.smarthome.service.EnergyMonitor;
 import com.smarthome.service.SceneManager;
 import com.smarthome.service.SecurityService;
 import com.smarthome.util.DataPersistence;
+import com.smarthome.util.EventLog;
+import com.smarthome.util.WriteBehindPersister;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 public class ConsoleInterface {
@@ -19,6 +23,7 @@ public class ConsoleInterface {
     private EnergyMonitor energyMonitor;
     private SceneManager sceneManager;
     private SecurityService securityService;
+    private final Map<String, WriteBehindPersister> persisters = new HashMap<>(); // by save path
 
     public ConsoleInterface(Home home, HomeController controller) {
         this.home = home;
@@ -29,11 +34,12 @@ public class ConsoleInterface {
     }
 
     public void start() {
-        System.out.println("\nType 'help' for commands. Type 'exit' to quit.");
+        EventLog.print("\nType 'help' for commands. Type 'exit' to quit.");
         while (true) {
+            EventLog.flush(); // so the prompt follows the output of the last command
             System.out.print("smarthome> ");
             if (!scanner.hasNextLine()) {
-                System.out.println("(Input stream closed – exiting interactive mode)");
+                EventLog.print("(Input stream closed – exiting interactive mode)");
                 break;
             }
             String line = scanner.nextLine().trim();
@@ -42,9 +48,10 @@ public class ConsoleInterface {
             try {
                 handle(line);
             } catch (Exception e) {
-                System.out.println("Error: " + e.getMessage());
+                EventLog.print("Error: " + e.getMessage());
             }
         }
+        persisters.values().forEach(WriteBehindPersister::close); // let pending saves finish
     }
 
     private void handle(String line) {
@@ -58,7 +65,7 @@ public class ConsoleInterface {
                 home.displayHomeStatus();
                 break;
             case "rooms":
-                for (Room r : home.getRooms()) System.out.println("- " + r.getStatusSummary());
+                for (Room r : home.getRooms()) EventLog.print("- " + r.getStatusSummary());
                 break;
             case "devices":
                 String roomName = parts.length > 1 ? line.substring(line.indexOf(' ') + 1) : null;
@@ -66,7 +73,7 @@ public class ConsoleInterface {
                     for (Room r : home.getRooms()) r.displayDevices();
                 } else {
                     Room r = home.getRoom(roomName);
-                    if (r == null) System.out.println("Room not found"); else r.displayDevices();
+                    if (r == null) EventLog.print("Room not found"); else r.displayDevices();
                 }
                 break;
             case "add":
@@ -77,11 +84,11 @@ public class ConsoleInterface {
             case "off":
             case "toggle":
                 SmartDevice d = null;
-                try { d = home.getDeviceByName(line.substring(cmd.length()).trim()); } catch (Exception ex) { System.out.println(ex.getMessage()); break; }
+                try { d = home.getDeviceByName(line.substring(cmd.length()).trim()); } catch (Exception ex) { EventLog.print(ex.getMessage()); break; }
                 if (cmd.equals("on")) d.turnOn();
                 else if (cmd.equals("off")) d.turnOff();
                 else d.toggle();
-                System.out.println(d.getName() + " => " + d.getStatus());
+                EventLog.print(d.getName() + " => " + d.getStatus());
                 break;
             case "lights":
                 // lights <room> <brightness>
@@ -98,40 +105,44 @@ public class ConsoleInterface {
                 securityService.disarm();
                 break;
             case "scene":
-                if (parts.length < 2) System.out.println("Usage: scene <name>"); else sceneManager.apply(parts[1]);
+                if (parts.length < 2) EventLog.print("Usage: scene <name>"); else sceneManager.apply(parts[1]);
                 break;
             case "energy":
                 energyMonitor.update();
-                System.out.printf("Energy so far: %.3f kWh%n", energyMonitor.getCumulativeKWh());
+                EventLog.print(String.format("Energy so far: %.3f kWh", energyMonitor.getCumulativeKWh()));
                 break;
             case "save":
-                if (parts.length < 2) { System.out.println("Usage: save <file.json>"); break; }
-                try { DataPersistence.saveHome(home, parts[1]); System.out.println("Saved to " + parts[1]); } catch (Exception e) { System.out.println("Save failed: " + e.getMessage()); }
+                if (parts.length < 2) { EventLog.print("Usage: save <file.json|file.bin>"); break; }
+                // Written in the background; the prompt returns immediately
+                String target = parts[1];
+                persisters.computeIfAbsent(target, p -> new WriteBehindPersister(home, p)).requestSave()
+                    .thenRun(() -> EventLog.print("Saved to " + target));
+                EventLog.print("Saving to " + target + "...");
                 break;
             case "load":
-                if (parts.length < 2) { System.out.println("Usage: load <file.json>"); break; }
+                if (parts.length < 2) { EventLog.print("Usage: load <file.json|file.bin>"); break; }
                 try {
-                    Home loaded = DataPersistence.loadHome(parts[1]);
-                    System.out.println("Loaded home: " + loaded.getName());
+                    Home loaded = DataPersistence.loadHome(parts[1], true); // binary rooms decode on first use
+                    EventLog.print("Loaded home: " + loaded.getName());
                     loaded.displayHomeStatus();
-                } catch (Exception e) { System.out.println("Load failed: " + e.getMessage()); }
+                } catch (Exception e) { EventLog.print("Load failed: " + e.getMessage()); }
                 break;
             case "motion":
-                if (parts.length < 2) { System.out.println("Usage: motion <room>"); break; }
+                if (parts.length < 2) { EventLog.print("Usage: motion <room>"); break; }
                 securityService.simulateMotion(parts[1]);
                 break;
             default:
-                System.out.println("Unknown command. Type 'help'.");
+                EventLog.print("Unknown command. Type 'help'.");
         }
     }
 
     private void addDevice(String[] parts) {
-        if (parts.length < 4) { System.out.println("Usage: add device <type> <room> <name>"); return; }
+        if (parts.length < 4) { EventLog.print("Usage: add device <type> <room> <name>"); return; }
         String type = parts[2].toLowerCase();
         String room = parts[3];
         String name = parts.length >= 5 ? parts[4] : type + "-" + System.currentTimeMillis();
         Room r = home.getRoom(room);
-        if (r == null) { System.out.println("Room not found: " + room); return; }
+        if (r == null) { EventLog.print("Room not found: " + room); return; }
         SmartDevice device;
         switch (type) {
             case "light": device = new SmartLight(name, room); break;
@@ -141,18 +152,18 @@ public class ConsoleInterface {
             case "plug": device = new SmartPlug(name, room); break;
             case "blinds": device = new SmartBlinds(name, room); break;
             case "tv": device = new SmartTV(name, room); break;
-            default: System.out.println("Unsupported type: " + type); return;
+            default: EventLog.print("Unsupported type: " + type); return;
         }
         r.addDevice(device);
-        System.out.println("Added " + device);
+        EventLog.print("Added " + device);
     }
 
     private void handleLights(String[] parts) {
-        if (parts.length < 3) { System.out.println("Usage: lights <room> <brightness>"); return; }
+        if (parts.length < 3) { EventLog.print("Usage: lights <room> <brightness>"); return; }
         String room = parts[1];
         int brightness = Integer.parseInt(parts[2]);
         Room r = home.getRoom(room);
-        if (r == null) { System.out.println("Room not found: " + room); return; }
+        if (r == null) { EventLog.print("Room not found: " + room); return; }
         for (SmartDevice dev : r.getDevices()) {
             if (dev instanceof SmartLight) {
                 ((SmartLight) dev).setBrightness(brightness);
@@ -162,32 +173,32 @@ public class ConsoleInterface {
     }
 
     private void handleThermo(String[] parts) {
-        if (parts.length < 4) { System.out.println("Usage: thermo set <deviceName> <temp>"); return; }
-        if (!parts[1].equalsIgnoreCase("set")) { System.out.println("Usage: thermo set <deviceName> <temp>"); return; }
+        if (parts.length < 4) { EventLog.print("Usage: thermo set <deviceName> <temp>"); return; }
+        if (!parts[1].equalsIgnoreCase("set")) { EventLog.print("Usage: thermo set <deviceName> <temp>"); return; }
         String deviceName = parts[2];
         double temp = Double.parseDouble(parts[3]);
         SmartDevice d;
-        try { d = home.getDeviceByName(deviceName); } catch (Exception ex) { System.out.println(ex.getMessage()); return; }
-        if (!(d instanceof Thermostat)) { System.out.println("Thermostat not found: " + deviceName); return; }
+        try { d = home.getDeviceByName(deviceName); } catch (Exception ex) { EventLog.print(ex.getMessage()); return; }
+        if (!(d instanceof Thermostat)) { EventLog.print("Thermostat not found: " + deviceName); return; }
         ((Thermostat) d).setTargetTemperature(temp);
         d.turnOn();
     }
 
     private void printHelp() {
-        System.out.println("Commands:");
-        System.out.println("  status                        - Show full home status");
-        System.out.println("  rooms                         - List rooms summary");
-        System.out.println("  devices [room]                - List devices (optional room)");
-        System.out.println("  add device <type> <room> <name> - Add device");
-        System.out.println("  on|off|toggle <deviceName>    - Control device power");
-        System.out.println("  lights <room> <brightness>    - Set room lights brightness");
-        System.out.println("  thermo set <device> <temp>    - Set thermostat temperature");
-        System.out.println("  arm / disarm                  - Security system control");
-        System.out.println("  motion <room>                 - Simulate motion event (armed only)");
-        System.out.println("  scene <away|movie|night|morning> - Apply predefined scene");
-        System.out.println("  energy                        - Show cumulative energy usage");
-        System.out.println("  save <file.json>              - Persist current home state");
-        System.out.println("  load <file.json>              - Load home state from file");
-        System.out.println("  exit                          - Quit");
+        EventLog.print("Commands:");
+        EventLog.print("  status                        - Show full home status");
+        EventLog.print("  rooms                         - List rooms summary");
+        EventLog.print("  devices [room]                - List devices (optional room)");
+        EventLog.print("  add device <type> <room> <name> - Add device");
+        EventLog.print("  on|off|toggle <deviceName>    - Control device power");
+        EventLog.print("  lights <room> <brightness>    - Set room lights brightness");
+        EventLog.print("  thermo set <device> <temp>    - Set thermostat temperature");
+        EventLog.print("  arm / disarm                  - Security system control");
+        EventLog.print("  motion <room>                 - Simulate motion event (armed only)");
+        EventLog.print("  scene <away|movie|night|morning> - Apply predefined scene");
+        EventLog.print("  energy                        - Show cumulative energy usage");
+        EventLog.print("  save <file.json|file.bin>     - Persist current home state");
+        EventLog.print("  load <file.json|file.bin>     - Load home state from file");
+        EventLog.print("  exit                          - Quit");
     }
 }
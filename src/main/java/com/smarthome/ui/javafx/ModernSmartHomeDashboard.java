@@ -9,8 +9,11 @@ import com.smarthome.automation.Rule;
 import com.smarthome.automation.Trigger;
 import com.smarthome.automation.Action;
 import com.smarthome.automation.Context;
+import com.smarthome.automation.Condition;
+import com.smarthome.automation.RuleProfile;
 import com.smarthome.service.SceneManager;
 import com.smarthome.service.SecurityService;
+import com.smarthome.util.EventLog;
 import javafx.animation.*;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -1135,7 +1138,7 @@ public class ModernSmartHomeDashboard extends Application {
         
         allDevicesOffBtn = createActionButton("🔌 All Devices OFF", () -> {
             double powerBefore = home.getTotalPowerConsumption();
-            int deviceCount = home.getAllDevices().size();
+            int deviceCount = home.getDeviceCount();
             home.turnOffAllDevices();
             double powerSaved = powerBefore;
             showEnhancedAlert("Success",
@@ -2290,7 +2293,29 @@ public class ModernSmartHomeDashboard extends Application {
                            "-fx-font-weight: bold; -fx-cursor: hand; -fx-background-radius: 8; -fx-padding: 10 20;");
         addRuleBtn.setOnAction(e -> showAddRuleDialog());
         
-        header.getChildren().addAll(title, spacer1, addRuleBtn);
+        // Per-rule profiler: while on, rules are listed most expensive first
+        Button profileBtn = new Button(automationEngine.isProfiling() ? "Profiling: ON" : "Profiling: OFF");
+        profileBtn.setStyle("-fx-background-color: " + (automationEngine.isProfiling() ? SUCCESS : TEXT_SECONDARY) + "; -fx-text-fill: white; " +
+                           "-fx-font-weight: bold; -fx-cursor: hand; -fx-background-radius: 8; -fx-padding: 10 20;");
+        profileBtn.setOnAction(e -> {
+            automationEngine.setProfiling(!automationEngine.isProfiling());
+            refreshAutomationTab();
+        });
+        
+        Button resetProfileBtn = new Button("Reset Profile");
+        resetProfileBtn.setStyle("-fx-background-color: " + WARNING + "; -fx-text-fill: white; " +
+                                "-fx-font-weight: bold; -fx-cursor: hand; -fx-background-radius: 8; -fx-padding: 10 20;");
+        resetProfileBtn.setOnAction(e -> {
+            automationEngine.resetProfiles();
+            refreshAutomationTab();
+        });
+        
+        Button refreshProfileBtn = new Button("Refresh");
+        refreshProfileBtn.setStyle("-fx-background-color: " + PRIMARY + "; -fx-text-fill: white; " +
+                                  "-fx-font-weight: bold; -fx-cursor: hand; -fx-background-radius: 8; -fx-padding: 10 20;");
+        refreshProfileBtn.setOnAction(e -> refreshAutomationTab());
+        
+        header.getChildren().addAll(title, spacer1, profileBtn, resetProfileBtn, refreshProfileBtn, addRuleBtn);
         
         // Rules List
         VBox rulesList = new VBox(12);
@@ -2300,7 +2325,8 @@ public class ModernSmartHomeDashboard extends Application {
             emptyMsg.setStyle("-fx-text-fill: " + TEXT_SECONDARY + "; -fx-font-style: italic; -fx-padding: 20;");
             rulesList.getChildren().add(emptyMsg);
         } else {
-            for (Rule rule : automationEngine.getRules()) {
+            List<Rule> listed = automationEngine.isProfiling() ? automationEngine.getRulesByCost() : automationEngine.getRules();
+            for (Rule rule : listed) {
                 VBox ruleCard = createRuleCard(rule);
                 rulesList.getChildren().add(ruleCard);
             }
@@ -2441,11 +2467,45 @@ public class ModernSmartHomeDashboard extends Application {
         
         actions.getChildren().addAll(toggleBtn, editBtn, deleteBtn);
         
-        card.getChildren().addAll(ruleHeader, new Separator(), actions);
+        card.getChildren().addAll(ruleHeader, new Separator());
+        if (automationEngine.isProfiling() || rule.getProfile().getEvaluations() > 0) {
+            card.getChildren().add(createRuleProfileBox(rule));
+        }
+        card.getChildren().add(actions);
         
         return card;
     }
     
+    /**
+     * Profile of one rule: counts, time per stage and how often each condition stopped it
+     */
+    private VBox createRuleProfileBox(Rule rule) {
+        RuleProfile p = rule.getProfile();
+        VBox box = new VBox(4);
+        Label counts = new Label(String.format("Evaluated %d  |  Trigger hit %d  |  Fired %d",
+            p.getEvaluations(), p.getTriggerHits(), p.getActionsFired()));
+        counts.setStyle("-fx-text-fill: " + TEXT_PRIMARY + "; -fx-font-size: 12px; -fx-font-weight: bold;");
+        Label time = new Label(String.format("Time %.3f ms  (trigger %.3f, conditions %.3f, actions %.3f)",
+            p.getTotalNanos() / 1e6, p.getTriggerNanos() / 1e6, p.getConditionNanos() / 1e6, p.getActionNanos() / 1e6));
+        time.setStyle("-fx-text-fill: " + TEXT_SECONDARY + "; -fx-font-size: 12px;");
+        box.getChildren().addAll(counts, time);
+        List<Condition> conditions = rule.getConditions();
+        for (int i = 0; i < conditions.size(); i++) {
+            Label failed = new Label("  " + conditions.get(i).describe() + ": failed " + p.getConditionFailures(i) + "x");
+            failed.setStyle("-fx-text-fill: " + TEXT_SECONDARY + "; -fx-font-size: 11px;");
+            box.getChildren().add(failed);
+        }
+        return box;
+    }
+    
+    private void refreshAutomationTab() {
+        Platform.runLater(() -> {
+            automationTab.getChildren().clear();
+            VBox newContent = createAutomationContent();
+            automationTab.getChildren().setAll(newContent.getChildren());
+        });
+    }
+    
     private String getRuleDescription(String ruleName) {
         switch (ruleName) {
             case "Motion Light Rule":
@@ -2480,7 +2540,7 @@ public class ModernSmartHomeDashboard extends Application {
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
-        Label versionLabel = new Label("Smart Home v1.0 • " + home.getAllDevices().size() + " devices");
+        Label versionLabel = new Label("Smart Home v1.0 • " + home.getDeviceCount() + " devices");
         versionLabel.setStyle("-fx-text-fill: " + TEXT_SECONDARY + ";");
         
         statusBar.getChildren().addAll(statusLabel, spacer, versionLabel);
@@ -2577,9 +2637,6 @@ public class ModernSmartHomeDashboard extends Application {
         if (room != null) {
             boolean removed = room.removeDevice(device);
             if (removed) {
-                // Remove from device registry
-                home.getAllDevices().remove(device);
-                
                 // Refresh UI
                 refreshAllData();
                 
@@ -2823,7 +2880,7 @@ public class ModernSmartHomeDashboard extends Application {
         if (lightsOn) {
             rule.addAction(context -> {
                 home.turnOnAllLights();
-                System.out.println("✅ Rule '" + name + "': Turned ON all lights");
+                EventLog.info(() -> "✅ Rule '" + name + "': Turned ON all lights");
             });
         }
         
@@ -2836,7 +2893,7 @@ public class ModernSmartHomeDashboard extends Application {
                         }
                     }
                 }
-                System.out.println("🌑 Rule '" + name + "': Turned OFF all lights");
+                EventLog.info(() -> "🌑 Rule '" + name + "': Turned OFF all lights");
             });
         }
         
@@ -2849,7 +2906,7 @@ public class ModernSmartHomeDashboard extends Application {
                         }
                     }
                 }
-                System.out.println("🔅 Rule '" + name + "': Dimmed all lights to 20%");
+                EventLog.info(() -> "🔅 Rule '" + name + "': Dimmed all lights to 20%");
             });
         }
         
@@ -2862,7 +2919,7 @@ public class ModernSmartHomeDashboard extends Application {
                         }
                     }
                 }
-                System.out.println("🌡️ Rule '" + name + "': Set temperature to 22°C");
+                EventLog.info(() -> "🌡️ Rule '" + name + "': Set temperature to 22°C");
             });
         }
         
@@ -2875,27 +2932,27 @@ public class ModernSmartHomeDashboard extends Application {
                         }
                     }
                 }
-                System.out.println("❄️ Rule '" + name + "': Set temperature to 19°C");
+                EventLog.info(() -> "❄️ Rule '" + name + "': Set temperature to 19°C");
             });
         }
         
         if (securityOn) {
             rule.addAction(context -> {
                 securityService.arm();
-                System.out.println("🛡️ Rule '" + name + "': Armed security system");
+                EventLog.info(() -> "🛡️ Rule '" + name + "': Armed security system");
             });
         }
         
         if (securityOff) {
             rule.addAction(context -> {
                 securityService.disarm();
-                System.out.println("🔓 Rule '" + name + "': Disarmed security system");
+                EventLog.info(() -> "🔓 Rule '" + name + "': Disarmed security system");
             });
         }
         
         if (notification) {
             rule.addAction(context -> {
-                System.out.println("📢 Rule '" + name + "': Notification sent");
+                EventLog.info(() -> "📢 Rule '" + name + "': Notification sent");
             });
         }
         
@@ -3106,7 +3163,7 @@ public class ModernSmartHomeDashboard extends Application {
         totalPower.set(home.getTotalPowerConsumption());
         hourlyCost.set(home.getEstimatedHourlyCost());
         activeDevices.set(home.getTotalActiveDevices());
-        totalDevices.set(home.getAllDevices().size());
+        totalDevices.set(home.getDeviceCount());
         securityArmed.set(home.isSecuritySystemArmed());
         
         // Update device data with current filters applied
@@ -3138,7 +3195,7 @@ public class ModernSmartHomeDashboard extends Application {
     
     private void simulateSensorChanges() {
         home.getRooms().forEach(room -> {
-            room.getSensors().forEach(Sensor::takeMeasurement);
+            room.getSensors().forEach(Sensor::sample);
             
             // Simulate temperature changes
             double baseTemp = 21.0;
@@ -0,0 +1,376 @@
+package com.smarthome.util;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.Sensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary home snapshot holding the same content as the JSON written by
+ * {@link DataPersistence}: home flags, rooms, and the full state of every device and sensor.
+ * Strings are interned into a table as they are first written, so repeated room, type and
+ * field names cost one varint; numeric and boolean field values are stored as tagged varints
+ * or doubles and converted back to the exact original text. Writes go through a
+ * {@link FileChannel} and replace the file atomically; reads decode straight out of a
+ * memory-mapped view of the file.
+ * <p>
+ * Each room's devices and sensors form a self-contained body with its own string table,
+ * located through an index at the end of the file, which also records each room's device
+ * count, active devices and power draw. {@link #load(String, boolean) Lazy} loading reads
+ * only the index and decodes a room's body the first time it is used; until then status
+ * totals come from the index.
+ *
+ * <pre>
+ * file   := magic:int version:varint body* index offset(index):long
+ * index  := str(name) str(address) bool(armed) double(rate) varint(rooms)
+ *           (str(name) str(floor) double(area) double(temperature) varint(offset) varint(length)
+ *            varint(devices) varint(active) double(watts))*
+ * body   := varint(devices) entity* varint(sensors) entity*
+ * entity := str(type) str(name) varint(fields) (str(field) value)*
+ * value  := 0 null | 1 false | 2 true | 3 zigzag-varint | 4 double | 5 str
+ * str    := varint 0 varint(length) utf8 (appended to the table) | varint n (table[n - 1])
+ * </pre>
+ * Version 2 files (no room totals) and version 1 files (rooms inline after the home fields,
+ * one table) are still read.
+ */
+public class BinarySnapshot {
+    static final int MAGIC = 0x53484231; // "SHB1"
+    static final int VERSION = 3;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, LONG = 3, DOUBLE = 4, STRING = 5;
+
+    /**
+     * Save crash-safely: the file is replaced atomically once fully written and synced
+     */
+    public static void save(Home home, String path) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            AtomicFiles.write(Paths.get(path), ch -> write(home, ch));
+        } finally {
+            Metrics.PERSISTENCE_SAVE.labels("binary").recordSince(t0);
+        }
+    }
+
+    public static void write(Home home, WritableByteChannel ch) throws IOException {
+        Writer out = new Writer(ch);
+        out.buffer.putInt(MAGIC);
+        out.varint(VERSION);
+        List<Room> rooms = home.getRooms();
+        long[] offsets = new long[rooms.size() + 1];
+        int[] deviceCounts = new int[rooms.size()], activeCounts = new int[rooms.size()];
+        double[] watts = new double[rooms.size()];
+        for (int i = 0; i < rooms.size(); i++) {
+            offsets[i] = out.position();
+            out.table.clear();
+            List<SmartDevice> devices = writeContents(out, rooms.get(i));
+            deviceCounts[i] = devices.size();
+            for (SmartDevice d : devices) {
+                if (d.isOn()) activeCounts[i]++;
+                watts[i] += d.getCurrentPowerConsumption();
+            }
+        }
+        long index = offsets[rooms.size()] = out.position();
+        out.table.clear();
+        out.string(home.getName());
+        out.string(home.getAddress());
+        out.bool(home.isSecuritySystemArmed());
+        out.putDouble(home.getElectricityRate());
+        out.varint(rooms.size());
+        for (int i = 0; i < rooms.size(); i++) {
+            Room r = rooms.get(i);
+            out.string(r.getName());
+            out.string(r.getFloor());
+            out.putDouble(r.getArea());
+            out.putDouble(r.getCurrentTemperature());
+            out.varlong(offsets[i]);
+            out.varlong(offsets[i + 1] - offsets[i]);
+            out.varint(deviceCounts[i]);
+            out.varint(activeCounts[i]);
+            out.putDouble(watts[i]);
+        }
+        out.ensure(8);
+        out.buffer.putLong(index);
+        out.flush();
+    }
+
+    /** @return the devices written */
+    private static List<SmartDevice> writeContents(Writer out, Room r) throws IOException {
+        List<SmartDevice> devices = r.getDevices();
+        out.varint(devices.size());
+        for (SmartDevice d : devices) {
+            DeviceCodec<SmartDevice> codec = DeviceFactory.codecFor(d);
+            out.entity(codec.type(), d.getName(), codec.encode(d));
+        }
+        List<Sensor> sensors = r.getSensors();
+        out.varint(sensors.size());
+        for (Sensor s : sensors) out.entity(s.getClass().getSimpleName(), s.getName(), s.getStateFields());
+        return devices;
+    }
+
+    public static Home load(String path) throws IOException {
+        return load(path, false);
+    }
+
+    /**
+     * Load a snapshot; when {@code lazy}, only the room index is read up front and each room's
+     * devices and sensors are decoded on first use (see {@link Room#setContentLoader}), straight
+     * from the mapped file
+     */
+    public static Home load(String path, boolean lazy) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer file = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            Reader in = new Reader(file);
+            if (in.buffer.getInt() != MAGIC) throw new IOException("Not a binary snapshot: " + path);
+            int version = in.varint();
+            if (version > VERSION) throw new IOException("Unsupported snapshot version " + version);
+            if (version == 1) return loadInline(in);
+            in = new Reader(file.position((int) file.getLong(file.limit() - 8)));
+            Home home = new Home(in.string(), in.string());
+            home.setSecuritySystemArmed(in.bool());
+            home.setElectricityRate(in.buffer.getDouble());
+            int roomCount = in.varint();
+            List<Room> rooms = new ArrayList<>(roomCount);
+            for (int i = 0; i < roomCount; i++) {
+                Room room = new Room(in.string(), in.string(), in.buffer.getDouble());
+                room.setCurrentTemperature(in.buffer.getDouble());
+                ByteBuffer body = file.slice((int) in.varlong(), (int) in.varlong());
+                Room.ContentLoader loader = r -> readContents(new Reader(body), r);
+                if (version < 3) {
+                    if (lazy) room.setContentLoader(loader);
+                    else loader.load(room);
+                } else {
+                    int devices = in.varint(), active = in.varint();
+                    double watts = in.buffer.getDouble();
+                    if (lazy) room.setContentLoader(loader, devices, active, watts);
+                    else loader.load(room);
+                }
+                rooms.add(room);
+            }
+            home.addRooms(rooms);
+            return home;
+        }
+    }
+
+    // Version 1: rooms follow the home fields, sharing one string table
+    private static Home loadInline(Reader in) {
+        Home home = new Home(in.string(), in.string());
+        home.setSecuritySystemArmed(in.bool());
+        home.setElectricityRate(in.buffer.getDouble());
+        int roomCount = in.varint();
+        List<Room> rooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            Room room = new Room(in.string(), in.string(), in.buffer.getDouble());
+            room.setCurrentTemperature(in.buffer.getDouble());
+            readContents(in, room);
+            rooms.add(room);
+        }
+        home.addRooms(rooms);
+        return home;
+    }
+
+    private static void readContents(Reader in, Room room) {
+        int deviceCount = in.varint();
+        for (int j = 0; j < deviceCount; j++) {
+            room.addDevice(decode(DeviceFactory.codec(in.string()), in.string(), room.getName(), in));
+        }
+        int sensorCount = in.varint();
+        for (int j = 0; j < sensorCount; j++) {
+            Sensor s = DataPersistence.createSensor(in.string(), in.string(), room.getName());
+            int fields = in.varint();
+            for (int f = 0; f < fields; f++) {
+                String field = in.string();
+                String value = in.value();
+                if (s != null) s.applyStateField(field, value);
+            }
+            if (s != null) room.addSensor(s);
+        }
+    }
+
+    private static <T extends SmartDevice> T decode(DeviceCodec<T> codec, String name, String room, Reader in) {
+        T d = codec.create(name, room);
+        int fields = in.varint();
+        for (int f = 0; f < fields; f++) codec.decode(d, in.string(), in.value());
+        return d;
+    }
+
+    /** True if the file starts with the snapshot magic number */
+    public static boolean isSnapshot(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && ch.read(head) > 0) { }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC;
+        }
+    }
+
+    static final class Writer {
+        final WritableByteChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final Map<String, Integer> table = new HashMap<>();
+        long flushed; // bytes already handed to the channel
+
+        Writer(WritableByteChannel channel) { this.channel = channel; }
+
+        /** Bytes written so far, including those still buffered */
+        long position() { return flushed + buffer.position(); }
+
+        void entity(String type, String name, Map<String, String> fields) throws IOException {
+            string(type);
+            string(name);
+            varint(fields.size());
+            for (Map.Entry<String, String> f : fields.entrySet()) {
+                string(f.getKey());
+                value(f.getValue());
+            }
+        }
+
+        void value(String v) throws IOException {
+            if (v == null) { ensure(1); buffer.put(NULL); return; }
+            if (v.equals("false")) { ensure(1); buffer.put(FALSE); return; }
+            if (v.equals("true")) { ensure(1); buffer.put(TRUE); return; }
+            if (isCanonicalLong(v)) {
+                ensure(1);
+                buffer.put(LONG);
+                long n = Long.parseLong(v);
+                varlong((n << 1) ^ (n >> 63));
+                return;
+            }
+            if (isCanonicalDouble(v)) {
+                ensure(9);
+                buffer.put(DOUBLE).putDouble(Double.parseDouble(v));
+                return;
+            }
+            ensure(1);
+            buffer.put(STRING);
+            string(v);
+        }
+
+        void string(String s) throws IOException {
+            Integer ref = table.get(s);
+            if (ref != null) { varint(ref); return; }
+            table.put(s, table.size() + 1);
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(0);
+            varint(bytes.length);
+            if (bytes.length <= buffer.capacity()) {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            } else {
+                flush();
+                ByteBuffer big = ByteBuffer.wrap(bytes);
+                while (big.hasRemaining()) channel.write(big);
+                flushed += bytes.length;
+            }
+        }
+
+        void bool(boolean b) throws IOException { ensure(1); buffer.put(b ? TRUE : FALSE); }
+        void putDouble(double d) throws IOException { ensure(8); buffer.putDouble(d); }
+        void varint(int v) throws IOException { varlong(v & 0xFFFFFFFFL); }
+
+        void varlong(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buffer.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buffer.put((byte) v);
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    static final class Reader {
+        final ByteBuffer buffer;
+        final List<String> table = new ArrayList<>();
+        byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer buffer) { this.buffer = buffer; }
+
+        String value() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL: return null;
+                case FALSE: return "false";
+                case TRUE: return "true";
+                case LONG: {
+                    long z = varlong();
+                    return Long.toString((z >>> 1) ^ -(z & 1));
+                }
+                case DOUBLE: return Double.toString(buffer.getDouble());
+                case STRING: return string();
+                default: throw new IllegalStateException("Corrupt snapshot: value tag " + tag);
+            }
+        }
+
+        String string() {
+            int ref = varint();
+            if (ref > 0) return table.get(ref - 1);
+            int len = varint();
+            if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+            buffer.get(scratch, 0, len);
+            String s = new String(scratch, 0, len, StandardCharsets.UTF_8);
+            table.add(s);
+            return s;
+        }
+
+        boolean bool() { return buffer.get() == TRUE; }
+
+        int varint() { return (int) varlong(); }
+
+        long varlong() {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+    }
+
+    /** Digits with an optional minus and no redundant zeros, so Long.toString gives it back */
+    private static boolean isCanonicalLong(String s) {
+        int n = s.length();
+        if (n == 0) return false;
+        int start = s.charAt(0) == '-' ? 1 : 0;
+        if (n == start || n - start > 18) return false;
+        if (s.charAt(start) == '0' && (n - start > 1 || start == 1)) return false;
+        for (int i = start; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /** Text that Double.toString reproduces exactly (e.g. "21.5", "1.0E-4") */
+    private static boolean isCanonicalDouble(String s) {
+        if (s.isEmpty()) return false;
+        char c0 = s.charAt(0);
+        if (!(c0 == '-' || (c0 >= '0' && c0 <= '9')) || s.indexOf('.') < 0) return false;
+        try {
+            return Double.toString(Double.parseDouble(s)).equals(s);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.smarthome.util;
+
+import com.smarthome.model.devices.*;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Codecs for the device types shipped with the application
+ */
+public class BuiltinDeviceCodecs implements DeviceCodec.Provider {
+    @Override
+    public Collection<DeviceCodec<?>> codecs() {
+        return List.of(
+            DeviceCodec.of("Smart Light", SmartLight.class, SmartLight::new),
+            DeviceCodec.of("Thermostat", Thermostat.class, (name, room) -> new Thermostat(name, room, 21.0)),
+            DeviceCodec.of("Security Camera", SecurityCamera.class, SecurityCamera::new),
+            DeviceCodec.of("Door Lock", DoorLock.class, DoorLock::new),
+            DeviceCodec.of("Smart Plug", SmartPlug.class, SmartPlug::new),
+            DeviceCodec.of("Smart Blinds", SmartBlinds.class, SmartBlinds::new),
+            DeviceCodec.of("Smart TV", SmartTV.class, SmartTV::new));
+    }
+}
@@ -1,95 +1,288 @@
 package com.smarthome.util;
 
-import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.smarthome.model.*;
-import com.smarthome.model.devices.*;
 import com.smarthome.model.sensors.*;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Saves and loads a home as JSON. Both directions stream through Gson's {@link JsonWriter}
+ * and {@link JsonReader}, so no document tree is built and devices are created as they are
+ * read. Each device carries its full state as encoded by its {@link DeviceCodec}; the flat
+ * fields written by older versions (brightness, currentTemp, ...) are still accepted.
+ */
 public class DataPersistence {
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private static final int BUFFER_BYTES = 64 * 1024;
 
     public static void saveHome(Home home, String path) throws IOException {
-        JsonObject root = new JsonObject();
-        root.addProperty("name", home.getName());
-        root.addProperty("address", home.getAddress());
+        saveHome(home, path, false);
+    }
 
-        JsonArray roomsArr = new JsonArray();
-        for (Room r : home.getRooms()) {
-            JsonObject rObj = new JsonObject();
-            rObj.addProperty("name", r.getName());
-            rObj.addProperty("floor", r.getFloor());
-            rObj.addProperty("area", r.getArea());
+    /**
+     * Save crash-safely: the file is replaced atomically once fully written and synced
+     */
+    public static void saveHome(Home home, String path, boolean prettyPrint) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            AtomicFiles.write(Paths.get(path), ch -> writeHome(home, Channels.newOutputStream(ch), prettyPrint));
+        } finally {
+            Metrics.PERSISTENCE_SAVE.labels("json").recordSince(t0);
+        }
+    }
 
-            JsonArray devicesArr = new JsonArray();
+    /**
+     * Stream the home as JSON; the stream is flushed but not closed
+     */
+    public static void writeHome(Home home, OutputStream stream, boolean prettyPrint) throws IOException {
+        JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_BYTES));
+        if (prettyPrint) out.setIndent("  ");
+        out.beginObject();
+        out.name("name").value(home.getName());
+        out.name("address").value(home.getAddress());
+        out.name("securitySystemArmed").value(home.isSecuritySystemArmed());
+        out.name("electricityRate").value(home.getElectricityRate());
+        out.name("rooms").beginArray();
+        for (Room r : home.getRooms()) {
+            out.beginObject();
+            out.name("name").value(r.getName());
+            out.name("floor").value(r.getFloor());
+            out.name("area").value(r.getArea());
+            out.name("currentTemperature").value(r.getCurrentTemperature());
+            out.name("devices").beginArray();
             for (SmartDevice d : r.getDevices()) {
-                JsonObject dObj = new JsonObject();
-                dObj.addProperty("type", d.getType());
-                dObj.addProperty("name", d.getName());
-                dObj.addProperty("room", r.getName());
-                dObj.addProperty("on", d.isOn());
-                if (d instanceof SmartLight) {
-                    dObj.addProperty("brightness", ((SmartLight) d).getBrightness());
-                } else if (d instanceof Thermostat) {
-                    dObj.addProperty("currentTemp", ((Thermostat) d).getCurrentTemperature());
-                    dObj.addProperty("targetTemp", ((Thermostat) d).getTargetTemperature());
-                } else if (d instanceof DoorLock) {
-                    dObj.addProperty("locked", ((DoorLock) d).isLocked());
-                } else if (d instanceof SmartBlinds) {
-                    dObj.addProperty("position", ((SmartBlinds) d).getPosition());
-                }
-                devicesArr.add(dObj);
+                DeviceCodec<SmartDevice> codec = DeviceFactory.codecFor(d);
+                out.beginObject();
+                out.name("type").value(codec.type());
+                out.name("name").value(d.getName());
+                out.name("room").value(r.getName());
+                writeState(out, codec.encode(d));
+                out.endObject();
             }
-            rObj.add("devices", devicesArr);
-
-            JsonArray sensorsArr = new JsonArray();
+            out.endArray();
+            out.name("sensors").beginArray();
             for (Sensor s : r.getSensors()) {
-                JsonObject sObj = new JsonObject();
-                sObj.addProperty("type", s.getClass().getSimpleName());
-                sObj.addProperty("name", s.getName());
-                sensorsArr.add(sObj);
+                out.beginObject();
+                out.name("type").value(s.getClass().getSimpleName());
+                out.name("name").value(s.getName());
+                writeState(out, s.getStateFields());
+                out.endObject();
             }
-            rObj.add("sensors", sensorsArr);
-            roomsArr.add(rObj);
-        }
-        root.add("rooms", roomsArr);
-        try (FileWriter fw = new FileWriter(path)) {
-            gson.toJson(root, fw);
+            out.endArray();
+            out.endObject();
         }
+        out.endArray();
+        out.endObject();
+        out.flush();
     }
 
+    /**
+     * Load a home saved as JSON, as a {@link BinarySnapshot} (detected by its header), or as
+     * a {@link SnapshotStore} directory of base plus deltas
+     */
     public static Home loadHome(String path) throws IOException {
-        try (FileReader fr = new FileReader(path)) {
-            JsonObject root = JsonParser.parseReader(fr).getAsJsonObject();
-            Home home = new Home(root.get("name").getAsString(), root.get("address").getAsString());
-            JsonArray roomsArr = root.get("rooms").getAsJsonArray();
-            for (JsonElement re : roomsArr) {
-                JsonObject rObj = re.getAsJsonObject();
-                Room room = new Room(rObj.get("name").getAsString(), rObj.get("floor").getAsString(), rObj.get("area").getAsDouble());
-                home.addRoom(room);
-                JsonArray devs = rObj.get("devices").getAsJsonArray();
-                for (JsonElement de : devs) {
-                    SmartDevice d = DeviceFactory.fromJson(de.getAsJsonObject());
-                    room.addDevice(d);
-                }
-                JsonArray sens = rObj.get("sensors").getAsJsonArray();
-                for (JsonElement se : sens) {
-                    JsonObject sObj = se.getAsJsonObject();
-                    String type = sObj.get("type").getAsString();
-                    String name = sObj.get("name").getAsString();
-                    switch (type) {
-                        case "LightSensor": room.addSensor(new LightSensor(name, room.getName())); break;
-                        case "TemperatureSensor": room.addSensor(new TemperatureSensor(name, room.getName())); break;
-                        case "MotionSensor": room.addSensor(new MotionSensor(name, room.getName())); break;
-                        case "HumiditySensor": room.addSensor(new HumiditySensor(name, room.getName())); break;
-                        default: break;
-                    }
+        return loadHome(path, false);
+    }
+
+    /**
+     * Load a home; when {@code lazy}, binary snapshots are opened from their room index and
+     * each room's devices and sensors are decoded on first use. JSON is always read eagerly.
+     */
+    public static Home loadHome(String path, boolean lazy) throws IOException {
+        if (Files.isDirectory(Paths.get(path))) return SnapshotStore.load(path, lazy);
+        if (BinarySnapshot.isSnapshot(path)) return BinarySnapshot.load(path, lazy);
+        try (JsonReader in = new JsonReader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(Paths.get(path)), StandardCharsets.UTF_8), BUFFER_BYTES))) {
+            String name = null, address = null;
+            boolean armed = false;
+            double rate = Double.NaN;
+            List<Room> rooms = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name": name = in.nextString(); break;
+                    case "address": address = in.nextString(); break;
+                    case "securitySystemArmed": armed = in.nextBoolean(); break;
+                    case "electricityRate": rate = in.nextDouble(); break;
+                    case "rooms":
+                        in.beginArray();
+                        while (in.hasNext()) rooms.add(readRoom(in));
+                        in.endArray();
+                        break;
+                    default: in.skipValue();
                 }
             }
+            in.endObject();
+            if (name == null || address == null) throw new IOException("Missing home name or address in " + path);
+            Home home = new Home(name, address);
+            home.setSecuritySystemArmed(armed);
+            if (!Double.isNaN(rate)) home.setElectricityRate(rate);
+            home.addRooms(rooms);
             return home;
         }
     }
+
+    private static Room readRoom(JsonReader in) throws IOException {
+        String name = null, floor = null;
+        double area = 0, temperature = Double.NaN;
+        List<SmartDevice> devices = new ArrayList<>();
+        List<Sensor> sensors = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name": name = in.nextString(); break;
+                case "floor": floor = in.nextString(); break;
+                case "area": area = in.nextDouble(); break;
+                case "currentTemperature": temperature = in.nextDouble(); break;
+                case "devices":
+                    in.beginArray();
+                    while (in.hasNext()) devices.add(readDevice(in));
+                    in.endArray();
+                    break;
+                case "sensors":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Sensor sensor = readSensor(in, name);
+                        if (sensor != null) sensors.add(sensor);
+                    }
+                    in.endArray();
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        Room room = new Room(name, floor, area);
+        if (!Double.isNaN(temperature)) room.setCurrentTemperature(temperature);
+        for (SmartDevice d : devices) room.addDevice(d);
+        for (Sensor s : sensors) room.addSensor(s);
+        return room;
+    }
+
+    /**
+     * Fields are decoded into the device as they stream past once its type, name and room
+     * are known (they come first in files written here); earlier fields are held back
+     */
+    private static SmartDevice readDevice(JsonReader in) throws IOException {
+        String type = null, name = null, room = null;
+        SmartDevice d = null;
+        DeviceCodec<SmartDevice> codec = null;
+        Map<String, String> pending = null;
+        Boolean legacyOn = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            switch (key) {
+                case "type": type = in.nextString(); break;
+                case "name": name = in.nextString(); break;
+                case "room": room = in.nextString(); break;
+                case "state":
+                    if (d == null && type != null && name != null && room != null) {
+                        d = DeviceFactory.create(type, name, room);
+                        codec = DeviceFactory.codecFor(d);
+                    }
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String field = in.nextName();
+                        String value = readScalar(in);
+                        if (d != null) codec.decode(d, field, value);
+                        else (pending == null ? pending = new LinkedHashMap<>() : pending).put(field, value);
+                    }
+                    in.endObject();
+                    break;
+                case DeviceFactory.LEGACY_ON:
+                    String on = readScalar(in);
+                    if (on != null) legacyOn = Boolean.parseBoolean(on);
+                    break;
+                default:
+                    String field = DeviceFactory.LEGACY_FIELDS.get(key);
+                    if (field == null) {
+                        in.skipValue();
+                        break;
+                    }
+                    String value = readScalar(in);
+                    if (d != null) codec.decode(d, field, value);
+                    else (pending == null ? pending = new LinkedHashMap<>() : pending).put(field, value);
+            }
+        }
+        in.endObject();
+        if (d == null) {
+            d = DeviceFactory.create(type, name, room);
+            codec = DeviceFactory.codecFor(d);
+        }
+        if (pending != null) {
+            for (Map.Entry<String, String> f : pending.entrySet()) codec.decode(d, f.getKey(), f.getValue());
+        }
+        if (legacyOn != null) DeviceFactory.applyLegacyOn(d, legacyOn);
+        return d;
+    }
+
+    private static Sensor readSensor(JsonReader in, String room) throws IOException {
+        String type = null, name = null;
+        Map<String, String> fields = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type": type = in.nextString(); break;
+                case "name": name = in.nextString(); break;
+                case "state": readState(in, fields); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        Sensor sensor = createSensor(type, name, room);
+        if (sensor != null) {
+            for (Map.Entry<String, String> f : fields.entrySet()) sensor.applyStateField(f.getKey(), f.getValue());
+        }
+        return sensor;
+    }
+
+    private static void writeState(JsonWriter out, Map<String, String> fields) throws IOException {
+        out.name("state").beginObject();
+        for (Map.Entry<String, String> f : fields.entrySet()) out.name(f.getKey()).value(f.getValue());
+        out.endObject();
+    }
+
+    private static void readState(JsonReader in, Map<String, String> fields) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) fields.put(in.nextName(), readScalar(in));
+        in.endObject();
+    }
+
+    /**
+     * A new sensor of the given simple class name, or null for an unknown type
+     */
+    public static Sensor createSensor(String type, String name, String room) {
+        switch (type) {
+            case "LightSensor": return new LightSensor(name, room);
+            case "TemperatureSensor": return new TemperatureSensor(name, room);
+            case "MotionSensor": return new MotionSensor(name, room);
+            case "HumiditySensor": return new HumiditySensor(name, room);
+            default: return null;
+        }
+    }
+
+    static String readScalar(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) return String.valueOf(in.nextBoolean());
+        return in.nextString();
+    }
 }
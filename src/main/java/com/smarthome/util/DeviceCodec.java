@@ -0,0 +1,48 @@
+package com.smarthome.util;
+
+import com.smarthome.model.SmartDevice;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Creates, encodes and decodes one {@link SmartDevice} subclass for persistence. Codecs are
+ * registered with {@link DeviceFactory}, which finds them through {@link java.util.ServiceLoader}
+ * by listing a {@link Provider} in {@code META-INF/services/com.smarthome.util.DeviceCodec$Provider}.
+ * The defaults go through {@link SmartDevice#getStateFields()} and
+ * {@link SmartDevice#applyStateField}; codecs may override them.
+ */
+public interface DeviceCodec<T extends SmartDevice> {
+    /** Display type written to snapshots, e.g. "Smart Light" */
+    String type();
+
+    Class<T> deviceClass();
+
+    /** A new device in its default state */
+    T create(String name, String room);
+
+    default Map<String, String> encode(T device) {
+        return device.getStateFields();
+    }
+
+    /** @return false if the field is unknown */
+    default boolean decode(T device, String field, String value) {
+        return device.applyStateField(field, value);
+    }
+
+    /**
+     * Service interface: supplies a group of codecs
+     */
+    interface Provider {
+        Collection<DeviceCodec<?>> codecs();
+    }
+
+    static <T extends SmartDevice> DeviceCodec<T> of(String type, Class<T> deviceClass, BiFunction<String, String, T> constructor) {
+        return new DeviceCodec<T>() {
+            @Override public String type() { return type; }
+            @Override public Class<T> deviceClass() { return deviceClass; }
+            @Override public T create(String name, String room) { return constructor.apply(name, room); }
+        };
+    }
+}
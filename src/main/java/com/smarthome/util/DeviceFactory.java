@@ -1,54 +1,119 @@
 package com.smarthome.util;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.smarthome.model.SmartDevice;
-import com.smarthome.model.devices.*;
 
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link DeviceCodec}s, keyed by display type and by device class. Codecs are
+ * discovered once through {@link ServiceLoader}; {@link #register} adds more at runtime.
+ * Adding a device type means shipping its class and a codec, with no switch to edit here.
+ */
 public class DeviceFactory {
-    public static SmartDevice fromJson(JsonObject obj) {
-        String type = obj.get("type").getAsString();
-        String name = obj.get("name").getAsString();
-        String room = obj.get("room").getAsString();
-        boolean on = obj.get("on").getAsBoolean();
-        SmartDevice d;
-        switch (type) {
-            case "Smart Light":
-                d = new SmartLight(name, room);
-                if (obj.has("brightness")) {
-                    ((SmartLight) d).setBrightness(obj.get("brightness").getAsInt());
-                }
-                break;
-            case "Thermostat":
-                d = new Thermostat(name, room, obj.has("currentTemp") ? obj.get("currentTemp").getAsDouble() : 21.0);
-                if (obj.has("targetTemp")) {
-                    ((Thermostat) d).setTargetTemperature(obj.get("targetTemp").getAsDouble());
-                }
-                break;
-            case "Security Camera":
-                d = new SecurityCamera(name, room);
-                break;
-            case "Door Lock":
-                d = new DoorLock(name, room);
-                if (!obj.get("locked").getAsBoolean()) {
-                    ((DoorLock) d).unlock("1234");
-                }
-                break;
-            case "Smart Plug":
-                d = new SmartPlug(name, room);
-                break;
-            case "Smart Blinds":
-                d = new SmartBlinds(name, room);
-                if (obj.has("position")) {
-                    ((SmartBlinds) d).setPosition(obj.get("position").getAsInt());
-                }
-                break;
-            case "Smart TV":
-                d = new SmartTV(name, room);
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown device type: " + type);
+    private static final Map<String, DeviceCodec<?>> BY_TYPE = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, DeviceCodec<?>> BY_CLASS = new ConcurrentHashMap<>();
+
+    // Flat device keys from the original format, mapped to state field names; the flat
+    // "on" key is applied last through the public commands, see applyLegacyOn
+    static final String LEGACY_ON = "on";
+    static final Map<String, String> LEGACY_FIELDS = Map.of(
+        "brightness", "brightness",
+        "currentTemp", "currentTemperature",
+        "targetTemp", "targetTemperature",
+        "locked", "locked",
+        "position", "position");
+
+    static {
+        for (DeviceCodec.Provider provider : ServiceLoader.load(DeviceCodec.Provider.class, DeviceFactory.class.getClassLoader())) {
+            for (DeviceCodec<?> codec : provider.codecs()) register(codec);
+        }
+    }
+
+    /**
+     * Add or replace the codec for its type and device class
+     */
+    public static void register(DeviceCodec<?> codec) {
+        BY_TYPE.put(codec.type(), codec);
+        BY_CLASS.put(codec.deviceClass(), codec);
+    }
+
+    /**
+     * Codec for a display type
+     * @throws IllegalArgumentException if no codec handles the type
+     */
+    public static DeviceCodec<?> codec(String type) {
+        DeviceCodec<?> codec = type == null ? null : BY_TYPE.get(type);
+        if (codec == null) throw new IllegalArgumentException("Unknown device type: " + type);
+        return codec;
+    }
+
+    /**
+     * Codec for a device's class, or for its nearest registered superclass
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SmartDevice> DeviceCodec<T> codecFor(T device) {
+        Class<?> c = device.getClass();
+        DeviceCodec<?> codec = BY_CLASS.get(c);
+        if (codec == null) {
+            for (Class<?> s = c.getSuperclass(); codec == null && s != null; s = s.getSuperclass()) codec = BY_CLASS.get(s);
+            if (codec == null) throw new IllegalArgumentException("No codec for " + c.getName());
+            BY_CLASS.putIfAbsent(c, codec);
         }
+        return (DeviceCodec<T>) codec;
+    }
+
+    /**
+     * Create a device in its default state from its display type
+     */
+    public static SmartDevice create(String type, String name, String room) {
+        return codec(type).create(name, room);
+    }
+
+    /** Persistable state of a device, as written by its codec */
+    public static Map<String, String> encode(SmartDevice device) {
+        return codecFor(device).encode(device);
+    }
+
+    /**
+     * Restore one state field through the device's codec
+     * @return false if the field is unknown
+     */
+    public static boolean decode(SmartDevice device, String field, String value) {
+        return codecFor(device).decode(device, field, value);
+    }
+
+    /**
+     * Switch a device loaded from the original format on or off the way that format's loader
+     * did, through {@code turnOn()}/{@code turnOff()}, so state the commands imply (such as
+     * a thermostat's mode) is consistent with the flag
+     */
+    static void applyLegacyOn(SmartDevice d, boolean on) {
         if (on) d.turnOn(); else d.turnOff();
+    }
+
+    /**
+     * Build a device from a JSON object holding a "state" object, the flat fields of the
+     * original format, or both
+     */
+    public static SmartDevice fromJson(JsonObject obj) {
+        SmartDevice d = create(obj.get("type").getAsString(), obj.get("name").getAsString(), obj.get("room").getAsString());
+        DeviceCodec<SmartDevice> codec = codecFor(d);
+        for (Map.Entry<String, JsonElement> e : obj.entrySet()) {
+            String field = LEGACY_FIELDS.get(e.getKey());
+            if (field != null && !e.getValue().isJsonNull()) codec.decode(d, field, e.getValue().getAsString());
+        }
+        JsonElement on = obj.get(LEGACY_ON);
+        if (on != null && !on.isJsonNull()) applyLegacyOn(d, on.getAsBoolean());
+        JsonElement state = obj.get("state");
+        if (state != null && state.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : state.getAsJsonObject().entrySet()) {
+                codec.decode(d, e.getKey(), e.getValue().isJsonNull() ? null : e.getValue().getAsString());
+            }
+        }
         return d;
     }
 }
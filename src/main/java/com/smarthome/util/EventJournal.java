@@ -0,0 +1,316 @@
+package com.smarthome.util;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.StateChangeListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of device state transitions, written through a memory-mapped file.
+ * Each record holds the time, device id, name and room, and one field's old and new value
+ * (see {@link SmartDevice#getStateFields()}). Appends are plain memory writes; the mapped
+ * pages are forced to disk every {@code syncEvery} records and by a background flusher,
+ * so a crash loses at most one batch. A {@link DataPersistence} snapshot acts as the
+ * checkpoint: {@link #checkpoint(String)} saves it and truncates the log, and
+ * {@link #recover(String, String)} loads it and replays the log on top. Records carry
+ * absolute values, so replaying a log over a newer checkpoint is harmless.
+ *
+ * <pre>
+ * file   := magic:int version:int record*
+ * record := length:int crc32:int time:long id:str name:str room:str field:str old:str new:str
+ * str    := length:int (-1 for null) utf8-bytes
+ * </pre>
+ * A zero length or a checksum mismatch marks the end of the log.
+ */
+public class EventJournal implements StateChangeListener, Closeable {
+    private static final int MAGIC = 0x53484a31; // "SHJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long DEFAULT_SEGMENT_BYTES = 4L << 20;
+    private static final int DEFAULT_SYNC_EVERY = 256;
+    private static final long DEFAULT_SYNC_MILLIS = 1000;
+
+    private final FileChannel channel;
+    private final long segmentBytes;
+    private final int syncEvery;
+    private final ScheduledExecutorService flusher;
+    private final Map<String, Map<String, String>> lastState = new HashMap<>(); // by device id
+    private MappedByteBuffer buffer;
+    private long bufferStart;  // file offset of buffer index 0
+    private long position;     // file offset of the next record
+    private long syncedTo;     // file offset up to which pages were forced
+    private int unsynced;
+    private Home home;
+
+    public EventJournal(String path) throws IOException {
+        this(path, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_EVERY, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * @param segmentBytes bytes mapped at a time; the file grows by this much when full
+     * @param syncEvery    force the mapped pages after this many records
+     * @param syncMillis   also force pending records this often; 0 disables the flusher
+     */
+    public EventJournal(String path, long segmentBytes, int syncEvery, long syncMillis) throws IOException {
+        this.segmentBytes = segmentBytes;
+        this.syncEvery = Math.max(1, syncEvery);
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header, 0);
+            position = HEADER_BYTES;
+        } else {
+            position = scan(channel, null);
+        }
+        syncedTo = position;
+        map(position, segmentBytes);
+        if (syncMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Start journaling the home's device changes; current device state is the baseline.
+     * Rooms not loaded yet stay unloaded: their devices' first change journals every field.
+     */
+    public synchronized void attach(Home home) {
+        if (this.home != null) this.home.removeStateChangeListener(this);
+        this.home = home;
+        lastState.clear();
+        for (Room room : home.getRooms()) {
+            if (!room.isLoaded()) continue;
+            for (SmartDevice d : room.getDevices()) lastState.put(d.getId(), DeviceFactory.encode(d));
+        }
+        home.addStateChangeListener(this);
+    }
+
+    public synchronized void detach() {
+        if (home == null) return;
+        home.removeStateChangeListener(this);
+        home = null;
+    }
+
+    @Override
+    public void onDeviceChange(Room room, SmartDevice device) {
+        synchronized (this) {
+            if (buffer == null) return;
+            // Encoded under the lock, so the last record for a device is its latest state
+            // even when two threads change it at once
+            Map<String, String> now = DeviceFactory.encode(device);
+            long time = System.currentTimeMillis();
+            Map<String, String> before = lastState.put(device.getId(), now);
+            try {
+                for (Map.Entry<String, String> e : now.entrySet()) {
+                    String old = before == null ? null : before.get(e.getKey());
+                    if (before != null && Objects.equals(old, e.getValue())) continue;
+                    append(time, device.getId(), device.getName(), room.getName(), e.getKey(), old, e.getValue());
+                }
+            } catch (IOException e) {
+                EventLog.warn("[Journal] Failed to append: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Append one field transition; exposed for callers that journal changes themselves
+     */
+    public synchronized void append(long time, String id, String name, String room,
+                                    String field, String oldValue, String newValue) throws IOException {
+        byte[][] parts = {utf8(id), utf8(name), utf8(room), utf8(field), utf8(oldValue), utf8(newValue)};
+        int payload = 8;
+        for (byte[] p : parts) payload += 4 + (p == null ? 0 : p.length);
+        ensureCapacity(RECORD_HEADER_BYTES + payload);
+
+        int start = (int) (position - bufferStart);
+        int body = start + RECORD_HEADER_BYTES;
+        buffer.position(body);
+        buffer.putLong(time);
+        for (byte[] p : parts) {
+            if (p == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(p.length);
+                buffer.put(p);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(body).limit(body + payload));
+        // The length goes in last so a torn record reads as the end of the log
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, payload);
+        position += RECORD_HEADER_BYTES + payload;
+        if (++unsynced >= syncEvery) sync();
+    }
+
+    /**
+     * Force journaled records to disk
+     */
+    public synchronized void sync() throws IOException {
+        if (buffer == null || position == syncedTo) return;
+        int from = (int) (Math.max(syncedTo, bufferStart) - bufferStart);
+        buffer.force(from, (int) (position - bufferStart) - from);
+        syncedTo = position;
+        unsynced = 0;
+    }
+
+    /**
+     * Save the attached home as a snapshot at {@code snapshotPath} ({@code .bin} as a
+     * {@link BinarySnapshot}, others as JSON), then truncate the log
+     */
+    public synchronized void checkpoint(String snapshotPath) throws IOException {
+        if (home == null) throw new IllegalStateException("No home attached");
+        sync();
+        if (snapshotPath.endsWith(".bin")) BinarySnapshot.save(home, snapshotPath);
+        else DataPersistence.saveHome(home, snapshotPath);
+        buffer = null;
+        channel.truncate(HEADER_BYTES);
+        channel.force(true);
+        position = HEADER_BYTES;
+        syncedTo = position;
+        unsynced = 0;
+        map(position, segmentBytes);
+    }
+
+    /** Bytes of records currently in the log */
+    public synchronized long size() {
+        return position - HEADER_BYTES;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) flusher.shutdownNow();
+        detach();
+        if (buffer == null) return;
+        sync();
+        buffer = null;
+        channel.truncate(position);
+        channel.close();
+    }
+
+    /**
+     * Load the snapshot and replay the journal on top of it; a missing journal is skipped.
+     * Binary snapshots load lazily, so replay decodes only the rooms the log touches.
+     */
+    public static Home recover(String snapshotPath, String journalPath) throws IOException {
+        Home home = DataPersistence.loadHome(snapshotPath, true);
+        if (Files.exists(Paths.get(journalPath))) {
+            int applied = replay(journalPath, home);
+            EventLog.info("[Journal] Replayed " + applied + " changes");
+        }
+        return home;
+    }
+
+    /**
+     * Apply every journaled transition to the matching device, found by room and name since
+     * names are only unique within a room. Devices that no longer exist are skipped.
+     * @return number of transitions applied
+     */
+    public static int replay(String journalPath, Home home) throws IOException {
+        int[] applied = {0};
+        try (FileChannel ch = FileChannel.open(Paths.get(journalPath), StandardOpenOption.READ)) {
+            scan(ch, (name, roomName, field, value) -> {
+                Room room = home.getRoom(roomName);
+                SmartDevice device = room == null ? null : room.getDevice(name);
+                if (device == null) return; // removed since
+                try {
+                    if (DeviceFactory.decode(device, field, value)) applied[0]++;
+                } catch (IllegalArgumentException e) {
+                    // a value this version cannot parse
+                }
+            });
+        }
+        return applied[0];
+    }
+
+    private interface RecordVisitor {
+        void visit(String deviceName, String roomName, String field, String newValue);
+    }
+
+    /** Validate the header and walk the records; returns the offset just past the last valid one */
+    private static long scan(FileChannel ch, RecordVisitor visitor) throws IOException {
+        long size = ch.size();
+        if (size < HEADER_BYTES) return HEADER_BYTES;
+        MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (in.getInt(0) != MAGIC) throw new IOException("Not a journal file");
+        if (in.getInt(4) != VERSION) throw new IOException("Unsupported journal version " + in.getInt(4));
+        int pos = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (pos + RECORD_HEADER_BYTES <= size) {
+            int length = in.getInt(pos);
+            if (length <= 0 || pos + RECORD_HEADER_BYTES + (long) length > size) break;
+            int body = pos + RECORD_HEADER_BYTES;
+            crc.reset();
+            crc.update(in.duplicate().position(body).limit(body + length));
+            if ((int) crc.getValue() != in.getInt(pos + 4)) break;
+            if (visitor != null) {
+                in.position(body + 8); // skip time
+                readString(in); // id
+                String name = readString(in);
+                String room = readString(in);
+                String field = readString(in);
+                readString(in); // old value
+                visitor.visit(name, room, field, readString(in));
+            }
+            pos = body + length;
+        }
+        return pos;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes <= bufferStart + buffer.capacity()) return;
+        sync(); // the old mapping's pages are not forced once it is replaced
+        map(position, Math.max(segmentBytes, bytes));
+    }
+
+    private void map(long from, long bytes) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, from, bytes);
+        bufferStart = from;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            EventLog.warn("[Journal] Failed to sync: " + e.getMessage());
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,150 @@
+package com.smarthome.util;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous, level-gated console log for model, service and automation events. Callers
+ * claim a slot in a fixed ring buffer with one CAS and return; a daemon thread drains the
+ * buffer and writes whole batches to stdout, so bulk operations never wait on the console.
+ * Messages below the level are dropped before being built when passed as a
+ * {@link Supplier}. If the buffer is full the message is dropped and counted rather than
+ * blocking the caller. Code that writes to the console directly calls {@link #flush()} first
+ * so its output stays in order.
+ * <p>
+ * The level comes from {@code -Dsmarthome.log.level} (DEBUG, INFO, WARN, ERROR, OFF) and
+ * defaults to INFO.
+ */
+public final class EventLog {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final int CAPACITY = 1 << 16; // power of two, for the index mask
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    private static final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong(); // next slot to claim
+    private static volatile long head; // next slot to drain, written only by the drainer
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile Level level = parseLevel(System.getProperty("smarthome.log.level"), Level.INFO);
+    private static volatile PrintStream out = System.out;
+    private static volatile boolean parked;
+    private static final Thread drainer = new Thread(EventLog::drainLoop, "event-log");
+
+    static {
+        drainer.setDaemon(true);
+        drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::flush, "event-log-flush"));
+    }
+
+    private EventLog() {}
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * Parse a level name, case-insensitively
+     */
+    public static Level parseLevel(String name, Level fallback) {
+        if (name == null) return fallback;
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Send drained output somewhere other than stdout (tests, benchmarks)
+     */
+    public static void setOutput(PrintStream stream) {
+        flush();
+        out = stream;
+    }
+
+    public static boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0 && l != Level.OFF;
+    }
+
+    public static void debug(Supplier<String> message) { if (isEnabled(Level.DEBUG)) log(message.get()); }
+    public static void info(Supplier<String> message) { if (isEnabled(Level.INFO)) log(message.get()); }
+    public static void info(String message) { if (isEnabled(Level.INFO)) log(message); }
+    public static void warn(String message) { if (isEnabled(Level.WARN)) log(message); }
+    public static void error(String message) { if (isEnabled(Level.ERROR)) log(message); }
+
+    /**
+     * Queue console output that is not an event (reports the user asked for): never gated,
+     * and ordered with the events logged before it
+     */
+    public static void print(String text) {
+        while (!offer(text)) flush();
+    }
+
+    /** Messages lost because the buffer was full */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Block until everything logged so far has been written
+     */
+    public static void flush() {
+        long target = tail.get();
+        while (head < target && drainer.isAlive()) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(50_000);
+        }
+        out.flush();
+    }
+
+    private static void log(String message) {
+        if (!offer(message)) dropped.increment();
+    }
+
+    /** @return false if the buffer is full */
+    private static boolean offer(String message) {
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= CAPACITY) return false;
+        } while (!tail.compareAndSet(t, t + 1));
+        slots.set((int) (t & MASK), String.valueOf(message)); // null would read as unpublished
+        if (parked) LockSupport.unpark(drainer);
+        return true;
+    }
+
+    private static void drainLoop() {
+        StringBuilder batch = new StringBuilder(8192);
+        while (true) {
+            long h = head;
+            String message;
+            // A claimed slot stays null until its producer stores the message
+            while (batch.length() < 64 * 1024 && (message = slots.get((int) (h & MASK))) != null) {
+                slots.set((int) (h & MASK), null);
+                batch.append(message).append('\n');
+                h++;
+            }
+            if (batch.length() > 0) {
+                PrintStream stream = out;
+                stream.print(batch);
+                stream.flush();
+                batch.setLength(0);
+                head = h; // only after writing, so flush() returns once the output is out
+                continue;
+            }
+            parked = true;
+            if (tail.get() == h) LockSupport.parkNanos(IDLE_PARK_NANOS);
+            parked = false;
+        }
+    }
+}
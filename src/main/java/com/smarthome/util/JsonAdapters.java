@@ -0,0 +1,282 @@
+package com.smarthome.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.devices.*;
+import com.smarthome.model.sensors.*;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming Gson adapters giving devices, sensors and rooms an explicit wire schema instead
+ * of reflecting over their fields, so internals (back-references, lock codes, random
+ * generators) never leak and renaming a field cannot change the API.
+ *
+ * <pre>
+ * device: {"id", "name", "type", "location", "isOn", "isConnected", "status",
+ *          "currentPowerConsumption", "lastUpdated", ...state fields}
+ * sensor: {"id", "name", "type", "location", "isActive", "lastReading", "value", "normal",
+ *          ...state fields}
+ * room:   {"name", "floor", "area", "currentTemperature", "devices": [..], "sensors": [..]}
+ * </pre>
+ *
+ * State fields use the names of {@link SmartDevice#getStateFields()} with JSON numbers and
+ * booleans for the built-in types, and strings for device types added through a
+ * {@link DeviceCodec}. Reading builds new objects through {@link DeviceFactory}, so ids are
+ * not preserved.
+ */
+public final class JsonAdapters {
+    @FunctionalInterface
+    private interface FieldWriter<T> {
+        void write(JsonWriter out, T value) throws IOException;
+    }
+
+    private static final Map<Class<?>, FieldWriter<?>> DEVICE_FIELDS = Map.of(
+        SmartLight.class, (FieldWriter<SmartLight>) (out, d) -> {
+            out.name("brightness").value(d.getBrightness());
+            out.name("colorTemperature").value(d.getColorTemperature());
+            out.name("color").value(d.getColor());
+        },
+        Thermostat.class, (FieldWriter<Thermostat>) (out, d) -> {
+            out.name("targetTemperature").value(d.getTargetTemperature());
+            out.name("currentTemperature").value(d.getCurrentTemperature());
+            out.name("mode").value(d.getMode().name());
+            out.name("fanSpeed").value(d.getFanSpeed().name());
+        },
+        DoorLock.class, (FieldWriter<DoorLock>) (out, d) -> {
+            out.name("locked").value(d.isLocked());
+            out.name("autoLock").value(d.isAutoLockEnabled());
+            out.name("autoLockDelay").value(d.getAutoLockDelay());
+        },
+        SmartBlinds.class, (FieldWriter<SmartBlinds>) (out, d) -> {
+            out.name("position").value(d.getPosition());
+            out.name("autoMode").value(d.isAutoMode());
+        },
+        SecurityCamera.class, (FieldWriter<SecurityCamera>) (out, d) -> {
+            out.name("recording").value(d.isRecording());
+            out.name("motionDetection").value(d.isMotionDetectionEnabled());
+            out.name("resolution").value(d.getResolution());
+            out.name("nightVision").value(d.isNightVisionActive());
+        },
+        SmartPlug.class, (FieldWriter<SmartPlug>) (out, d) -> {
+            out.name("connectedDevice").value(d.getConnectedDevice());
+            out.name("connectedDevicePower").value(d.getConnectedDevicePower());
+            out.name("scheduleEnabled").value(d.isScheduleEnabled());
+            out.name("energyUsedToday").value(d.getEnergyUsedToday());
+        },
+        SmartTV.class, (FieldWriter<SmartTV>) (out, d) -> {
+            out.name("volume").value(d.getVolume());
+            out.name("channel").value(d.getChannel());
+            out.name("app").value(d.getApp());
+        });
+
+    private static final Map<Class<?>, FieldWriter<?>> SENSOR_FIELDS = Map.of(
+        TemperatureSensor.class, (FieldWriter<TemperatureSensor>) (out, s) -> {
+            out.name("temperature").value(s.getCurrentTemperature());
+            out.name("minNormal").value(s.getMinNormal());
+            out.name("maxNormal").value(s.getMaxNormal());
+        },
+        HumiditySensor.class, (FieldWriter<HumiditySensor>) (out, s) -> {
+            out.name("humidity").value(s.getCurrentHumidity());
+            out.name("minNormal").value(s.getMinNormal());
+            out.name("maxNormal").value(s.getMaxNormal());
+        },
+        LightSensor.class, (FieldWriter<LightSensor>) (out, s) -> out.name("lightLevel").value(s.getLightLevel()),
+        MotionSensor.class, (FieldWriter<MotionSensor>) (out, s) -> {
+            out.name("motionDetected").value(s.isMotionDetected());
+            writeTime(out, "lastMotionTime", s.getLastMotionTime());
+            out.name("sensitivityLevel").value(s.getSensitivityLevel());
+        });
+
+    // Schema names that differ from the state field names
+    private static final Map<String, String> RENAMED = Map.of(
+        "isOn", "on",
+        "isConnected", "connected",
+        "isActive", "active");
+
+    static final TypeAdapter<LocalDateTime> LOCAL_DATE_TIME = new TypeAdapter<LocalDateTime>() {
+        @Override
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            out.value(value == null ? null : value.toString());
+        }
+
+        @Override
+        public LocalDateTime read(JsonReader in) throws IOException {
+            String s = DataPersistence.readScalar(in);
+            return s == null ? null : LocalDateTime.parse(s);
+        }
+    };
+
+    static final TypeAdapter<SmartDevice> DEVICE = new TypeAdapter<SmartDevice>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, SmartDevice d) throws IOException {
+            out.beginObject();
+            out.name("id").value(d.getId());
+            out.name("name").value(d.getName());
+            out.name("type").value(d.getType());
+            out.name("location").value(d.getLocation());
+            out.name("isOn").value(d.isOn());
+            out.name("isConnected").value(d.isConnected());
+            out.name("status").value(d.getStatus());
+            out.name("currentPowerConsumption").value(d.getCurrentPowerConsumption());
+            writeTime(out, "lastUpdated", d.getLastUpdated());
+            FieldWriter<SmartDevice> fields = (FieldWriter<SmartDevice>) DEVICE_FIELDS.get(d.getClass());
+            if (fields != null) {
+                fields.write(out, d);
+            } else {
+                for (Map.Entry<String, String> f : DeviceFactory.encode(d).entrySet()) {
+                    if (!f.getKey().equals("on") && !f.getKey().equals("connected")) out.name(f.getKey()).value(f.getValue());
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        public SmartDevice read(JsonReader in) throws IOException {
+            Map<String, String> fields = readFields(in);
+            String type = fields.remove("type"), name = fields.remove("name"), location = fields.remove("location");
+            if (type == null || name == null) throw new JsonParseException("device needs a type and a name");
+            SmartDevice d = DeviceFactory.create(type, name, location);
+            for (Map.Entry<String, String> f : fields.entrySet()) DeviceFactory.decode(d, f.getKey(), f.getValue());
+            return d;
+        }
+    };
+
+    static final TypeAdapter<Sensor> SENSOR = new TypeAdapter<Sensor>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, Sensor s) throws IOException {
+            out.beginObject();
+            out.name("id").value(s.getId());
+            out.name("name").value(s.getName());
+            out.name("type").value(s.getClass().getSimpleName());
+            out.name("location").value(s.getLocation());
+            out.name("isActive").value(s.isActive());
+            writeTime(out, "lastReading", s.getLastReading());
+            out.name("value").value(s.getCurrentValue());
+            out.name("normal").value(s.isValueNormal());
+            FieldWriter<Sensor> fields = (FieldWriter<Sensor>) SENSOR_FIELDS.get(s.getClass());
+            if (fields != null) fields.write(out, s);
+            out.endObject();
+        }
+
+        @Override
+        public Sensor read(JsonReader in) throws IOException {
+            Map<String, String> fields = readFields(in);
+            String type = fields.remove("type"), name = fields.remove("name"), location = fields.remove("location");
+            Sensor s = type == null ? null : DataPersistence.createSensor(type, name, location);
+            if (s == null) throw new JsonParseException("unknown sensor type: " + type);
+            for (Map.Entry<String, String> f : fields.entrySet()) s.applyStateField(f.getKey(), f.getValue());
+            return s;
+        }
+    };
+
+    static final TypeAdapter<Room> ROOM = new TypeAdapter<Room>() {
+        @Override
+        public void write(JsonWriter out, Room r) throws IOException {
+            out.beginObject();
+            out.name("name").value(r.getName());
+            out.name("floor").value(r.getFloor());
+            out.name("area").value(r.getArea());
+            out.name("currentTemperature").value(r.getCurrentTemperature());
+            out.name("devices").beginArray();
+            for (SmartDevice d : r.getDevices()) DEVICE.write(out, d);
+            out.endArray();
+            out.name("sensors").beginArray();
+            for (Sensor s : r.getSensors()) SENSOR.write(out, s);
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Room read(JsonReader in) throws IOException {
+            String name = null, floor = null;
+            double area = 0, temperature = Double.NaN;
+            List<SmartDevice> devices = new ArrayList<>(); // read before the room exists
+            List<Sensor> sensors = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name": name = in.nextString(); break;
+                    case "floor": floor = in.nextString(); break;
+                    case "area": area = in.nextDouble(); break;
+                    case "currentTemperature": temperature = in.nextDouble(); break;
+                    case "devices":
+                        in.beginArray();
+                        while (in.hasNext()) devices.add(DEVICE.read(in));
+                        in.endArray();
+                        break;
+                    case "sensors":
+                        in.beginArray();
+                        while (in.hasNext()) sensors.add(SENSOR.read(in));
+                        in.endArray();
+                        break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            Room room = new Room(name, floor, area);
+            if (!Double.isNaN(temperature)) room.setCurrentTemperature(temperature);
+            for (SmartDevice d : devices) room.addDevice(d);
+            for (Sensor s : sensors) room.addSensor(s);
+            return room;
+        }
+    };
+
+    private static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> raw = type.getRawType();
+            // One adapter per hierarchy: lists are declared as the base type, so it dispatches on the runtime class
+            if (SmartDevice.class.isAssignableFrom(raw)) return (TypeAdapter<T>) DEVICE.nullSafe();
+            if (Sensor.class.isAssignableFrom(raw)) return (TypeAdapter<T>) SENSOR.nullSafe();
+            if (raw == Room.class) return (TypeAdapter<T>) ROOM.nullSafe();
+            return null;
+        }
+    };
+
+    private JsonAdapters() {}
+
+    /**
+     * Register the adapters for devices, sensors, rooms and {@link LocalDateTime}
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder
+            .registerTypeAdapter(LocalDateTime.class, LOCAL_DATE_TIME.nullSafe())
+            .registerTypeAdapterFactory(FACTORY);
+    }
+
+    private static void writeTime(JsonWriter out, String name, LocalDateTime time) throws IOException {
+        out.name(name).value(time == null ? null : time.toString());
+    }
+
+    /** Flat object as schema field to scalar string, with renamed fields mapped to state names */
+    private static Map<String, String> readFields(JsonReader in) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            JsonToken token = in.peek();
+            if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) in.skipValue(); // not part of the schema
+            else fields.put(RENAMED.getOrDefault(name, name), DataPersistence.readScalar(in));
+        }
+        in.endObject();
+        return fields;
+    }
+}
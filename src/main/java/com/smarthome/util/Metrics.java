@@ -0,0 +1,281 @@
+package com.smarthome.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics, written in the Prometheus text format by {@link #writePrometheus}.
+ * Counters are {@link LongAdder}s and latencies go into log-linear {@link Histogram}s, so
+ * recording is a few atomic adds with no allocation; a labeled metric is looked up by its
+ * label values in concurrent maps, or resolved once and kept by the caller.
+ */
+public final class Metrics {
+    private static final List<Family<?>> REGISTRY = new CopyOnWriteArrayList<>();
+
+    public static final Histogram AUTOMATION_TICK = histograms("smarthome_automation_tick_seconds",
+        "Duration of one automation engine tick").labels();
+    public static final Family<Sum> RULE_FIRES = sums("smarthome_rule_fires_total",
+        "Times a rule's actions ran", "rule");
+    public static final Histogram SENSOR_SAMPLE = histograms("smarthome_sensor_sample_seconds",
+        "Duration of one sensor measurement").labels();
+    public static final Family<LongAdder> DEVICE_COMMANDS = counters("smarthome_device_commands_total",
+        "Device on/off commands by device type", "type", "command");
+    public static final Family<Histogram> PERSISTENCE_SAVE = histograms("smarthome_persistence_save_seconds",
+        "Duration of a full home save", "format");
+    public static final Family<Histogram> HTTP_REQUESTS = histograms("smarthome_http_request_seconds",
+        "REST handler latency", "method", "route");
+
+    private Metrics() {}
+
+    public static Family<LongAdder> counters(String name, String help, String... labelNames) {
+        return register(new Family<>(name, help, "counter", labelNames, LongAdder::new));
+    }
+
+    /** Counters whose children add up counts kept by their owners; see {@link Sum} */
+    public static Family<Sum> sums(String name, String help, String... labelNames) {
+        return register(new Family<>(name, help, "counter", labelNames, Sum::new));
+    }
+
+    public static Family<Histogram> histograms(String name, String help, String... labelNames) {
+        return register(new Family<>(name, help, "histogram", labelNames, Histogram::new));
+    }
+
+    private static <T> Family<T> register(Family<T> family) {
+        REGISTRY.add(family);
+        return family;
+    }
+
+    /**
+     * All registered metrics in the Prometheus text exposition format, version 0.0.4
+     */
+    public static String writePrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family<?> f : REGISTRY) f.write(out);
+        return out.toString();
+    }
+
+    /**
+     * A metric and its children by label values; a metric without labels has one child
+     */
+    public static final class Family<T> {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final String[] labelNames;
+        private final Supplier<T> factory;
+        // first label value -> second label value -> child; "" stands in for absent labels
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String, T>> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type, String[] labelNames, Supplier<T> factory) {
+            if (labelNames.length > 2) throw new IllegalArgumentException("at most two labels: " + name);
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+            this.factory = factory;
+        }
+
+        public T labels() {
+            return child(0, "", "");
+        }
+
+        public T labels(String value) {
+            return child(1, value, "");
+        }
+
+        public T labels(String first, String second) {
+            return child(2, first, second);
+        }
+
+        /**
+         * Drop the child for these label values, so it is no longer exposed; holders of the
+         * child can still record into it. Returns false if there was no such child.
+         */
+        public boolean remove(String... values) {
+            if (values.length != labelNames.length) throw new IllegalArgumentException(name + " takes " + labelNames.length + " labels");
+            String first = values.length > 0 && values[0] != null ? values[0] : "";
+            String second = values.length > 1 && values[1] != null ? values[1] : "";
+            boolean[] removed = {false};
+            children.computeIfPresent(first, (k, inner) -> {
+                removed[0] = inner.remove(second) != null;
+                return inner.isEmpty() ? null : inner;
+            });
+            return removed[0];
+        }
+
+        private T child(int arity, String first, String second) {
+            if (arity != labelNames.length) throw new IllegalArgumentException(name + " takes " + labelNames.length + " labels");
+            if (first == null) first = "";
+            if (second == null) second = "";
+            ConcurrentHashMap<String, T> inner = children.get(first);
+            if (inner != null) {
+                T child = inner.get(second);
+                if (child != null) return child;
+            }
+            while (true) {
+                inner = children.computeIfAbsent(first, k -> new ConcurrentHashMap<>());
+                T child = inner.computeIfAbsent(second, k -> factory.get());
+                if (children.get(first) == inner) return child; // else remove() dropped the map under us
+            }
+        }
+
+        private void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            if (labelNames.length == 0) labels(); // unlabeled metrics are always exposed
+            for (Map.Entry<String, ConcurrentHashMap<String, T>> outer : new TreeMap<>(children).entrySet()) {
+                for (Map.Entry<String, T> inner : new TreeMap<>(outer.getValue()).entrySet()) {
+                    StringBuilder labels = new StringBuilder();
+                    if (labelNames.length > 0) label(labels, labelNames[0], outer.getKey());
+                    if (labelNames.length > 1) label(labels, labelNames[1], inner.getKey());
+                    Object child = inner.getValue();
+                    if (child instanceof LongAdder) sample(out, name, labels, null, ((LongAdder) child).sum());
+                    else if (child instanceof Sum) sample(out, name, labels, null, ((Sum) child).sum());
+                    else ((Histogram) child).write(out, name, labels);
+                }
+            }
+        }
+    }
+
+    /**
+     * A counter exported as the sum of counts that live elsewhere, such as in the objects
+     * being counted; those register while they should be exported and remove themselves after
+     */
+    public static final class Sum {
+        private final List<LongSupplier> parts = new CopyOnWriteArrayList<>();
+
+        public void add(LongSupplier part) {
+            parts.add(part);
+        }
+
+        /** @return true if no parts remain */
+        public boolean remove(LongSupplier part) {
+            parts.remove(part);
+            return parts.isEmpty();
+        }
+
+        public long sum() {
+            long n = 0;
+            for (LongSupplier p : parts) n += p.getAsLong();
+            return n;
+        }
+    }
+
+    /**
+     * Latency histogram over nanoseconds with four sub-buckets per power of two (values
+     * below 4 ns are exact), so any recorded value is known to within 25%. Exposed in
+     * seconds with a bucket per power of two from about 1 µs to 69 s.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 2;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int MIN_EXPORT_POW = 10; // 1.024 µs
+        private static final int MAX_EXPORT_POW = 36; // 68.7 s
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(index(nanos));
+            sum.add(nanos);
+        }
+
+        /** Record the time elapsed since a {@link System#nanoTime()} reading */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int index(long value) {
+            if (value < SUB) return (int) value;
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB - 1);
+            return (magnitude - SUB_BITS + 1) * SUB + sub;
+        }
+
+        /** Exclusive upper bound of the values in bucket {@code index} */
+        static long upperBound(int index) {
+            if (index < SUB) return index + 1;
+            return (long) (SUB + 1 + index % SUB) << (index / SUB - 1);
+        }
+
+        public long getCount() {
+            long n = 0;
+            for (int i = 0; i < counts.length(); i++) n += counts.get(i);
+            return n;
+        }
+
+        public long getSumNanos() {
+            return sum.sum();
+        }
+
+        /**
+         * Upper bound of the bucket holding the {@code q} quantile, in nanoseconds; 0 if empty
+         */
+        public long quantile(double q) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long c : snapshot) total += c;
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return upperBound(i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private long[] snapshot() {
+            long[] snapshot = new long[counts.length()];
+            for (int i = 0; i < snapshot.length; i++) snapshot[i] = counts.get(i);
+            return snapshot;
+        }
+
+        private void write(StringBuilder out, String name, CharSequence labels) {
+            long[] snapshot = snapshot();
+            long cumulative = 0;
+            int i = 0;
+            for (int pow = MIN_EXPORT_POW; pow <= MAX_EXPORT_POW; pow++) {
+                long bound = 1L << pow;
+                while (i < snapshot.length && upperBound(i) <= bound) cumulative += snapshot[i++];
+                sample(out, name + "_bucket", labels, Double.toString(bound / 1e9), cumulative);
+            }
+            while (i < snapshot.length) cumulative += snapshot[i++];
+            sample(out, name + "_bucket", labels, "+Inf", cumulative);
+            out.append(name).append("_sum");
+            if (labels.length() > 0) out.append('{').append(labels).append('}');
+            out.append(' ').append(sum.sum() / 1e9).append('\n');
+            sample(out, name + "_count", labels, null, cumulative);
+        }
+    }
+
+    private static void label(StringBuilder labels, String name, String value) {
+        if (labels.length() > 0) labels.append(',');
+        labels.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') labels.append('\\').append(c);
+            else if (c == '\n') labels.append("\\n");
+            else labels.append(c);
+        }
+        labels.append('"');
+    }
+
+    private static void sample(StringBuilder out, String name, CharSequence labels, String le, long value) {
+        out.append(name);
+        if (labels.length() > 0 || le != null) {
+            out.append('{').append(labels);
+            if (le != null) out.append(labels.length() > 0 ? "," : "").append("le=\"").append(le).append('"');
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,358 @@
+package com.smarthome.util;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.Sensor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental persistence of a home in a directory: a full {@link BinarySnapshot} base plus
+ * delta files holding only what changed since the previous save. {@link #save()} drains the
+ * dirty flags kept by {@link Home}, {@link Room}, {@link SmartDevice} and {@link Sensor}, so
+ * its cost follows the number of changes, not the size of the home. Structural changes
+ * (rooms or devices added, removed or renamed) are written as a new base. Once deltas grow
+ * past {@code maxDeltas} files or the size of the base, they are compacted into a new base
+ * on a background thread (the autosave thread when autosaving), never inside {@code save()}.
+ * Files are numbered by one sequence and replaced atomically; loading takes the newest base
+ * and applies later deltas.
+ *
+ * <pre>
+ * delta := magic:int version:varint bool(home) [str(name) str(address) bool(armed) double(rate)]
+ *          varint(rooms) (str(room) bool(state) [double(temperature)]
+ *                         varint(devices) entity* varint(sensors) entity*)*
+ * </pre>
+ * (entity and str as in {@link BinarySnapshot}; devices and sensors are matched by name)
+ */
+public class SnapshotStore implements Closeable {
+    private static final int DELTA_MAGIC = 0x53484431; // "SHD1"
+    private static final int DELTA_VERSION = 1;
+    private static final int DEFAULT_MAX_DELTAS = 64;
+    private static final String BASE = "base-", DELTA = "delta-", SUFFIX = ".bin";
+
+    private final Home home;
+    private final Path dir;
+    private final int maxDeltas;
+    private long sequence;   // number of the newest file written
+    private long baseBytes;
+    private int deltaCount;
+    private long deltaBytes;
+    private ScheduledExecutorService autosave;
+    private ExecutorService compactor; // created on first compaction when not autosaving
+    private boolean compactionPending;
+
+    /**
+     * Store for a home not yet saved in {@code dir}; the first {@link #save()} writes a base
+     */
+    public SnapshotStore(Home home, String dir) throws IOException {
+        this(home, dir, DEFAULT_MAX_DELTAS);
+    }
+
+    public SnapshotStore(Home home, String dir, int maxDeltas) throws IOException {
+        this.home = home;
+        this.dir = Paths.get(dir);
+        this.maxDeltas = maxDeltas;
+        Files.createDirectories(this.dir);
+        TreeMap<Long, Path> bases = list(this.dir, BASE);
+        TreeMap<Long, Path> deltas = list(this.dir, DELTA);
+        sequence = Math.max(bases.isEmpty() ? 0 : bases.lastKey(), deltas.isEmpty() ? 0 : deltas.lastKey());
+        if (!bases.isEmpty()) {
+            baseBytes = Files.size(bases.lastEntry().getValue());
+            for (Path p : deltas.tailMap(bases.lastKey(), false).values()) {
+                deltaCount++;
+                deltaBytes += Files.size(p);
+            }
+        }
+    }
+
+    /**
+     * Load the home saved in {@code dir} and return a store for it with every flag clean
+     */
+    public static SnapshotStore open(String dir) throws IOException {
+        Home home = load(dir);
+        drainAll(home);
+        return new SnapshotStore(home, dir);
+    }
+
+    public Home getHome() {
+        return home;
+    }
+
+    /**
+     * Write what changed since the last save: nothing, a delta, or a new base
+     * @return true if a file was written
+     */
+    public synchronized boolean save() throws IOException {
+        if (baseBytes == 0) {
+            writeBase();
+            return true;
+        }
+        List<Room> rooms = home.drainDirtyRooms();
+        for (Room r : rooms) {
+            if (r.isStructureDirty()) {
+                for (Room drained : rooms) drain(drained);
+                writeBase();
+                return true;
+            }
+        }
+        boolean homeChanged = home.clearDirty();
+        if (rooms.isEmpty() && !homeChanged) return false;
+
+        long seq = sequence + 1;
+        Path file = dir.resolve(name(DELTA, seq));
+        try {
+            AtomicFiles.write(file, ch -> writeDelta(ch, homeChanged, rooms));
+        } catch (IOException e) {
+            baseBytes = 0; // the drained changes are lost to deltas; write a full base next time
+            throw e;
+        }
+        sequence = seq;
+        deltaCount++;
+        deltaBytes += Files.size(file);
+        if (deltaCount >= maxDeltas || deltaBytes > baseBytes) scheduleCompaction();
+        return true;
+    }
+
+    private void writeDelta(FileChannel ch, boolean homeChanged, List<Room> rooms) throws IOException {
+        BinarySnapshot.Writer out = new BinarySnapshot.Writer(ch);
+        out.buffer.putInt(DELTA_MAGIC);
+        out.varint(DELTA_VERSION);
+        out.bool(homeChanged);
+        if (homeChanged) {
+            out.string(home.getName());
+            out.string(home.getAddress());
+            out.bool(home.isSecuritySystemArmed());
+            out.putDouble(home.getElectricityRate());
+        }
+        out.varint(rooms.size());
+        for (Room r : rooms) {
+            out.string(r.getName());
+            boolean stateChanged = r.clearStateDirty();
+            out.bool(stateChanged);
+            if (stateChanged) out.putDouble(r.getCurrentTemperature());
+            List<SmartDevice> devices = r.drainDirtyDevices();
+            out.varint(devices.size());
+            for (SmartDevice d : devices) {
+                DeviceCodec<SmartDevice> codec = DeviceFactory.codecFor(d);
+                out.entity(codec.type(), d.getName(), codec.encode(d));
+            }
+            List<Sensor> sensors = r.drainDirtySensors();
+            out.varint(sensors.size());
+            for (Sensor s : sensors) out.entity(s.getClass().getSimpleName(), s.getName(), s.getStateFields());
+        }
+        out.flush();
+    }
+
+    /**
+     * Fold all deltas into a new base written from the current home
+     */
+    public synchronized void compact() throws IOException {
+        writeBase();
+    }
+
+    /**
+     * Save every {@code periodMillis} on a background thread; compaction runs there too
+     */
+    public synchronized void startAutosave(long periodMillis) {
+        if (autosave != null) return;
+        autosave = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "snapshot-autosave"));
+        autosave.scheduleWithFixedDelay(() -> run(this::save), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop autosaving, finish any pending compaction and write any remaining changes
+     */
+    @Override
+    public void close() throws IOException {
+        ExecutorService saver, compacting;
+        synchronized (this) {
+            saver = autosave;
+            compacting = compactor;
+            autosave = null;
+            compactor = null;
+        }
+        shutdown(saver);
+        shutdown(compacting);
+        save();
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Load the newest base in {@code dir} and apply the deltas written after it
+     */
+    public static Home load(String dir) throws IOException {
+        return load(dir, false);
+    }
+
+    /**
+     * Load as above; when {@code lazy}, rooms of the base are decoded on first use, so deltas
+     * load only the rooms they touch
+     */
+    public static Home load(String dir, boolean lazy) throws IOException {
+        Path d = Paths.get(dir);
+        TreeMap<Long, Path> bases = list(d, BASE);
+        if (bases.isEmpty()) throw new IOException("No base snapshot in " + dir);
+        Home home = BinarySnapshot.load(bases.lastEntry().getValue().toString(), lazy);
+        for (Path delta : list(d, DELTA).tailMap(bases.lastKey(), false).values()) apply(delta, home);
+        return home;
+    }
+
+    private static void apply(Path delta, Home home) throws IOException {
+        try (FileChannel ch = FileChannel.open(delta, StandardOpenOption.READ)) {
+            BinarySnapshot.Reader in = new BinarySnapshot.Reader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            if (in.buffer.getInt() != DELTA_MAGIC) throw new IOException("Not a delta file: " + delta);
+            int version = in.varint();
+            if (version > DELTA_VERSION) throw new IOException("Unsupported delta version " + version);
+            if (in.bool()) {
+                home.setName(in.string());
+                home.setAddress(in.string());
+                home.setSecuritySystemArmed(in.bool());
+                home.setElectricityRate(in.buffer.getDouble());
+            }
+            int rooms = in.varint();
+            for (int i = 0; i < rooms; i++) {
+                Room room = home.getRoom(in.string());
+                if (in.bool()) {
+                    double temperature = in.buffer.getDouble();
+                    if (room != null) room.setCurrentTemperature(temperature);
+                }
+                int devices = in.varint();
+                for (int j = 0; j < devices; j++) {
+                    in.string(); // type
+                    SmartDevice d = room == null ? null : room.getDevice(in.string());
+                    int fields = in.varint();
+                    for (int f = 0; f < fields; f++) {
+                        String field = in.string();
+                        String value = in.value();
+                        if (d != null) DeviceFactory.decode(d, field, value);
+                    }
+                }
+                int sensors = in.varint();
+                for (int j = 0; j < sensors; j++) {
+                    in.string(); // type
+                    Sensor s = room == null ? null : findSensor(room, in.string());
+                    int fields = in.varint();
+                    for (int f = 0; f < fields; f++) {
+                        String field = in.string();
+                        String value = in.value();
+                        if (s != null) s.applyStateField(field, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeBase() throws IOException {
+        drainAll(home); // before reading state, so concurrent changes land in the next delta
+        long seq = sequence + 1;
+        Path file = dir.resolve(name(BASE, seq));
+        try {
+            AtomicFiles.write(file, ch -> BinarySnapshot.write(home, ch));
+        } catch (IOException e) {
+            baseBytes = 0; // the drained changes are only in the home now; retry a full base next time
+            throw e;
+        }
+        sequence = seq;
+        baseBytes = Files.size(file);
+        deltaCount = 0;
+        deltaBytes = 0;
+        // Older files are now redundant; a crash before this point just leaves them to be skipped
+        for (Path p : list(dir, BASE).headMap(seq, false).values()) Files.deleteIfExists(p);
+        for (Path p : list(dir, DELTA).headMap(seq, false).values()) Files.deleteIfExists(p);
+    }
+
+    private void scheduleCompaction() {
+        if (compactionPending) return;
+        compactionPending = true;
+        Runnable task = () -> run(() -> {
+            synchronized (this) {
+                compactionPending = false;
+                if (deltaCount > 0) writeBase(); // a base may have been written meanwhile
+            }
+        });
+        if (autosave != null) {
+            autosave.execute(task);
+            return;
+        }
+        if (compactor == null) compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "snapshot-compact"));
+        compactor.execute(task);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void drainAll(Home home) {
+        home.clearDirty();
+        for (Room r : home.drainDirtyRooms()) drain(r);
+    }
+
+    private static void drain(Room r) {
+        r.clearStructureDirty();
+        r.clearStateDirty();
+        r.drainDirtyDevices();
+        r.drainDirtySensors();
+    }
+
+    private static Sensor findSensor(Room room, String name) {
+        for (Sensor s : room.getSensors()) if (s.getName().equals(name)) return s;
+        return null;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static void run(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            EventLog.warn("[Snapshot] Save failed: " + e.getMessage());
+        }
+    }
+
+    private static String name(String prefix, long seq) {
+        return String.format("%s%019d%s", prefix, seq, SUFFIX);
+    }
+
+    private static TreeMap<Long, Path> list(Path dir, String prefix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        if (!Files.isDirectory(dir)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + SUFFIX)) {
+            for (Path p : stream) {
+                String n = p.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(n.substring(prefix.length(), n.length() - SUFFIX.length())), p);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,117 @@
+package com.smarthome.util;
+
+import com.smarthome.model.Home;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves a home on a background thread so callers never block on disk. Requests made while
+ * a save is queued share it; a request made while a save is running queues one more, so a
+ * burst of requests costs at most two writes. Each save first serializes the home into
+ * memory, then writes it through {@link AtomicFiles} so the target is never left
+ * half-written. The in-memory image is built again if {@link Home#getVersion()} moved while
+ * it was built, so it holds one version of the home rather than a mix of changes made
+ * during the pass; if the home keeps changing through {@value #IMAGE_ATTEMPTS} passes, the
+ * last image is written and the changes are left to the next request. A scene or batch
+ * still being applied when a pass starts is saved as far as it got. Paths ending in
+ * {@code .bin} are written as a {@link BinarySnapshot}, others as JSON.
+ */
+public class WriteBehindPersister implements Closeable {
+    static final int IMAGE_ATTEMPTS = 3;
+
+    private final Home home;
+    private final Path path;
+    private final boolean binary;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "persistence-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong saves = new AtomicLong();
+    private CompletableFuture<Void> queued; // next save not yet started, guarded by this
+
+    public WriteBehindPersister(Home home, String path) {
+        this.home = home;
+        this.path = Paths.get(path);
+        this.binary = path.endsWith(".bin");
+    }
+
+    /**
+     * Ask for a save; returns immediately with a future completed once a save that started
+     * after this call has reached disk
+     */
+    public synchronized CompletableFuture<Void> requestSave() {
+        if (queued != null) return queued;
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        queued = next;
+        writer.execute(this::runSave);
+        return next;
+    }
+
+    /** Number of saves written so far */
+    public long getSaveCount() {
+        return saves.get();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private void runSave() {
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            done = queued;
+            queued = null;
+        }
+        try {
+            byte[] bytes = image();
+            AtomicFiles.write(path, ch -> {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                while (buf.hasRemaining()) ch.write(buf);
+            });
+            saves.incrementAndGet();
+            done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            EventLog.warn("[Persistence] Save to " + path + " failed: " + e.getMessage());
+            done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Serialize the home into memory, again if it changed meanwhile; see the class comment
+     */
+    private byte[] image() throws IOException {
+        ByteArrayOutputStream image = new ByteArrayOutputStream(64 * 1024);
+        for (int attempt = 1; ; attempt++) {
+            long version = home.getVersion();
+            if (binary) BinarySnapshot.write(home, Channels.newChannel(image));
+            else DataPersistence.writeHome(home, image, false);
+            if (home.getVersion() == version || attempt == IMAGE_ATTEMPTS) return image.toByteArray();
+            image.reset();
+        }
+    }
+
+    /**
+     * Finish any queued save, then stop the writer thread
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.smarthome.web;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.smarthome.automation.Condition;
+import com.smarthome.automation.Rule;
+import com.smarthome.automation.RuleProfile;
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.model.Home;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.service.SceneManager;
+import com.smarthome.util.JsonAdapters;
+import com.smarthome.util.Metrics;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The REST API behind both server modes: each route takes its path parameters and returns
+ * a status and JSON body, so {@link WebServer} (Spark) and {@link HttpApiServer} (JDK)
+ * serve identical responses. The read routes are cached views: the serialized bytes are
+ * reused until {@link Home#getVersion()} moves, and carry an ETag so the servers can answer
+ * a matching {@code If-None-Match} with 304 and no body.
+ */
+final class ApiRoutes {
+    static final int MAX_BATCH = 1000;
+    static final Gson GSON = JsonAdapters.register(new GsonBuilder()).create();
+
+    /**
+     * Serialize straight to UTF-8, skipping the intermediate String (which turns UTF-16, twice
+     * the size, as soon as one status contains an emoji)
+     */
+    static byte[] toJsonBytes(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            GSON.toJson(value, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory, does not happen
+        }
+        return bytes.toByteArray();
+    }
+
+    static final class Response {
+        static final String JSON = "application/json";
+
+        final int status;
+        final byte[] body;
+        final String etag; // null if not cacheable
+        final String type;
+
+        Response(int status, byte[] body, String etag) {
+            this(status, body, etag, JSON);
+        }
+
+        Response(int status, byte[] body, String etag, String type) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+            this.type = type;
+        }
+
+        static Response ok(Object value) { return json(200, value); }
+        static Response badRequest(String error) { return error(400, error); }
+        static Response error(int status, String error) { return json(status, Map.of("error", error)); }
+
+        static Response json(int status, Object value) {
+            return new Response(status, toJsonBytes(value), null);
+        }
+
+        /** True if the client's {@code If-None-Match} already names this body */
+        boolean notModified(String ifNoneMatch) {
+            return etag != null && ifNoneMatch != null && ifNoneMatch.contains(etag);
+        }
+    }
+
+    /**
+     * A serialized read view, rebuilt on the first request after the home's version moves
+     */
+    private final class CachedView {
+        private final Supplier<Object> source;
+        private volatile Map.Entry<Long, Response> cached; // version -> response built at it
+
+        CachedView(Supplier<Object> source) {
+            this.source = source;
+        }
+
+        Response get() {
+            long version = home.getVersion(); // read first: a change during serialization forces a rebuild
+            Map.Entry<Long, Response> c = cached;
+            if (c != null && c.getKey() == version) return c.getValue();
+            Response r = new Response(200, toJsonBytes(source.get()), "\"" + epoch + "-" + version + "\"");
+            cached = Map.entry(version, r);
+            return r;
+        }
+    }
+
+    // Distinguishes ETags across restarts, when versions start again from zero
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final Home home;
+    private volatile AutomationEngine engine; // optional, for the automation routes
+    private final SceneManager scenes;
+    private final CachedView rooms;
+    private final CachedView devices;
+    private volatile CachedView statusView;
+
+    ApiRoutes(Home home) {
+        this.home = home;
+        this.scenes = new SceneManager(home);
+        this.rooms = new CachedView(() -> {
+            home.loadAllRooms(); // rooms serialize their device lists directly
+            return home.getRooms();
+        });
+        this.devices = new CachedView(home::getAllDevices);
+    }
+
+    /**
+     * Every {@link Metrics} metric in the Prometheus text format
+     */
+    Response metrics() {
+        return new Response(200, Metrics.writePrometheus().getBytes(StandardCharsets.UTF_8), null, "text/plain; version=0.0.4; charset=utf-8");
+    }
+
+    Response homeStatus(int port) {
+        CachedView view = statusView;
+        if (view == null) statusView = view = new CachedView(() -> statusOf(port)); // port is fixed per server
+        return view.get();
+    }
+
+    private Map<String, Object> statusOf(int port) {
+        Map<String, Object> status = new HashMap<>();
+        status.put("name", home.getName());
+        status.put("address", home.getAddress());
+        status.put("rooms", home.getRooms().size());
+        status.put("devices", home.getDeviceCount());
+        status.put("activeDevices", home.getTotalActiveDevices());
+        status.put("powerWatts", home.getTotalPowerConsumption());
+        status.put("hourlyCost", home.getEstimatedHourlyCost());
+        status.put("securityArmed", home.isSecuritySystemArmed());
+        status.put("port", port);
+        return status;
+    }
+
+    Response rooms() {
+        return rooms.get();
+    }
+
+    Response devices() {
+        return devices.get();
+    }
+
+    Response deviceAction(String name, String action) {
+        SmartDevice d = home.getDeviceByName(name);
+        if (!apply(d, action)) return Response.badRequest("unknown action");
+        return Response.ok(Map.of("status", d.getStatus()));
+    }
+
+    private static boolean apply(SmartDevice d, String action) {
+        switch (action) {
+            case "on": d.turnOn(); return true;
+            case "off": d.turnOff(); return true;
+            case "toggle": d.toggle(); return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Apply many device commands in one request. The body is a JSON array of objects with
+     * an {@code id} or {@code name} and an {@code action} (on, off, toggle); every device is resolved
+     * through the home's indexes first, then the commands run grouped by room, and the
+     * response holds one result per command in request order. A bad item fails alone.
+     */
+    Response deviceBatch(String body) {
+        JsonArray commands;
+        try {
+            JsonElement parsed = body == null || body.isBlank() ? null : JsonParser.parseString(body);
+            if (parsed == null || !parsed.isJsonArray()) return Response.badRequest("expected a JSON array of commands");
+            commands = parsed.getAsJsonArray();
+        } catch (JsonParseException e) {
+            return Response.badRequest("malformed JSON");
+        }
+        if (commands.size() > MAX_BATCH) return Response.badRequest("at most " + MAX_BATCH + " commands per batch");
+
+        // Resolve everything first, so a batch never half-applies because of a lookup
+        List<Map<String, Object>> results = new ArrayList<>(commands.size());
+        Map<String, List<Integer>> byRoom = new LinkedHashMap<>();
+        SmartDevice[] targets = new SmartDevice[commands.size()];
+        String[] actions = new String[commands.size()];
+        for (int i = 0; i < commands.size(); i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            results.add(result);
+            JsonElement item = commands.get(i);
+            JsonObject cmd = item.isJsonObject() ? item.getAsJsonObject() : null;
+            String id = cmd == null ? null : string(cmd, "id");
+            String name = cmd == null ? null : string(cmd, "name");
+            actions[i] = cmd == null ? null : string(cmd, "action");
+            if (id == null && name == null) {
+                fail(result, "id or name required");
+                continue;
+            }
+            try {
+                targets[i] = id != null ? home.getDeviceById(id) : home.getDeviceByName(name);
+            } catch (DeviceNotFoundException e) {
+                result.put(id != null ? "id" : "name", id != null ? id : name);
+                fail(result, e.getMessage());
+                continue;
+            }
+            byRoom.computeIfAbsent(targets[i].getLocation(), r -> new ArrayList<>()).add(i);
+        }
+
+        int failed = commands.size();
+        for (List<Integer> group : byRoom.values()) {
+            for (int i : group) {
+                SmartDevice d = targets[i];
+                Map<String, Object> result = results.get(i);
+                result.put("id", d.getId());
+                result.put("name", d.getName());
+                result.put("room", d.getLocation());
+                if (actions[i] == null || !apply(d, actions[i])) {
+                    fail(result, "unknown action: " + actions[i]);
+                    continue;
+                }
+                result.put("ok", true);
+                result.put("isOn", d.isOn());
+                failed--;
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("applied", commands.size() - failed);
+        response.put("failed", failed);
+        response.put("results", results);
+        return Response.ok(response);
+    }
+
+    private static String string(JsonObject o, String key) {
+        JsonElement e = o.get(key);
+        return e == null || !e.isJsonPrimitive() ? null : e.getAsString();
+    }
+
+    private static void fail(Map<String, Object> result, String error) {
+        result.put("ok", false);
+        result.put("error", error);
+    }
+
+    Response scene(String name) {
+        scenes.apply(name);
+        return Response.ok(Map.of("ok", true));
+    }
+
+    Response security(String action) {
+        if ("arm".equals(action)) home.armSecuritySystem();
+        else if ("disarm".equals(action)) home.disarmSecuritySystem();
+        else return Response.badRequest("unknown action");
+        return Response.ok(Map.of("armed", home.isSecuritySystemArmed()));
+    }
+
+    void setEngine(AutomationEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Per-rule profile of the attached engine, most expensive rule first: evaluations,
+     * trigger hits, actions fired, microseconds per stage and failures per condition
+     */
+    Response automationProfile() {
+        AutomationEngine e = engine;
+        if (e == null) return Response.error(404, "no automation engine");
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (Rule r : e.getRulesByCost()) {
+            RuleProfile p = r.getProfile();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", r.getName());
+            entry.put("enabled", r.isEnabled());
+            entry.put("trigger", r.getTrigger().describe());
+            entry.put("evaluations", p.getEvaluations());
+            entry.put("triggerHits", p.getTriggerHits());
+            entry.put("actionsFired", p.getActionsFired());
+            entry.put("triggerMicros", p.getTriggerNanos() / 1000);
+            entry.put("conditionMicros", p.getConditionNanos() / 1000);
+            entry.put("actionMicros", p.getActionNanos() / 1000);
+            entry.put("totalMicros", p.getTotalNanos() / 1000);
+            List<Map<String, Object>> conditions = new ArrayList<>();
+            List<Condition> cs = r.getConditions();
+            for (int i = 0; i < cs.size(); i++) {
+                Map<String, Object> c = new LinkedHashMap<>();
+                c.put("condition", cs.get(i).describe());
+                c.put("failures", p.getConditionFailures(i));
+                conditions.add(c);
+            }
+            entry.put("conditions", conditions);
+            rules.add(entry);
+        }
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("profiling", e.isProfiling());
+        profile.put("rules", rules);
+        return Response.ok(profile);
+    }
+
+    /** on, off or reset */
+    Response automationProfile(String action) {
+        AutomationEngine e = engine;
+        if (e == null) return Response.error(404, "no automation engine");
+        switch (action) {
+            case "on": e.setProfiling(true); break;
+            case "off": e.setProfiling(false); break;
+            case "reset": e.resetProfiles(); break;
+            default: return Response.badRequest("unknown action");
+        }
+        return Response.ok(Map.of("profiling", e.isProfiling()));
+    }
+}
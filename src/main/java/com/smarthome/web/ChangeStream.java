@@ -0,0 +1,314 @@
+package com.smarthome.web;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.StateChangeListener;
+import com.smarthome.model.sensors.Sensor;
+import com.smarthome.util.DeviceFactory;
+import com.smarthome.util.EventLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes device and sensor changes to subscribed clients as Server-Sent Events. Changes are
+ * coalesced per entity at the source and published every {@code intervalMillis}. Each change
+ * is serialized once and the same bytes are queued for every client. A client's queue also
+ * holds at most one frame per entity, so a slow client receives only the latest state. If
+ * its queue still reaches {@code queueCapacity} distinct entities, the queue is dropped and
+ * the client gets a {@code resync} event telling it to refetch /api/devices. Frames are
+ * written by a small shared pool. Each write has a deadline of {@code writeTimeoutMillis}; a
+ * client still blocked past it is dropped, and the pool gets a stand-in thread for as long
+ * as that write stays stuck, so a stalled socket holds up only its own client.
+ *
+ * <pre>
+ * event: device | sensor
+ * data: {"id":..,"name":..,"room":..,"type":..,"state":{field: value, ...}}
+ * </pre>
+ */
+public class ChangeStream implements StateChangeListener, Closeable {
+    private static final int DEFAULT_QUEUE = 256;
+    private static final long DEFAULT_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 10_000;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final int WRITERS = 4;
+    private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESYNC = "event: resync\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PING = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Home home;
+    private final int queueCapacity;
+    private final long writeTimeoutNanos;
+    private final Map<String, Object> pending = new ConcurrentHashMap<>(); // "d:"/"s:" + id -> entity
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService publisher;
+    private final ThreadPoolExecutor writers;
+    private int stuckWriters; // guarded by writers
+    private long lastHeartbeat = System.currentTimeMillis();
+
+    public ChangeStream(Home home) {
+        this(home, DEFAULT_QUEUE, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    public ChangeStream(Home home, int queueCapacity, long intervalMillis) {
+        this(home, queueCapacity, intervalMillis, DEFAULT_WRITE_TIMEOUT_MILLIS);
+    }
+
+    public ChangeStream(Home home, int queueCapacity, long intervalMillis, long writeTimeoutMillis) {
+        this.home = home;
+        this.queueCapacity = queueCapacity;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "sse-publisher"));
+        AtomicInteger count = new AtomicInteger();
+        this.writers = new ThreadPoolExecutor(WRITERS, WRITERS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> daemon(r, "sse-writer-" + count.incrementAndGet()));
+        home.addStateChangeListener(this);
+        publisher.scheduleWithFixedDelay(this::publish, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Start streaming to {@code out}, whose response headers must already be sent;
+     * {@code onClose} runs once the client disconnects or the stream is closed
+     */
+    public Client subscribe(OutputStream out, Runnable onClose) {
+        Client client = new Client(out, onClose);
+        clients.add(client);
+        client.offer("retry", RETRY);
+        return client;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public void onDeviceChange(Room room, SmartDevice device) {
+        pending.put("d:" + device.getId(), device);
+    }
+
+    @Override
+    public void onSensorChange(Room room, Sensor sensor) {
+        pending.put("s:" + sensor.getId(), sensor);
+    }
+
+    /** Serialize each pending change once and queue it for every client */
+    void publish() {
+        try {
+            long deadline = System.nanoTime() - writeTimeoutNanos;
+            for (Client c : clients) {
+                long started = c.writeStarted;
+                if (started != 0 && started - deadline < 0) c.drop(started);
+            }
+            for (Iterator<Map.Entry<String, Object>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Object> e = it.next();
+                it.remove();
+                byte[] frame = frame(e.getValue());
+                for (Client c : clients) c.offer(e.getKey(), frame);
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastHeartbeat >= HEARTBEAT_MILLIS) { // also how dead connections are noticed
+                lastHeartbeat = now;
+                for (Client c : clients) c.offer("ping", PING);
+            }
+        } catch (RuntimeException e) {
+            EventLog.warn("[Events] Publish failed: " + e.getMessage());
+        }
+    }
+
+    private static byte[] frame(Object entity) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        String kind;
+        if (entity instanceof SmartDevice) {
+            SmartDevice d = (SmartDevice) entity;
+            kind = "device";
+            event.put("id", d.getId());
+            event.put("name", d.getName());
+            event.put("room", d.getLocation());
+            event.put("type", d.getType());
+            event.put("state", DeviceFactory.encode(d));
+        } else {
+            Sensor s = (Sensor) entity;
+            kind = "sensor";
+            event.put("id", s.getId());
+            event.put("name", s.getName());
+            event.put("room", s.getLocation());
+            event.put("type", s.getClass().getSimpleName());
+            event.put("state", s.getStateFields());
+        }
+        return ("event: " + kind + "\ndata: " + ApiRoutes.GSON.toJson(event) + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Grow or shrink the writer pool by one around a write that outlived its deadline
+     */
+    private void adjustWriters(int delta) {
+        synchronized (writers) {
+            stuckWriters += delta;
+            int size = WRITERS + stuckWriters;
+            if (delta > 0) {
+                writers.setMaximumPoolSize(size);
+                writers.setCorePoolSize(size);
+            } else {
+                writers.setCorePoolSize(size);
+                writers.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /**
+     * Stop publishing and disconnect every client
+     */
+    @Override
+    public void close() {
+        home.removeStateChangeListener(this);
+        publisher.shutdownNow();
+        for (Client c : clients) c.close();
+        writers.shutdown();
+    }
+
+    /**
+     * One subscriber: a bounded queue holding at most one frame per entity, drained by the
+     * shared writer pool
+     */
+    public final class Client {
+        private final OutputStream out;
+        private final Runnable onClose;
+        private final LinkedHashMap<String, byte[]> queue = new LinkedHashMap<>(); // guarded by this
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private boolean scheduled, overflowed, stuck;
+        private volatile long writeStarted; // System.nanoTime() of the write in progress, 0 when idle
+        private long coalesced, resyncs;
+        private volatile boolean dropped;
+
+        Client(OutputStream out, Runnable onClose) {
+            this.out = out;
+            this.onClose = onClose;
+        }
+
+        synchronized void offer(String key, byte[] frame) {
+            if (closed.getCount() == 0) return;
+            if (queue.containsKey(key)) {
+                coalesced++;
+            } else if (queue.size() >= queueCapacity) {
+                queue.clear();
+                overflowed = true;
+                resyncs++;
+            }
+            queue.put(key, frame);
+            if (!scheduled) {
+                scheduled = true;
+                writers.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<byte[]> frames;
+                boolean resync;
+                synchronized (this) {
+                    if (queue.isEmpty() && !overflowed) {
+                        scheduled = false;
+                        return;
+                    }
+                    frames = new ArrayList<>(queue.values());
+                    queue.clear();
+                    resync = overflowed;
+                    overflowed = false;
+                }
+                writeStarted = System.nanoTime() | 1; // never 0
+                try {
+                    if (resync) out.write(RESYNC);
+                    for (byte[] f : frames) out.write(f);
+                    out.flush();
+                } catch (IOException e) {
+                    close();
+                    return;
+                } finally {
+                    writeStarted = 0;
+                    synchronized (this) {
+                        if (stuck) {
+                            stuck = false;
+                            adjustWriters(-1);
+                        }
+                    }
+                }
+                if (closed.getCount() == 0) return;
+            }
+        }
+
+        /**
+         * Called by the publisher once a write has outlived the deadline: disconnect the
+         * client and lend the pool a thread until the blocked write returns. The stream is
+         * closed on its own thread since closing can block on the same full socket.
+         */
+        private void drop(long started) {
+            synchronized (this) {
+                if (closed.getCount() == 0 || writeStarted != started) return;
+                stuck = true;
+                adjustWriters(1);
+            }
+            EventLog.warn("[Events] Dropping client stalled for over "
+                + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + " ms");
+            dropped = true;
+            daemon(this::close, "sse-drop").start();
+        }
+
+        /** Whether the client was disconnected for missing a write deadline */
+        public boolean wasDropped() {
+            return dropped;
+        }
+
+        /** Changes merged into an already queued frame for the same entity */
+        public synchronized long getCoalescedCount() {
+            return coalesced;
+        }
+
+        /** Times the queue overflowed and was replaced by a resync event */
+        public synchronized long getResyncCount() {
+            return resyncs;
+        }
+
+        /** Block until the client disconnects or the stream is closed */
+        public void awaitClosed() throws InterruptedException {
+            closed.await();
+        }
+
+        public void close() {
+            synchronized (this) {
+                if (closed.getCount() == 0) return;
+                closed.countDown();
+                queue.clear();
+            }
+            clients.remove(this);
+            try {
+                out.close();
+            } catch (IOException ignore) {
+                // already gone
+            }
+            if (onClose != null) onClose.run();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.smarthome.web;
+
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.model.Home;
+import com.smarthome.util.EventLog;
+import com.smarthome.util.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link WebServer} routes and static dashboard on the JDK's built-in HTTP server, with
+ * requests handled by a fixed pool of worker threads. The acceptor only parses requests and
+ * hands them over, and the pool is sized up front instead of growing under load.
+ */
+public class HttpApiServer {
+    private static final int BACKLOG = 1024;
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+        "html", "text/html; charset=utf-8",
+        "css", "text/css; charset=utf-8",
+        "js", "application/javascript; charset=utf-8",
+        "json", "application/json",
+        "svg", "image/svg+xml",
+        "png", "image/png",
+        "ico", "image/x-icon");
+
+    static {
+        // Without TCP_NODELAY, small responses sit behind the client's delayed ACK (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Home home;
+    private final ApiRoutes api;
+    private final int threads;
+    private HttpServer server;
+    private ExecutorService workers;
+    private ChangeStream events;
+    private int chosenPort;
+
+    public HttpApiServer(Home home) {
+        this(home, Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    public HttpApiServer(Home home, int threads) {
+        this.home = home;
+        this.api = new ApiRoutes(home);
+        this.threads = threads;
+    }
+
+    public void start(int port) throws IOException {
+        chosenPort = WebServer.findPort(port);
+        server = HttpServer.create(new InetSocketAddress("0.0.0.0", chosenPort), BACKLOG);
+        AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "http-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(workers);
+        events = new ChangeStream(home);
+        server.createContext("/api/events", this::handleEvents);
+        server.createContext("/api/", this::handleApi);
+        server.createContext("/", this::handleStatic);
+        server.start();
+        EventLog.info("🌐 HTTP server on port " + chosenPort + " with " + threads + " workers");
+    }
+
+    /**
+     * Serve the engine's rule profiles under /api/automation/profile
+     */
+    public void setAutomationEngine(AutomationEngine engine) {
+        api.setEngine(engine);
+    }
+
+    public int getPort() {
+        return chosenPort;
+    }
+
+    public void stop() {
+        if (server == null) return;
+        events.close();
+        server.stop(0);
+        workers.shutdown();
+        server = null;
+    }
+
+    private void handleApi(HttpExchange ex) throws IOException {
+        long t0 = System.nanoTime();
+        String method = ex.getRequestMethod();
+        String pattern = null;
+        try {
+            // Always consume the request body, or the server closes the connection after a 304
+            String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            if (method.equals("OPTIONS")) {
+                String reqHeaders = ex.getRequestHeaders().getFirst("Access-Control-Request-Headers");
+                if (reqHeaders != null) ex.getResponseHeaders().set("Access-Control-Allow-Headers", reqHeaders);
+                String reqMethod = ex.getRequestHeaders().getFirst("Access-Control-Request-Method");
+                if (reqMethod != null) ex.getResponseHeaders().set("Access-Control-Allow-Methods", reqMethod);
+                send(ex, 200, "text/plain", "OK".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String[] parts = ex.getRequestURI().getPath().split("/");
+            pattern = match(method, parts);
+            ApiRoutes.Response response = pattern == null ? null : route(pattern, parts, body);
+            if (response == null) response = ApiRoutes.Response.error(404, "not found");
+            if (response.etag != null) {
+                ex.getResponseHeaders().set("ETag", response.etag);
+                ex.getResponseHeaders().set("Cache-Control", "no-cache");
+                if (response.notModified(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                    ex.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            send(ex, response.status, response.type, response.body);
+        } catch (RuntimeException e) {
+            ApiRoutes.Response error = ApiRoutes.Response.error(500, String.valueOf(e.getMessage()));
+            send(ex, error.status, error.type, error.body);
+        } finally {
+            ex.close();
+            // Unmatched requests share one child so arbitrary paths and methods cannot grow the registry
+            if (pattern == null) Metrics.HTTP_REQUESTS.labels("other", "unmatched").recordSince(t0);
+            else Metrics.HTTP_REQUESTS.labels(method, pattern).recordSince(t0);
+        }
+    }
+
+    /**
+     * Server-Sent Events stream of changes; the exchange stays open after this returns and
+     * is written by the {@link ChangeStream}, so a subscriber does not hold a worker
+     */
+    private void handleEvents(HttpExchange ex) throws IOException {
+        ex.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        if (!ex.getRequestMethod().equals("GET")) {
+            try {
+                send(ex, 405, "text/plain", "GET only".getBytes(StandardCharsets.UTF_8));
+            } finally {
+                ex.close();
+            }
+            return;
+        }
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(200, 0);
+        events.subscribe(ex.getResponseBody(), ex::close);
+    }
+
+    /**
+     * The route pattern a request matches, which also labels its latency metric; null if none.
+     * parts[0] is empty and parts[1] is "api".
+     */
+    private static String match(String method, String[] parts) {
+        String resource = parts.length > 2 ? parts[2] : "";
+        if (method.equals("GET")) {
+            if (parts.length == 4 && resource.equals("home") && parts[3].equals("status")) return "/api/home/status";
+            if (parts.length == 3 && resource.equals("rooms")) return "/api/rooms";
+            if (parts.length == 3 && resource.equals("devices")) return "/api/devices";
+            if (parts.length == 3 && resource.equals("metrics")) return "/api/metrics";
+            if (parts.length == 4 && resource.equals("automation") && parts[3].equals("profile")) return "/api/automation/profile";
+        } else if (method.equals("POST")) {
+            if (parts.length == 4 && resource.equals("devices") && parts[3].equals("batch")) return "/api/devices/batch";
+            if (parts.length == 5 && resource.equals("devices")) return "/api/devices/:name/:action";
+            if (parts.length == 4 && resource.equals("scene")) return "/api/scene/:name";
+            if (parts.length == 4 && resource.equals("security")) return "/api/security/:action";
+            if (parts.length == 5 && resource.equals("automation") && parts[3].equals("profile")) return "/api/automation/profile/:action";
+        }
+        return null;
+    }
+
+    private ApiRoutes.Response route(String pattern, String[] parts, String body) {
+        switch (pattern) {
+            case "/api/home/status": return api.homeStatus(chosenPort);
+            case "/api/rooms": return api.rooms();
+            case "/api/devices": return api.devices();
+            case "/api/metrics": return api.metrics();
+            case "/api/devices/batch": return api.deviceBatch(body);
+            case "/api/devices/:name/:action": return api.deviceAction(parts[3], parts[4]);
+            case "/api/scene/:name": return api.scene(parts[3]);
+            case "/api/security/:action": return api.security(parts[3]);
+            case "/api/automation/profile": return api.automationProfile();
+            case "/api/automation/profile/:action": return api.automationProfile(parts[4]);
+            default: return null;
+        }
+    }
+
+    private void handleStatic(HttpExchange ex) throws IOException {
+        try {
+            String path = ex.getRequestURI().getPath();
+            if (path.endsWith("/")) path += "index.html";
+            InputStream in = path.contains("..") ? null : HttpApiServer.class.getResourceAsStream("/public" + path);
+            if (in == null) {
+                send(ex, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] body;
+            try (in) {
+                body = in.readAllBytes();
+            }
+            String ext = path.substring(path.lastIndexOf('.') + 1);
+            send(ex, 200, CONTENT_TYPES.getOrDefault(ext, "application/octet-stream"), body);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, String type, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", type);
+        ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -1,54 +1,54 @@
 package com.smarthome.web;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSerializer;
+import com.smarthome.controller.AutomationEngine;
 import com.smarthome.model.Home;
-import com.smarthome.model.Room;
-import com.smarthome.model.SmartDevice;
-import com.smarthome.service.SceneManager;
+import com.smarthome.util.Metrics;
+import spark.Route;
 import spark.Spark;
-import java.time.LocalDateTime;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * REST API and static dashboard on SparkJava's embedded Jetty. See {@link HttpApiServer}
+ * for the same routes on the JDK's built-in server.
+ */
 public class WebServer {
-    private static final Gson gson = new GsonBuilder()
-        .registerTypeAdapter(LocalDateTime.class,
-            (JsonSerializer<LocalDateTime>) (src, typeOfSrc, context) ->
-                src == null ? null : new com.google.gson.JsonPrimitive(src.toString()))
-        .create();
+    private static final int JETTY_DEFAULT_THREADS = 200;
+
     private final Home home;
-    private final SceneManager scenes;
+    private final ApiRoutes api;
+    private ChangeStream events;
     private int chosenPort; // Make port an instance variable
+    private int threads; // Jetty pool size, 0 for Spark's default
+    private int maxEventClients; // 0 for a quarter of the pool
+    private final AtomicInteger eventClients = new AtomicInteger();
 
     public WebServer(Home home) {
         this.home = home;
-        this.scenes = new SceneManager(home);
+        this.api = new ApiRoutes(home);
+    }
+
+    /**
+     * Size Jetty's request thread pool; call before {@link #start}
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Cap concurrent /api/events subscribers, each of which holds a Jetty thread; further
+     * subscribers get 503. Defaults to a quarter of the pool so REST routes keep threads.
+     * Use {@link HttpApiServer} for many panels.
+     */
+    public void setMaxEventClients(int maxEventClients) {
+        this.maxEventClients = maxEventClients;
     }
 
     public void start(int port) {
-        // Find an available port starting from requested
-        this.chosenPort = port; // Store as instance variable
-        try {
-            java.net.ServerSocket ss = new java.net.ServerSocket();
-            ss.setReuseAddress(true);
-            ss.bind(new java.net.InetSocketAddress("0.0.0.0", port));
-            ss.close();
-        } catch (Exception e) {
-            for (int p = port + 1; p <= port + 10; p++) {
-                try {
-                    java.net.ServerSocket ss2 = new java.net.ServerSocket();
-                    ss2.setReuseAddress(true);
-                    ss2.bind(new java.net.InetSocketAddress("0.0.0.0", p));
-                    ss2.close();
-                    this.chosenPort = p; // Use instance variable
-                    break;
-                } catch (Exception ignore) {}
-            }
-        }
+        this.chosenPort = findPort(port); // Store as instance variable
         Spark.port(this.chosenPort);
+        if (threads > 0) Spark.threadPool(threads);
         Spark.staticFileLocation("public"); // src/main/resources/public
 
         // CORS for dev
@@ -61,59 +61,107 @@ public class WebServer {
         });
         Spark.before((req, res) -> res.header("Access-Control-Allow-Origin", "*"));
 
-        Spark.get("/api/home/status", (req, res) -> {
-            res.type("application/json");
-            Map<String, Object> status = new HashMap<>();
-            status.put("name", home.getName());
-            status.put("address", home.getAddress());
-            status.put("rooms", home.getRooms().size());
-            status.put("devices", home.getAllDevices().size());
-            status.put("activeDevices", home.getTotalActiveDevices());
-            status.put("powerWatts", home.getTotalPowerConsumption());
-            status.put("hourlyCost", home.getEstimatedHourlyCost());
-            status.put("securityArmed", home.isSecuritySystemArmed());
-            status.put("port", this.chosenPort); // Use instance variable
-            return gson.toJson(status);
-        });
+        get("/api/home/status", (req, res) -> send(req, res, api.homeStatus(this.chosenPort)));
+        get("/api/rooms", (req, res) -> send(req, res, api.rooms()));
+        get("/api/devices", (req, res) -> send(req, res, api.devices()));
+        get("/api/metrics", (req, res) -> send(req, res, api.metrics()));
+        post("/api/devices/batch", (req, res) -> send(req, res, api.deviceBatch(req.body())));
+        post("/api/devices/:name/:action", (req, res) ->
+            send(req, res, api.deviceAction(req.params(":name"), req.params(":action"))));
+        post("/api/scene/:name", (req, res) -> send(req, res, api.scene(req.params(":name"))));
+        post("/api/security/:action", (req, res) -> send(req, res, api.security(req.params(":action"))));
+        get("/api/automation/profile", (req, res) -> send(req, res, api.automationProfile()));
+        post("/api/automation/profile/:action", (req, res) -> send(req, res, api.automationProfile(req.params(":action"))));
 
-        Spark.get("/api/rooms", (req, res) -> {
-            res.type("application/json");
-            return gson.toJson(home.getRooms());
+        // Server-Sent Events; each subscriber holds a Jetty thread until it disconnects
+        events = new ChangeStream(home);
+        int eventLimit = maxEventClients > 0 ? maxEventClients
+            : Math.max(1, (threads > 0 ? threads : JETTY_DEFAULT_THREADS) / 4);
+        Spark.get("/api/events", (req, res) -> {
+            if (eventClients.incrementAndGet() > eventLimit) {
+                eventClients.decrementAndGet();
+                res.status(503);
+                res.header("Retry-After", "30");
+                return "Too many event subscribers";
+            }
+            try {
+                HttpServletResponse raw = res.raw();
+                raw.setContentType("text/event-stream");
+                raw.setHeader("Cache-Control", "no-cache");
+                raw.flushBuffer();
+                events.subscribe(raw.getOutputStream(), null).awaitClosed();
+                return "";
+            } finally {
+                eventClients.decrementAndGet();
+            }
         });
+    }
 
-        Spark.get("/api/devices", (req, res) -> {
-            res.type("application/json");
-            return gson.toJson(home.getAllDevices());
-        });
+    private static void get(String path, Route route) {
+        Spark.get(path, timed("GET", path, route));
+    }
+
+    private static void post(String path, Route route) {
+        Spark.post(path, timed("POST", path, route));
+    }
 
-        Spark.post("/api/devices/:name/:action", (req, res) -> {
-            res.type("application/json");
-            String name = req.params(":name");
-            String action = req.params(":action");
-            SmartDevice d = home.getDeviceByName(name);
-            switch (action) {
-                case "on": d.turnOn(); break;
-                case "off": d.turnOff(); break;
-                case "toggle": d.toggle(); break;
-                default: res.status(400); return gson.toJson(Map.of("error","unknown action"));
+    /**
+     * Record the handler's latency under its route pattern; the histogram is resolved once here
+     */
+    private static Route timed(String method, String path, Route route) {
+        Metrics.Histogram latency = Metrics.HTTP_REQUESTS.labels(method, path);
+        return (req, res) -> {
+            long t0 = System.nanoTime();
+            try {
+                return route.handle(req, res);
+            } finally {
+                latency.recordSince(t0);
             }
-            return gson.toJson(Map.of("status", d.getStatus()));
-        });
+        };
+    }
 
-        Spark.post("/api/scene/:name", (req, res) -> {
-            res.type("application/json");
-            String name = req.params(":name");
-            scenes.apply(name);
-            return gson.toJson(Map.of("ok", true));
-        });
+    /**
+     * Serve the engine's rule profiles under /api/automation/profile
+     */
+    public void setAutomationEngine(AutomationEngine engine) {
+        api.setEngine(engine);
+    }
 
-        Spark.post("/api/security/:action", (req, res) -> {
-            res.type("application/json");
-            String action = req.params(":action");
-            if ("arm".equals(action)) home.armSecuritySystem();
-            else if ("disarm".equals(action)) home.disarmSecuritySystem();
-            else { res.status(400); return gson.toJson(Map.of("error","unknown action")); }
-            return gson.toJson(Map.of("armed", home.isSecuritySystemArmed()));
-        });
+    public int getPort() {
+        return chosenPort;
+    }
+
+    public void stop() {
+        if (events != null) events.close();
+        Spark.stop();
+        Spark.awaitStop();
+    }
+
+    private static byte[] send(spark.Request req, spark.Response res, ApiRoutes.Response response) {
+        res.type(response.type);
+        if (response.etag != null) {
+            res.header("ETag", response.etag);
+            res.header("Cache-Control", "no-cache");
+            if (response.notModified(req.headers("If-None-Match"))) {
+                res.status(304);
+                return new byte[0];
+            }
+        }
+        res.status(response.status);
+        return response.body;
+    }
+
+    /**
+     * The requested port if free, else the first free one of the next ten
+     */
+    static int findPort(int port) {
+        for (int p = port; p <= port + 10; p++) {
+            try (java.net.ServerSocket ss = new java.net.ServerSocket()) {
+                ss.setReuseAddress(true);
+                ss.bind(new java.net.InetSocketAddress("0.0.0.0", p));
+                return p;
+            } catch (Exception ignore) {}
+        }
+        return port;
     }
-}
\ No newline at end of file
+}
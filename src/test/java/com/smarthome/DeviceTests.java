@@ -1,7 +1,13 @@
 package com.smarthome;
 
 import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.sensors.TemperatureSensor;
+import com.smarthome.model.sensors.TimeSeries;
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class DeviceTests {
@@ -14,4 +20,46 @@ public class DeviceTests {
         assertTrue(light.isOn());
         assertEquals(5.0, light.getCurrentPowerConsumption(), 0.001); // 10W * 0.5
     }
+
+    @Test
+    void timeSeriesKeepsRawRingAndRollups() {
+        TimeSeries series = new TimeSeries(100, 10, 5);
+        long base = 1_000 * TimeSeries.HOUR_MILLIS;
+        for (int i = 0; i < 300; i++) series.record(base + i * 1_000L, i); // one sample per second, 5 minutes
+        assertEquals(100, series.size());
+        assertEquals(299.0, series.latest(), 0.0);
+
+        double[] sum = {0};
+        int n = series.rawRange(base + 250_000L, base + 260_000L, (t, v) -> sum[0] += v);
+        assertEquals(10, n);
+        assertEquals(2545.0, sum[0], 1e-9); // 250..259
+
+        double[][] minute = new double[5][];
+        int buckets = series.minuteRange(Long.MIN_VALUE, Long.MAX_VALUE,
+            (start, min, max, avg, count) -> minute[(int) ((start - base) / TimeSeries.MINUTE_MILLIS)] = new double[] {min, max, avg, count});
+        assertEquals(5, buckets);
+        assertArrayEquals(new double[] {60, 119, 89.5, 60}, minute[1], 1e-9);
+        assertEquals(1, series.hourRange(base, base + TimeSeries.HOUR_MILLIS,
+            (start, min, max, avg, count) -> assertEquals(300, count)));
+
+        // Rings start empty and grow to capacity before wrapping
+        TimeSeries grown = new TimeSeries(20, 10, 5);
+        assertEquals(0, grown.rawRange(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> fail()));
+        assertEquals(0, grown.minuteRange(Long.MIN_VALUE, Long.MAX_VALUE, (start, min, max, avg, count) -> fail()));
+        for (int i = 0; i < 25; i++) grown.record(base + i * TimeSeries.MINUTE_MILLIS, i);
+        List<Double> raw = new ArrayList<>();
+        grown.rawRange(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> raw.add(v));
+        assertEquals(20, raw.size());
+        assertEquals(5.0, raw.get(0), 0.0);
+        assertEquals(24.0, raw.get(19), 0.0);
+        List<Double> minutes = new ArrayList<>();
+        assertEquals(10, grown.minuteRange(Long.MIN_VALUE, Long.MAX_VALUE, (start, min, max, avg, count) -> minutes.add(avg)));
+        assertEquals(15.0, minutes.get(0), 0.0);
+        assertEquals(24.0, minutes.get(9), 0.0);
+
+        TemperatureSensor sensor = new TemperatureSensor("Temp", "Room");
+        sensor.setTemperature(19.5);
+        sensor.takeMeasurement();
+        assertEquals(2, sensor.getHistory().size());
+    }
 }
@@ -0,0 +1,315 @@
+package com.smarthome;
+
+import com.smarthome.automation.builtins.DarkCondition;
+import com.smarthome.automation.builtins.TimeAfterTrigger;
+import com.smarthome.automation.builtins.TurnOnRoomLightsAction;
+import com.smarthome.automation.Rule;
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.StateChangeListener;
+import com.smarthome.model.devices.DoorLock;
+import com.smarthome.model.devices.SecurityCamera;
+import com.smarthome.model.devices.SmartBlinds;
+import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.devices.SmartPlug;
+import com.smarthome.model.devices.Thermostat;
+import com.smarthome.model.sensors.LightSensor;
+import com.smarthome.service.HomeGenerator;
+import com.smarthome.service.LoadSimulator;
+import com.smarthome.util.EventLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HomeTests {
+    @Test
+    void indexesFollowAddAndRemove() {
+        Home home = new Home("Test", "Addr");
+        Room living = new Room("Living", "Floor", 10);
+        home.addRoom(living);
+        SmartLight lamp = new SmartLight("Lamp", living.getName());
+        DoorLock door = new DoorLock("Front Door", living.getName());
+        living.addDevice(lamp);
+        home.addDevice("living", door);
+
+        assertSame(living, home.getRoom("LIVING"));
+        assertSame(lamp, home.getDeviceByName("lamp"));
+        assertEquals(1, home.getDevicesByType(SmartLight.class).size());
+        assertEquals(2, home.getDevicesByType(SmartDevice.class).size());
+        assertEquals(2, home.getDeviceCount());
+
+        assertTrue(home.removeDevice(lamp));
+        assertThrows(DeviceNotFoundException.class, () -> home.getDeviceByName("Lamp"));
+        assertTrue(home.getDevicesByType(SmartLight.class).isEmpty());
+
+        living.setName("Lounge");
+        assertNull(home.getRoom("Living"));
+        assertSame(living, home.getRoom("lounge"));
+    }
+
+    @Test
+    void powerTotalsTrackDeviceChanges() {
+        Home home = new Home("Power", "Addr");
+        Room living = new Room("Living", "Floor", 10);
+        SmartPlug plug = new SmartPlug("Plug", living.getName());
+        plug.connectDevice("Heater", 800.0);
+        living.addDevice(plug);
+        home.addRoom(living);
+        SmartLight lamp = new SmartLight("Lamp", living.getName());
+        Thermostat thermo = new Thermostat("Nest", living.getName(), 15.0);
+        SecurityCamera cam = new SecurityCamera("Cam", living.getName());
+        living.addDevice(lamp);
+        living.addDevice(thermo);
+        living.addDevice(cam);
+
+        plug.turnOn();
+        lamp.turnOn();
+        lamp.setBrightness(33);
+        thermo.turnOn();
+        cam.turnOn();
+        cam.detectMotion();
+        cam.toggleNightVision();
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+        assertEquals(living.recomputePowerConsumption(), living.getTotalPowerConsumption(), 1e-6);
+
+        thermo.updateTemperature(15.0);
+        cam.setConnected(false);
+        plug.disconnectDevice();
+        home.removeDevice(lamp);
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+
+        home.turnOffAllDevices();
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+    }
+
+    @Test
+    void switchingPublishesOneConsistentChange() {
+        Home home = new Home("Switch", "Addr");
+        Room room = new Room("Living", "Floor", 10);
+        home.addRoom(room);
+        Thermostat thermo = new Thermostat("Nest", room.getName(), 18.0);
+        SmartBlinds blinds = new SmartBlinds("Blinds", room.getName());
+        DoorLock door = new DoorLock("Front", room.getName());
+        room.addDevice(thermo);
+        room.addDevice(blinds);
+        room.addDevice(door);
+        door.unlock("1234");
+        List<String> seen = new ArrayList<>();
+        home.addStateChangeListener(new StateChangeListener() {
+            @Override public void onDeviceChange(Room r, SmartDevice d) {
+                if (d == thermo) seen.add(thermo.isOn() + " " + thermo.getMode());
+                else if (d == blinds) seen.add(blinds.isOn() + " " + blinds.getPosition());
+                else if (d == door) seen.add(door.isOn() + " " + door.isLocked());
+            }
+        });
+
+        thermo.turnOn();
+        blinds.turnOn();
+        door.turnOn();
+        thermo.turnOff();
+        blinds.turnOff();
+        assertEquals(List.of("true AUTO", "true 100", "true true", "false OFF", "false 0"), seen);
+    }
+
+    @Test
+    void powerTotalsSurviveMovesDuringStateChanges() throws Exception {
+        Home home = new Home("Moves", "Addr");
+        Room a = new Room("A", "Floor", 10);
+        Room b = new Room("B", "Floor", 10);
+        home.addRoom(a);
+        home.addRoom(b);
+        SmartLight[] lights = new SmartLight[8];
+        for (int i = 0; i < lights.length; i++) a.addDevice(lights[i] = new SmartLight("L" + i, a.getName()));
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            for (int t = 0; t < 2; t++) {
+                pool.submit(() -> {
+                    for (int n = 0; !stop.get(); n++) lights[n % lights.length].toggle();
+                });
+            }
+            pool.submit(() -> {
+                for (int n = 0; !stop.get(); n++) {
+                    SmartLight light = lights[n % lights.length];
+                    Room from = a.removeDevice(light) ? a : b;
+                    if (from == b && !b.removeDevice(light)) continue;
+                    (from == a ? b : a).addDevice(light);
+                }
+            });
+            TimeUnit.MILLISECONDS.sleep(300);
+        } finally {
+            stop.set(true);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(a.recomputePowerConsumption(), a.getTotalPowerConsumption(), 1e-6);
+        assertEquals(b.recomputePowerConsumption(), b.getTotalPowerConsumption(), 1e-6);
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+    }
+
+    @Test
+    void survivesAutomationWebAndDashboardInParallel() throws Exception {
+        Home home = new Home("Stress", "Addr");
+        for (int r = 0; r < 4; r++) {
+            Room room = new Room("Room" + r, "Floor", 10);
+            home.addRoom(room);
+            room.addSensor(new LightSensor("Sensor" + r, room.getName()));
+            for (int d = 0; d < 10; d++) room.addDevice(new SmartLight("Light" + r + "-" + d, room.getName()));
+        }
+        AutomationEngine engine = new AutomationEngine(home);
+        for (int r = 0; r < 4; r++) {
+            engine.addRule(new Rule("Rule" + r, new TimeAfterTrigger(LocalTime.MIN))
+                .addCondition(new DarkCondition("Room" + r))
+                .addAction(new TurnOnRoomLightsAction("Room" + r, 50)));
+        }
+
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        int iterations = 300;
+
+        // Automation thread: rule ticks plus sensor sampling
+        pool.submit(guard(failures, start, () -> {
+            for (int i = 0; i < iterations; i++) {
+                engine.tick(i);
+                home.getRooms().forEach(room -> room.getSensors().forEach(s -> s.takeMeasurement()));
+            }
+        }));
+        // Web request threads: lookups, toggles and status reads
+        for (int t = 0; t < 3; t++) {
+            int seed = t;
+            pool.submit(guard(failures, start, () -> {
+                for (int i = 0; i < iterations; i++) {
+                    home.getDeviceByName("Light" + (i % 4) + "-" + ((i + seed) % 10)).toggle();
+                    home.getAllDevices().size();
+                    home.getTotalPowerConsumption();
+                    home.getTotalActiveDevices();
+                }
+            }));
+        }
+        // Dashboard thread: add/remove devices and rules while refreshing
+        pool.submit(guard(failures, start, () -> {
+            for (int i = 0; i < iterations; i++) {
+                Room room = home.getRoom("Room" + (i % 4));
+                SmartLight temp = new SmartLight("Temp" + i, room.getName());
+                room.addDevice(temp);
+                home.getDevicesByType(SmartLight.class).forEach(SmartDevice::getStatus);
+                assertTrue(home.removeDevice(temp));
+                for (Room r : home.getRooms()) r.getStatusSummary();
+            }
+        }));
+        pool.submit(guard(failures, start, () -> {
+            for (int i = 0; i < iterations; i++) {
+                Rule rule = new Rule("Temp" + i, new TimeAfterTrigger(LocalTime.MIN));
+                engine.addRule(rule);
+                engine.removeRule(rule);
+            }
+        }));
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty(), () -> "Concurrent access failed: " + failures.peek());
+        assertEquals(40, home.getDeviceCount());
+        assertEquals(40, home.getDevicesByType(SmartLight.class).size());
+        List<SmartDevice> all = home.getAllDevices();
+        assertEquals(40, all.size());
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+    }
+
+    private static Runnable guard(ConcurrentLinkedQueue<Throwable> failures, CountDownLatch start, Runnable body) {
+        return () -> {
+            try {
+                start.await();
+                body.run();
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        };
+    }
+
+    @Test
+    void eventLogKeepsOrderAndGatesByLevel() {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        EventLog.Level previous = EventLog.getLevel();
+        EventLog.setOutput(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            Room r = new Room("Den", "Floor", 10);
+            SmartLight lamp = new SmartLight("Den Lamp", r.getName());
+            r.addDevice(lamp);
+            lamp.turnOn();
+            EventLog.print("report line");
+            EventLog.flush();
+            String text = captured.toString(StandardCharsets.UTF_8);
+            assertTrue(text.indexOf("Added Den Lamp to Den") < text.indexOf("Den Lamp turned ON"), text);
+            assertTrue(text.indexOf("Den Lamp turned ON") < text.indexOf("report line"), text);
+
+            captured.reset();
+            EventLog.setLevel(EventLog.Level.WARN);
+            AtomicBoolean built = new AtomicBoolean();
+            EventLog.info(() -> {
+                built.set(true);
+                return "gated";
+            });
+            lamp.turnOff();
+            EventLog.warn("kept");
+            EventLog.flush();
+            assertFalse(built.get(), "messages below the level must not be built");
+            assertEquals("kept\n", captured.toString(StandardCharsets.UTF_8));
+        } finally {
+            EventLog.setLevel(previous);
+            EventLog.setOutput(System.out);
+        }
+    }
+
+    @Test
+    void generatorIsSeededAndLoadRunsAtItsRates() {
+        HomeGenerator generator = new HomeGenerator(7).rooms(20).devicesPerRoom(15).sensorsPerRoom(2.5);
+        Home a = generator.generate();
+        Home b = generator.generate();
+        assertEquals(20, a.getRooms().size());
+        assertEquals(300, a.getDeviceCount());
+        List<SmartDevice> da = a.getAllDevices();
+        List<SmartDevice> db = b.getAllDevices();
+        for (int i = 0; i < da.size(); i++) {
+            assertEquals(da.get(i).getName(), db.get(i).getName());
+            assertEquals(da.get(i).getType(), db.get(i).getType());
+            assertEquals(da.get(i).isOn(), db.get(i).isOn());
+        }
+        int sensors = a.getRooms().stream().mapToInt(r -> r.getSensors().size()).sum();
+        assertTrue(sensors >= 40 && sensors <= 60, "sensors " + sensors);
+        Home lights = new HomeGenerator(7).rooms(2).devicesPerRoom(5).clearMix().mix("Smart Light", 1).generate();
+        assertTrue(lights.getAllDevices().stream().allMatch(d -> d instanceof SmartLight));
+
+        EventLog.Level level = EventLog.getLevel();
+        EventLog.setLevel(EventLog.Level.ERROR); // motion events log warnings
+        try {
+            LoadSimulator load = new LoadSimulator(a, 1).toggles(100).motion(10).samples(20.5);
+            load.advance(0.5);
+            load.advance(0.5);
+            assertEquals(100, load.getToggles());
+            assertEquals(10, load.getMotionEvents());
+            assertEquals(20, load.getSamples()); // the half operation carries over
+            load.advance(1);
+            assertEquals(41, load.getSamples());
+            assertEquals(0, load.getErrors());
+        } finally {
+            EventLog.setLevel(level);
+        }
+    }
+}
@@ -1,16 +1,50 @@
 package com.smarthome;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import com.smarthome.model.Home;
 import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.sensors.MotionSensor;
+import com.smarthome.model.sensors.TemperatureSensor;
+import com.smarthome.model.devices.DoorLock;
+import com.smarthome.model.devices.SecurityCamera;
+import com.smarthome.model.devices.SmartPlug;
 import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.devices.SmartTV;
+import com.smarthome.model.devices.Thermostat;
+import com.smarthome.util.BinarySnapshot;
 import com.smarthome.util.DataPersistence;
+import com.smarthome.util.DeviceCodec;
+import com.smarthome.util.DeviceFactory;
+import com.smarthome.util.EventJournal;
+import com.smarthome.util.JsonAdapters;
+import com.smarthome.util.SnapshotStore;
+import com.smarthome.util.WriteBehindPersister;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class PersistenceTests {
+    @TempDir
+    Path dir;
+
     @Test
     void saveAndLoadHome() throws Exception {
         Home home = new Home("PersistHome", "Addr");
@@ -20,11 +54,497 @@ public class PersistenceTests {
         r.addDevice(light);
         light.setBrightness(40);
         light.turnOn();
-        String path = System.getProperty("java.io.tmpdir") + File.separator + "home.json";
+        String path = dir.resolve("home.json").toString();
         DataPersistence.saveHome(home, path);
         Home loaded = DataPersistence.loadHome(path);
         assertEquals("PersistHome", loaded.getName());
         assertEquals(1, loaded.getRooms().size());
         assertNotNull(loaded.getRoom("Living"));
+        SmartLight lamp = (SmartLight) loaded.getDeviceByName("Lamp");
+        assertTrue(lamp.isOn());
+        assertEquals(40, lamp.getBrightness());
+    }
+
+    @Test
+    void loadsOriginalFlatFormat() throws Exception {
+        // As written by the original saveHome: flat per-type keys, no "state" object
+        String json = "{\"name\": \"Legacy\", \"address\": \"Addr\", \"rooms\": [{"
+            + "\"name\": \"Living\", \"floor\": \"Ground\", \"area\": 20.0, \"devices\": ["
+            + "{\"type\": \"Thermostat\", \"name\": \"Nest\", \"room\": \"Living\", \"on\": true,"
+            + " \"currentTemp\": 19.5, \"targetTemp\": 23.0},"
+            + "{\"type\": \"Thermostat\", \"name\": \"Spare\", \"room\": \"Living\", \"on\": false,"
+            + " \"currentTemp\": 18.0, \"targetTemp\": 22.0},"
+            + "{\"type\": \"Smart Light\", \"name\": \"Lamp\", \"room\": \"Living\", \"on\": true, \"brightness\": 40},"
+            + "{\"type\": \"Door Lock\", \"name\": \"Front\", \"room\": \"Living\", \"on\": false, \"locked\": false}],"
+            + "\"sensors\": [{\"type\": \"MotionSensor\", \"name\": \"Motion\"}]}]}";
+        Path file = dir.resolve("home.json");
+        Files.writeString(file, json);
+
+        Home home = DataPersistence.loadHome(file.toString());
+        Thermostat nest = (Thermostat) home.getDeviceByName("Nest");
+        assertTrue(nest.isOn());
+        assertEquals(Thermostat.ThermostatMode.AUTO, nest.getMode());
+        assertEquals(19.5, nest.getCurrentTemperature(), 1e-9);
+        assertEquals(23.0, nest.getTargetTemperature(), 1e-9);
+        Thermostat spare = (Thermostat) home.getDeviceByName("Spare");
+        assertFalse(spare.isOn());
+        assertEquals(Thermostat.ThermostatMode.OFF, spare.getMode());
+        SmartLight lamp = (SmartLight) home.getDeviceByName("Lamp");
+        assertTrue(lamp.isOn());
+        assertEquals(40, lamp.getBrightness());
+        assertFalse(((DoorLock) home.getDeviceByName("Front")).isLocked());
+        assertEquals(1, home.getRoom("Living").getSensors().size());
+        assertEquals(home.recomputePowerConsumption(), home.getTotalPowerConsumption(), 1e-6);
+
+        JsonObject flat = new Gson().fromJson("{\"type\": \"Thermostat\", \"name\": \"Nest\", \"room\": \"Living\","
+            + " \"on\": true, \"targetTemp\": 23.0}", JsonObject.class);
+        assertEquals(Thermostat.ThermostatMode.AUTO, ((Thermostat) DeviceFactory.fromJson(flat)).getMode());
+    }
+
+    @Test
+    void journalReplaysChangesOverCheckpoint() throws Exception {
+        Home home = new Home("JournalHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight light = new SmartLight("Lamp", r.getName());
+        Thermostat thermo = new Thermostat("Nest", r.getName(), 20.0);
+        DoorLock door = new DoorLock("Front", r.getName());
+        SmartPlug plug = new SmartPlug("Plug", r.getName());
+        r.addDevice(light);
+        r.addDevice(thermo);
+        r.addDevice(door);
+        r.addDevice(plug);
+
+        String snapshot = dir.resolve("home.json").toString();
+        String log = dir.resolve("journal.bin").toString();
+        // Tiny segments and no flusher: exercises remapping and count-based syncs
+        EventJournal journal = new EventJournal(log, 256, 4, 0);
+        journal.attach(home);
+        journal.checkpoint(snapshot);
+        light.turnOn();
+        light.setColor("#FF0000");
+        for (int b = 1; b <= 20; b++) light.setBrightness(b);
+        thermo.setTargetTemperature(24.5);
+        door.unlock("1234");
+        door.setAutoLock(true, 45);
+        plug.connectDevice("Kettle", 2000.0);
+        plug.turnOn();
+        plug.updateEnergyUsage(0.5);
+        plug.setScheduleEnabled(true);
+        assertTrue(journal.size() > 256);
+        journal.close(); // simulate a stop without a final checkpoint
+
+        Home recovered = EventJournal.recover(snapshot, log);
+        SmartLight lamp = (SmartLight) recovered.getDeviceByName("Lamp");
+        assertTrue(lamp.isOn());
+        assertEquals(20, lamp.getBrightness());
+        assertEquals("#FF0000", lamp.getColor());
+        assertEquals(24.5, ((Thermostat) recovered.getDeviceByName("Nest")).getTargetTemperature(), 1e-9);
+        DoorLock front = (DoorLock) recovered.getDeviceByName("Front");
+        assertFalse(front.isLocked());
+        assertTrue(front.isAutoLockEnabled());
+        assertEquals(45, front.getAutoLockDelay());
+        SmartPlug kettle = (SmartPlug) recovered.getDeviceByName("Plug");
+        assertEquals(1.0, kettle.getEnergyUsedToday(), 1e-9);
+        assertTrue(kettle.isScheduleEnabled());
+        assertEquals(recovered.recomputePowerConsumption(), recovered.getTotalPowerConsumption(), 1e-6);
+    }
+
+    @Test
+    void journalReplayResolvesDevicesByRoom() throws Exception {
+        Home home = new Home("SameNames", "Addr");
+        Room living = new Room("Living", "Floor", 20);
+        Room bedroom = new Room("Bedroom", "Floor", 15);
+        home.addRoom(living);
+        home.addRoom(bedroom);
+        living.addDevice(new SmartLight("Lamp", living.getName()));
+        SmartLight bedside = new SmartLight("Lamp", bedroom.getName());
+        bedroom.addDevice(bedside);
+
+        String snapshot = dir.resolve("home.json").toString();
+        String log = dir.resolve("journal.bin").toString();
+        EventJournal journal = new EventJournal(log, 256, 4, 0);
+        journal.attach(home);
+        journal.checkpoint(snapshot);
+        bedside.turnOn();
+        bedside.setBrightness(30);
+        journal.close();
+
+        Home recovered = EventJournal.recover(snapshot, log);
+        SmartLight first = (SmartLight) recovered.getRoom("Living").getDevice("Lamp");
+        SmartLight second = (SmartLight) recovered.getRoom("Bedroom").getDevice("Lamp");
+        assertFalse(first.isOn());
+        assertTrue(second.isOn());
+        assertEquals(30, second.getBrightness());
+    }
+
+    @Test
+    void journalKeepsLatestStateUnderConcurrentChanges() throws Exception {
+        Home home = new Home("Racing", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight[] lights = new SmartLight[2];
+        for (int i = 0; i < lights.length; i++) r.addDevice(lights[i] = new SmartLight("Lamp" + i, r.getName()));
+
+        String snapshot = dir.resolve("home.json").toString();
+        String log = dir.resolve("journal.bin").toString();
+        EventJournal journal = new EventJournal(log, 4096, 64, 0);
+        journal.attach(home);
+        journal.checkpoint(snapshot);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                writers.add(pool.submit(() -> {
+                    for (int n = 0; n < 5_000; n++) {
+                        SmartLight light = lights[(n + seed) % lights.length];
+                        if ((n + seed) % 3 == 0) light.toggle();
+                        else light.setBrightness(1 + (n * 7 + seed) % 100);
+                    }
+                }));
+            }
+            for (Future<?> w : writers) w.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdown();
+        }
+        journal.close();
+
+        Home recovered = EventJournal.recover(snapshot, log);
+        for (SmartLight light : lights) {
+            assertEquals(DeviceFactory.encode(light), DeviceFactory.encode(recovered.getDeviceByName(light.getName())),
+                light.getName());
+        }
+    }
+
+    @Test
+    void binarySnapshotRoundTripsWithJson() throws Exception {
+        Home home = new Home("BinHome", "Addr");
+        home.setElectricityRate(0.31);
+        Room r = new Room("Hall", "Ground", 12.5);
+        home.addRoom(r);
+        r.setCurrentTemperature(19.25);
+        SmartPlug plug = new SmartPlug("Plug", r.getName());
+        plug.connectDevice("Kettle", 2000.0);
+        SecurityCamera cam = new SecurityCamera("Cam", r.getName());
+        cam.turnOn();
+        cam.toggleNightVision();
+        r.addDevice(plug);
+        r.addDevice(cam);
+        r.addDevice(new SmartLight("Lamp", r.getName()));
+        MotionSensor motion = new MotionSensor("Motion", r.getName());
+        motion.detectMotion();
+        TemperatureSensor temp = new TemperatureSensor("Temp", r.getName());
+        temp.setTemperature(-3.5);
+        r.addSensor(motion);
+        r.addSensor(temp);
+
+        String json = dir.resolve("a.json").toString();
+        String bin = dir.resolve("b.bin").toString();
+        String again = dir.resolve("c.json").toString();
+        DataPersistence.saveHome(home, json);
+        BinarySnapshot.save(DataPersistence.loadHome(json), bin);
+        assertTrue(BinarySnapshot.isSnapshot(bin));
+        DataPersistence.saveHome(DataPersistence.loadHome(bin), again); // loadHome detects the format
+        assertEquals(Files.readString(Path.of(json)), Files.readString(Path.of(again)));
+        assertTrue(Files.size(Path.of(bin)) < Files.size(Path.of(json)));
+    }
+
+    @Test
+    void binarySnapshotKeepsArmedFlag() throws Exception {
+        for (boolean armed : new boolean[] {false, true}) {
+            Home home = new Home("ArmHome", "Addr");
+            home.addRoom(new Room("Hall", "Ground", 12.5));
+            home.setSecuritySystemArmed(armed);
+            String bin = dir.resolve("armed-" + armed + ".bin").toString();
+            BinarySnapshot.save(home, bin);
+            assertEquals(armed, BinarySnapshot.load(bin, false).isSecuritySystemArmed());
+            assertEquals(armed, BinarySnapshot.load(bin, true).isSecuritySystemArmed());
+        }
+    }
+
+    @Test
+    void snapshotStoreWritesOnlyChangesAndReplaysThem() throws Exception {
+        Home home = new Home("DeltaHome", "Addr");
+        for (int r = 0; r < 20; r++) {
+            Room room = new Room("Room" + r, "Floor", 10);
+            home.addRoom(room);
+            for (int d = 0; d < 50; d++) room.addDevice(new SmartLight("Light" + r + "-" + d, room.getName()));
+            room.addSensor(new TemperatureSensor("Temp" + r, room.getName()));
+        }
+        SnapshotStore store = new SnapshotStore(home, dir.toString(), 3);
+        assertTrue(store.save()); // first save is a base
+        assertFalse(store.save()); // nothing changed
+
+        SmartLight light = (SmartLight) home.getDeviceByName("Light7-3");
+        light.turnOn();
+        light.setBrightness(12);
+        ((TemperatureSensor) home.getRoom("Room2").getSensors().get(0)).setTemperature(30.5);
+        home.setElectricityRate(0.2);
+        assertTrue(store.save());
+        long base, delta;
+        try (var files = Files.list(dir)) {
+            List<Path> all = files.sorted().collect(Collectors.toList());
+            assertEquals(2, all.size());
+            base = Files.size(all.get(0));
+            delta = Files.size(all.get(1));
+        }
+        assertTrue(delta * 50 < base, "delta " + delta + " vs base " + base);
+
+        Home loaded = DataPersistence.loadHome(dir.toString()); // base plus deltas
+        assertEquals(12, ((SmartLight) loaded.getDeviceByName("Light7-3")).getBrightness());
+        assertTrue(loaded.getDeviceByName("Light7-3").isOn());
+        assertEquals(30.5, ((TemperatureSensor) loaded.getRoom("Room2").getSensors().get(0)).getCurrentTemperature(), 1e-9);
+        assertEquals(0.2, loaded.getElectricityRate(), 1e-9);
+
+        // Two more deltas reach maxDeltas and compact back into a single base in the background
+        light.setBrightness(13);
+        store.save();
+        light.setBrightness(14);
+        store.save();
+        long deadline = System.currentTimeMillis() + 5000;
+        long count;
+        do {
+            try (var files = Files.list(dir)) {
+                count = files.count();
+            }
+            if (count != 1) TimeUnit.MILLISECONDS.sleep(10);
+        } while (count != 1 && System.currentTimeMillis() < deadline);
+        assertEquals(1, count);
+        home.getRoom("Room0").addDevice(new SmartLight("Late", "Room0")); // structural: new base
+        store.close();
+        SnapshotStore reopened = SnapshotStore.open(dir.toString());
+        assertEquals(14, ((SmartLight) reopened.getHome().getDeviceByName("Light7-3")).getBrightness());
+        assertNotNull(reopened.getHome().getDeviceByName("Late"));
+        assertFalse(reopened.save());
+    }
+
+    @Test
+    void failedBaseWriteIsRetriedAsFullBase() throws Exception {
+        Home home = new Home("RetryHome", "Addr");
+        Room room = new Room("Hall", "Floor", 10);
+        home.addRoom(room);
+        SmartLight lamp = new SmartLight("Lamp", room.getName());
+        room.addDevice(lamp);
+        SnapshotStore store = new SnapshotStore(home, dir.toString());
+        store.save();
+
+        // A non-empty directory where the next base goes makes its atomic rename fail
+        Path blocker = dir.resolve(String.format("base-%019d.bin", 2));
+        Files.createDirectories(blocker.resolve("x"));
+        room.addDevice(new SmartLight("Late", room.getName())); // structural: written as a base
+        assertThrows(IOException.class, store::save);
+        Files.delete(blocker.resolve("x"));
+        Files.delete(blocker);
+
+        lamp.turnOn();
+        store.close();
+        Home loaded = SnapshotStore.load(dir.toString());
+        assertNotNull(loaded.getDeviceByName("Late"), "changes drained by the failed base must not be lost");
+        assertTrue(loaded.getDeviceByName("Lamp").isOn());
+    }
+
+    @Test
+    void writeBehindCoalescesSavesAndReplacesAtomically() throws Exception {
+        Home home = new Home("AsyncHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight light = new SmartLight("Lamp", r.getName());
+        r.addDevice(light);
+        Path target = dir.resolve("home.json");
+
+        WriteBehindPersister persister = new WriteBehindPersister(home, target.toString());
+        CompletableFuture<Void> last = null;
+        for (int i = 1; i <= 50; i++) {
+            light.setBrightness(i);
+            last = persister.requestSave();
+        }
+        last.get(10, TimeUnit.SECONDS);
+        persister.close();
+        assertTrue(persister.getSaveCount() >= 1 && persister.getSaveCount() < 50, "saves: " + persister.getSaveCount());
+        assertEquals(50, ((SmartLight) DataPersistence.loadHome(target.toString()).getDeviceByName("Lamp")).getBrightness());
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count()); // no temp files left behind
+        }
+    }
+
+    @Test
+    void writeBehindRebuildsImageWhenHomeChangesDuringIt() throws Exception {
+        Home home = new Home("SceneHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight first = new SmartLight("First", r.getName());
+        r.addDevice(first);
+        AtomicInteger reads = new AtomicInteger();
+        // Read after "First" is written out, and switches it on the first time, as a scene
+        // applied during the save would
+        SmartLight meddler = new SmartLight("Meddler", r.getName()) {
+            @Override public Map<String, String> getStateFields() {
+                if (reads.getAndIncrement() == 0) first.turnOn();
+                return super.getStateFields();
+            }
+        };
+        r.addDevice(meddler);
+        Path target = dir.resolve("home.json");
+
+        WriteBehindPersister persister = new WriteBehindPersister(home, target.toString());
+        persister.requestSave().get(10, TimeUnit.SECONDS);
+        persister.close();
+        assertEquals(2, reads.get());
+        assertTrue(DataPersistence.loadHome(target.toString()).getDeviceByName("First").isOn());
+    }
+
+    static class Fan extends SmartDevice {
+        int speed;
+
+        Fan(String name, String room) { super(name, "Fan", room); }
+
+        @Override public double getCurrentPowerConsumption() { return isOn() ? 5.0 * speed : 0; }
+        @Override public String getStatus() { return "speed " + speed; }
+    }
+
+    @Test
+    void pluggableCodecRoundTripsNewDeviceType() throws Exception {
+        assertEquals(SmartTV.class, DeviceFactory.codec("Smart TV").deviceClass()); // built-ins come from ServiceLoader
+        DeviceFactory.register(new DeviceCodec<Fan>() {
+            @Override public String type() { return "Fan"; }
+            @Override public Class<Fan> deviceClass() { return Fan.class; }
+            @Override public Fan create(String name, String room) { return new Fan(name, room); }
+            @Override public Map<String, String> encode(Fan fan) {
+                Map<String, String> fields = fan.getStateFields();
+                fields.put("speed", String.valueOf(fan.speed));
+                return fields;
+            }
+            @Override public boolean decode(Fan fan, String field, String value) {
+                if (!field.equals("speed")) return fan.applyStateField(field, value);
+                fan.speed = Integer.parseInt(value);
+                return true;
+            }
+        });
+        Home home = new Home("FanHome", "Addr");
+        Room r = new Room("Attic", "Top", 12);
+        home.addRoom(r);
+        Fan fan = new Fan("Ceiling", r.getName());
+        fan.speed = 3;
+        r.addDevice(fan);
+        fan.turnOn();
+        for (Path path : List.of(dir.resolve("home.json"), dir.resolve("home.bin"))) {
+            if (path.toString().endsWith(".bin")) BinarySnapshot.save(home, path.toString());
+            else DataPersistence.saveHome(home, path.toString());
+            SmartDevice loaded = DataPersistence.loadHome(path.toString()).getDeviceByName("Ceiling");
+            assertTrue(loaded instanceof Fan, path.toString());
+            assertEquals(3, ((Fan) loaded).speed);
+            assertTrue(loaded.isOn());
+        }
+    }
+
+    @Test
+    void lazyBinaryLoadDecodesRoomsOnFirstUse() throws Exception {
+        Home home = new Home("LazyHome", "Addr");
+        for (String name : List.of("Kitchen", "Hall", "Garage")) {
+            Room r = new Room(name, "Ground", 10);
+            home.addRoom(r);
+            SmartLight light = new SmartLight(name + " Light", name);
+            r.addDevice(light);
+            light.setBrightness(name.length() * 10);
+            if (name.equals("Kitchen")) light.turnOn();
+            r.addSensor(new MotionSensor(name + " Motion", name));
+        }
+        Path file = dir.resolve("home.bin");
+        BinarySnapshot.save(home, file.toString());
+
+        Home lazy = DataPersistence.loadHome(file.toString(), true);
+        lazy.clearDirty();
+        lazy.drainDirtyRooms().forEach(Room::clearStructureDirty);
+        assertTrue(lazy.getRooms().stream().noneMatch(Room::isLoaded));
+
+        // Status totals come from the room index
+        assertEquals(3, lazy.getDeviceCount());
+        assertEquals(1, lazy.getTotalActiveDevices());
+        assertTrue(lazy.getTotalPowerConsumption() > 0);
+        assertEquals(home.getTotalPowerConsumption(), lazy.getTotalPowerConsumption(), 1e-6);
+        assertTrue(lazy.getRooms().stream().noneMatch(Room::isLoaded));
+
+        assertEquals(1, lazy.getRoom("Hall").getSensors().size());
+        assertTrue(lazy.getRoom("Hall").isLoaded());
+        assertFalse(lazy.getRoom("Garage").isLoaded());
+        assertEquals(60, ((SmartLight) lazy.getDeviceByName("Garage Light")).getBrightness());
+        assertTrue(lazy.getRoom("Garage").isLoaded());
+
+        assertEquals(1, lazy.getDevicesByType(SmartLight.class).stream().filter(d -> d.getName().equals("Kitchen Light")).count());
+        assertTrue(lazy.getRoom("Kitchen").isLoaded());
+        assertEquals(3, lazy.getDeviceCount());
+        assertEquals(home.getTotalPowerConsumption(), lazy.getTotalPowerConsumption(), 1e-6);
+        assertEquals(lazy.recomputePowerConsumption(), lazy.getTotalPowerConsumption(), 1e-6);
+        assertTrue(lazy.drainDirtyRooms().isEmpty(), "loading must not mark rooms unsaved");
+    }
+
+    @Test
+    void journalRecoveryDecodesOnlyTouchedRooms() throws Exception {
+        Home home = new Home("LazyJournal", "Addr");
+        for (String name : List.of("Kitchen", "Hall", "Garage")) {
+            Room r = new Room(name, "Ground", 10);
+            home.addRoom(r);
+            r.addDevice(new SmartLight(name + " Light", name));
+        }
+        String snapshot = dir.resolve("home.bin").toString();
+        String log = dir.resolve("journal.bin").toString();
+        EventJournal journal = new EventJournal(log, 4096, 4, 0);
+        journal.attach(home);
+        journal.checkpoint(snapshot);
+        home.getRoom("Hall").getDevice("Hall Light").turnOn();
+        journal.close();
+
+        Home recovered = EventJournal.recover(snapshot, log);
+        assertTrue(recovered.getRoom("Hall").isLoaded());
+        assertFalse(recovered.getRoom("Kitchen").isLoaded());
+        assertFalse(recovered.getRoom("Garage").isLoaded());
+        assertEquals(1, recovered.getTotalActiveDevices());
+        assertEquals(home.getTotalPowerConsumption(), recovered.getTotalPowerConsumption(), 1e-6);
+
+        // Journaling resumes on the recovered home without loading the other rooms
+        EventJournal resumed = new EventJournal(log, 4096, 4, 0);
+        resumed.attach(recovered);
+        assertFalse(recovered.getRoom("Kitchen").isLoaded());
+        recovered.getDeviceByName("Garage Light").turnOn();
+        resumed.close();
+        Home again = EventJournal.recover(snapshot, log);
+        assertTrue(again.getRoom("Garage").getDevice("Garage Light").isOn());
+        assertTrue(again.getRoom("Hall").getDevice("Hall Light").isOn());
+    }
+
+    @Test
+    void jsonAdaptersWriteExplicitSchemaAndReadItBack() {
+        Room r = new Room("Entry", "Ground", 12);
+        SmartLight light = new SmartLight("Porch", r.getName());
+        DoorLock lock = new DoorLock("Front Door", r.getName());
+        MotionSensor motion = new MotionSensor("Entry Motion", r.getName());
+        r.addDevice(light);
+        r.addDevice(lock);
+        r.addSensor(motion);
+        light.turnOn();
+        light.setBrightness(35);
+        lock.lock();
+        motion.setSensitivityLevel(8);
+        Gson gson = JsonAdapters.register(new GsonBuilder()).create();
+
+        JsonObject json = gson.toJsonTree(r).getAsJsonObject();
+        JsonObject porch = json.getAsJsonArray("devices").get(0).getAsJsonObject();
+        assertEquals(35, porch.get("brightness").getAsJsonPrimitive().getAsInt());
+        assertTrue(porch.get("isOn").getAsJsonPrimitive().isBoolean());
+        assertEquals(light.getStatus(), porch.get("status").getAsString());
+        assertFalse(porch.has("room"));
+        JsonObject door = json.getAsJsonArray("devices").get(1).getAsJsonObject();
+        assertFalse(door.has("lockCode"), "secrets are not part of the schema");
+        assertTrue(door.get("locked").getAsBoolean());
+        JsonObject sensor = json.getAsJsonArray("sensors").get(0).getAsJsonObject();
+        assertEquals("MotionSensor", sensor.get("type").getAsString());
+        assertFalse(sensor.has("random"));
+
+        Room copy = gson.fromJson(gson.toJson(r), Room.class);
+        assertEquals(35, ((SmartLight) copy.getDevice("Porch")).getBrightness());
+        assertTrue(copy.getDevice("Porch").isOn());
+        assertTrue(((DoorLock) copy.getDevice("Front Door")).isLocked());
+        assertEquals(8, ((MotionSensor) copy.getSensors().get(0)).getSensitivityLevel());
     }
 }
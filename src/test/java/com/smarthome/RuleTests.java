@@ -5,10 +5,27 @@ import com.smarthome.automation.Context;
 import com.smarthome.automation.Trigger;
 import com.smarthome.automation.Condition;
 import com.smarthome.automation.Action;
+import com.smarthome.automation.Dependency;
+import com.smarthome.automation.ParallelRuleExecutor;
+import com.smarthome.automation.RuleNetwork;
+import com.smarthome.controller.AutomationEngine;
 import com.smarthome.model.Home;
 import com.smarthome.model.Room;
 import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.sensors.MotionSensor;
+import com.smarthome.util.Metrics;
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RuleTests {
@@ -30,4 +47,249 @@ public class RuleTests {
         assertTrue(ran[0]);
         assertTrue(light.isOn());
     }
+
+    @Test
+    void eventModeEvaluatesOnlyDependentRules() throws Exception {
+        Home home = new Home("Test", "Addr");
+        Room living = new Room("Living", "Floor", 10);
+        Room kitchen = new Room("Kitchen", "Floor", 10);
+        home.addRoom(living);
+        home.addRoom(kitchen);
+        MotionSensor motion = new MotionSensor("Motion", living.getName());
+        living.addSensor(motion);
+        SmartLight lamp = new SmartLight("Lamp", living.getName());
+        living.addDevice(lamp);
+        SmartLight kitchenLight = new SmartLight("Kitchen Light", kitchen.getName());
+        kitchen.addDevice(kitchenLight);
+
+        AtomicInteger evaluations = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(1);
+        Rule rule = new Rule("Motion", ctx -> { evaluations.incrementAndGet(); return motion.isMotionDetected(); })
+            .dependsOn(Dependency.sensorIn("Living", MotionSensor.class))
+            .addAction(ctx -> { lamp.turnOn(); fired.countDown(); });
+        AutomationEngine engine = new AutomationEngine(home);
+        engine.addRule(rule);
+        engine.startEventMode();
+        try {
+            kitchenLight.turnOn();
+            lamp.setBrightness(30);
+            motion.detectMotion();
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(lamp.isOn());
+            engine.tick(0); // event-driven rules are skipped by the periodic tick
+            Thread.sleep(50);
+            assertEquals(1, evaluations.get());
+        } finally {
+            engine.stopEventMode();
+        }
+    }
+
+    @Test
+    void compiledNetworkSharesConditionsAndMatchesLinearLoop() {
+        Home home = new Home("Test", "Addr");
+        AtomicInteger checks = new AtomicInteger();
+        boolean[] dark = {false};
+        List<Rule> rules = new ArrayList<>();
+        List<String> linearFired = new ArrayList<>();
+        List<String> compiledFired = new ArrayList<>();
+        List<String> sink = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String name = "R" + i;
+            rules.add(new Rule(name, new SharedCheck("always", () -> true, checks))
+                .addCondition(new SharedCheck("dark", () -> dark[0], checks))
+                .addCondition(new SharedCheck("even", () -> true, checks))
+                .addAction(ctx -> sink.add(name)));
+        }
+        rules.get(1).setEnabled(false);
+        RuleNetwork network = RuleNetwork.compile(rules);
+        assertEquals(3, network.getNodeCount());
+
+        for (boolean d : new boolean[] {false, true, true, false, true}) {
+            dark[0] = d;
+            Context ctx = new Context(home, 0);
+            sink.clear();
+            rules.forEach(r -> r.evaluateAndExecute(ctx));
+            linearFired.addAll(sink);
+            sink.clear();
+            checks.set(0);
+            network.tick(ctx);
+            assertEquals(3, checks.get());
+            compiledFired.addAll(sink);
+        }
+        assertEquals(linearFired, compiledFired);
+    }
+
+    @Test
+    void compiledAndParallelTicksSeeStateFromTheStartOfTheTick() {
+        for (String mode : new String[] {"linear", "compiled", "parallel", "compiled+parallel"}) {
+            boolean[] armed = {false};
+            AtomicInteger follows = new AtomicInteger();
+            AutomationEngine engine = new AutomationEngine(new Home("Test", "Addr"));
+            engine.addRule(new Rule("Arm", ctx -> true).addAction(ctx -> armed[0] = true));
+            engine.addRule(new Rule("Follow", ctx -> true).addCondition(ctx -> armed[0])
+                .addAction(ctx -> follows.incrementAndGet()));
+            engine.setCompiled(mode.startsWith("compiled"));
+            engine.setParallel(mode.endsWith("parallel"));
+
+            engine.tick(0);
+            // Only the linear loop evaluates "Follow" after "Arm" has run in the same tick
+            assertEquals(mode.equals("linear") ? 1 : 0, follows.get(), mode);
+            engine.tick(1);
+            assertEquals(mode.equals("linear") ? 2 : 1, follows.get(), mode);
+        }
+    }
+
+    @Test
+    void parallelExecutorSerializesActionsOnTheSameRoom() {
+        Home home = new Home("Test", "Addr");
+        Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        List<String> overlaps = Collections.synchronizedList(new ArrayList<>());
+        List<String> room0Order = Collections.synchronizedList(new ArrayList<>());
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String room = "Room" + (i % 4);
+            String name = "R" + i;
+            rules.add(new Rule(name, ctx -> true).addAction(new Action() {
+                @Override public void execute(Context ctx) {
+                    AtomicInteger n = inFlight.computeIfAbsent(room, k -> new AtomicInteger());
+                    if (n.incrementAndGet() > 1) overlaps.add(room);
+                    if (room.equals("Room0")) room0Order.add(name);
+                    try { Thread.sleep(1); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                    n.decrementAndGet();
+                }
+                @Override public Collection<Dependency> writes() { return List.of(Dependency.room(room)); }
+            }));
+        }
+        rules.get(5).setEnabled(false);
+
+        int fired = new ParallelRuleExecutor().run(rules, new Context(home, 0));
+        assertEquals(39, fired);
+        assertTrue(overlaps.isEmpty(), "actions on the same room overlapped: " + overlaps);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i += 4) expected.add("R" + i);
+        assertEquals(expected, room0Order);
+    }
+
+    @Test
+    void parallelExecutorKeepsUndeclaredRulesInOrder() {
+        Home home = new Home("Test", "Addr");
+        Room living = new Room("Living", "Floor", 20);
+        Room hall = new Room("Hall", "Floor", 10);
+        home.addRoom(living);
+        home.addRoom(hall);
+        SmartLight lamp = new SmartLight("Lamp", living.getName());
+        SmartLight other = new SmartLight("Other", hall.getName());
+        living.addDevice(lamp);
+        hall.addDevice(other);
+        Rule allOff = new Rule("All off", ctx -> true)
+            .addAction(ctx -> ctx.getHome().turnOffAllDevices()); // declares no writes
+        Rule lampOn = new Rule("Lamp on", ctx -> true).addAction(new Action() {
+            @Override public void execute(Context ctx) { lamp.turnOn(); }
+            @Override public Collection<Dependency> writes() { return List.of(Dependency.device("Lamp")); }
+        });
+        Rule otherOn = new Rule("Other on", ctx -> true).addAction(new Action() {
+            @Override public void execute(Context ctx) { other.turnOn(); }
+            @Override public Collection<Dependency> writes() { return List.of(Dependency.room("Hall")); }
+        });
+        ParallelRuleExecutor executor = new ParallelRuleExecutor();
+
+        // The later lane rule wins, as it would serially
+        assertEquals(2, executor.run(List.of(allOff, lampOn), new Context(home, 0)));
+        assertTrue(lamp.isOn());
+
+        // A lane rule before the barrier finishes before it, whatever its room
+        assertEquals(3, executor.run(List.of(lampOn, otherOn, allOff), new Context(home, 0)));
+        assertFalse(lamp.isOn());
+        assertFalse(other.isOn());
+    }
+
+    @Test
+    void removedRulesReleaseTheirFireCounters() {
+        AutomationEngine engine = new AutomationEngine(new Home("Test", "Addr"));
+        Rule first = new Rule("Short-lived", ctx -> true).addAction(ctx -> {});
+        Rule twin = new Rule("Short-lived", ctx -> true).addAction(ctx -> {});
+        Rule unused = new Rule("Never added", ctx -> true).addAction(ctx -> {});
+        unused.evaluateAndExecute(new Context(new Home("Other", "Addr"), 0));
+        assertEquals(1, unused.getFireCount());
+        assertFalse(Metrics.writePrometheus().contains("rule=\"Never added\""), "only engine rules are exported");
+
+        engine.addRule(first);
+        engine.addRule(twin);
+        engine.tick(0);
+        assertEquals(1, first.getFireCount());
+        assertEquals(1, twin.getFireCount());
+        String both = "smarthome_rule_fires_total{rule=\"Short-lived\"} 2";
+        assertTrue(Metrics.writePrometheus().contains(both), Metrics::writePrometheus);
+
+        engine.removeRule(first); // the twin still reports under the name
+        assertTrue(Metrics.writePrometheus().contains("smarthome_rule_fires_total{rule=\"Short-lived\"} 1"),
+            Metrics::writePrometheus);
+        engine.removeRule(twin);
+        assertFalse(Metrics.writePrometheus().contains("rule=\"Short-lived\""), Metrics::writePrometheus);
+        assertFalse(Metrics.RULE_FIRES.remove("Short-lived"));
+
+        engine.addRule(twin); // re-added rules are exported again, with their count so far
+        assertTrue(Metrics.writePrometheus().contains("smarthome_rule_fires_total{rule=\"Short-lived\"} 1"),
+            Metrics::writePrometheus);
+        engine.removeRule(twin);
+    }
+
+    /** Condition/trigger that is equal to any other with the same key, counting evaluations */
+    private static final class SharedCheck implements Trigger, Condition {
+        private final String key;
+        private final BooleanSupplier value;
+        private final AtomicInteger counter;
+
+        SharedCheck(String key, BooleanSupplier value, AtomicInteger counter) {
+            this.key = key;
+            this.value = value;
+            this.counter = counter;
+        }
+
+        @Override public boolean evaluate(Context context) { counter.incrementAndGet(); return value.getAsBoolean(); }
+        @Override public boolean check(Context context) { return evaluate(context); }
+        @Override public boolean equals(Object o) { return o instanceof SharedCheck && ((SharedCheck) o).key.equals(key); }
+        @Override public int hashCode() { return key.hashCode(); }
+        @Override public String describe() { return key; }
+        @Override public Collection<Dependency> dependencies() { return List.of(); }
+    }
+
+    @Test
+    void profilerRecordsWhichConditionStopsEachRule() {
+        Home home = new Home("Test", "Addr");
+        Condition pass = ctx -> true;
+        Condition fail = ctx -> false;
+        AtomicInteger ran = new AtomicInteger();
+        Rule blocked = new Rule("Blocked", ctx -> true).addCondition(pass).addCondition(fail).addAction(ctx -> ran.incrementAndGet());
+        Rule firing = new Rule("Firing", ctx -> true).addCondition(pass).addAction(ctx -> ran.incrementAndGet());
+        Rule idle = new Rule("Idle", ctx -> false).addCondition(fail);
+        AutomationEngine engine = new AutomationEngine(home);
+        engine.addRule(blocked);
+        engine.addRule(firing);
+        engine.addRule(idle);
+
+        engine.tick(0);
+        assertEquals(0, blocked.getProfile().getEvaluations(), "nothing recorded until profiling is on");
+        engine.setProfiling(true);
+        for (boolean compiled : new boolean[] {false, true}) {
+            engine.setCompiled(compiled);
+            engine.resetProfiles();
+            for (int i = 0; i < 3; i++) engine.tick(i);
+            String mode = compiled ? "compiled" : "linear";
+            assertEquals(3, blocked.getProfile().getEvaluations(), mode);
+            assertEquals(3, blocked.getProfile().getTriggerHits(), mode);
+            assertEquals(0, blocked.getProfile().getConditionFailures(0), mode);
+            assertEquals(3, blocked.getProfile().getConditionFailures(1), mode);
+            assertEquals(0, blocked.getProfile().getActionsFired(), mode);
+            assertEquals(0, idle.getProfile().getTriggerHits(), mode);
+            assertEquals(0, idle.getProfile().getConditionFailures(0), "a trigger miss is not a condition failure");
+            assertTrue(firing.getProfile().getActionsFired() > 0, mode); // the network fires a satisfied rule on every tick
+            assertTrue(firing.getProfile().getTotalNanos() > 0, mode);
+        }
+        List<Rule> byCost = engine.getRulesByCost();
+        assertEquals(3, byCost.size());
+        for (int i = 1; i < byCost.size(); i++) {
+            assertTrue(byCost.get(i - 1).getProfile().getTotalNanos() >= byCost.get(i).getProfile().getTotalNanos());
+        }
+    }
 }
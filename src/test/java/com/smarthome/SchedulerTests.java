@@ -0,0 +1,85 @@
+package com.smarthome;
+
+import com.smarthome.scheduler.Recurrence;
+import com.smarthome.scheduler.Scheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerTests {
+    /** Manually advanced clock so wheel behaviour is deterministic */
+    private static final class ManualClock extends Clock {
+        private long millis;
+        ManualClock(LocalDateTime start) { millis = start.toInstant(ZoneOffset.UTC).toEpochMilli(); }
+        void advance(Duration d) { millis += d.toMillis(); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return Instant.ofEpochMilli(millis); }
+    }
+
+    @Test
+    void dailyIntervalAndCronTasksRecurAcrossMidnight() {
+        ManualClock clock = new ManualClock(LocalDateTime.of(2024, 1, 1, 23, 58));
+        Scheduler scheduler = new Scheduler(clock, 1000);
+        List<String> runs = new ArrayList<>();
+        Function<String, Runnable> log =
+            name -> () -> runs.add(name + "@" + LocalTime.ofInstant(clock.instant(), ZoneOffset.UTC));
+        scheduler.add(LocalTime.of(0, 0), "midnight", log.apply("midnight"));
+        scheduler.add(LocalTime.of(23, 59), "late", log.apply("late"));
+        Scheduler.ScheduledTask every = scheduler.schedule(Recurrence.every(Duration.ofMinutes(1)), "minute", log.apply("minute"));
+        scheduler.schedule(Recurrence.cron("*/30 * * * *"), "half-hour", log.apply("half-hour"));
+
+        for (int i = 0; i < 4 * 60; i++) { clock.advance(Duration.ofSeconds(1)); scheduler.tick(); }
+        // 23:58 -> 00:02: each task fires once at its due time, including across midnight
+        assertEquals(Set.of("late@23:59", "minute@23:59", "minute@00:00", "midnight@00:00",
+            "half-hour@00:00", "minute@00:01", "minute@00:02"), new HashSet<>(runs));
+        assertEquals(7, runs.size());
+
+        scheduler.cancel(every);
+        runs.clear();
+        clock.advance(Duration.ofDays(1));
+        scheduler.tick();
+        // After a stall each recurring task runs once and resumes its schedule
+        assertEquals(3, runs.size());
+        assertTrue(runs.stream().noneMatch(r -> r.startsWith("minute")));
+        assertEquals(3, scheduler.getTasks().size());
+    }
+
+    @Test
+    void holdsManyTasksWithCheapTicksAndCancels() {
+        ManualClock clock = new ManualClock(LocalDateTime.of(2024, 1, 1, 0, 0));
+        Scheduler scheduler = new Scheduler(clock, 100);
+        AtomicInteger fired = new AtomicInteger();
+        List<Scheduler.ScheduledTask> handles = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            Instant at = clock.instant().plusSeconds(1 + (i % 86_400));
+            handles.add(scheduler.schedule(Recurrence.once(at), "task" + i, fired::incrementAndGet));
+        }
+        for (int i = 0; i < handles.size(); i += 2) scheduler.cancel(handles.get(i));
+
+        clock.advance(Duration.ofMillis(500));
+        long start = System.nanoTime();
+        scheduler.tick(); // nothing due yet: touches only the current slots
+        assertTrue(System.nanoTime() - start < 50_000_000L);
+        assertEquals(0, fired.get());
+
+        clock.advance(Duration.ofHours(25));
+        scheduler.tick();
+        assertEquals(50_000, fired.get());
+        assertTrue(scheduler.getTasks().isEmpty());
+    }
+}
@@ -0,0 +1,344 @@
+package com.smarthome;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.smarthome.automation.Rule;
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.sensors.MotionSensor;
+import com.smarthome.util.Metrics;
+import com.smarthome.web.ChangeStream;
+import com.smarthome.web.HttpApiServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebTests {
+    @Test
+    void jdkServerServesApiRoutes() throws Exception {
+        Home home = new Home("WebHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        r.addDevice(new SmartLight("Desk Lamp", r.getName()));
+        r.addSensor(new MotionSensor("Hall Motion", r.getName()));
+        HttpApiServer server = new HttpApiServer(home, 2);
+        server.start(18180);
+        String base = "http://localhost:" + server.getPort();
+        try {
+            JsonObject status = JsonParser.parseString(request("GET", base + "/api/home/status", 200)).getAsJsonObject();
+            assertEquals("WebHome", status.get("name").getAsString());
+            assertEquals(1, status.get("devices").getAsInt());
+
+            JsonArray devices = JsonParser.parseString(request("GET", base + "/api/devices", 200)).getAsJsonArray();
+            assertEquals("Desk Lamp", devices.get(0).getAsJsonObject().get("name").getAsString());
+            assertFalse(devices.get(0).getAsJsonObject().has("room"), "back-references must not be serialized");
+            JsonArray rooms = JsonParser.parseString(request("GET", base + "/api/rooms", 200)).getAsJsonArray();
+            assertEquals(1, rooms.get(0).getAsJsonObject().get("sensors").getAsJsonArray().size());
+
+            request("POST", base + "/api/devices/Desk%20Lamp/on", 200);
+            assertTrue(home.getDeviceByName("Desk Lamp").isOn());
+            request("POST", base + "/api/devices/Desk%20Lamp/dance", 400);
+            request("GET", base + "/api/nothing", 404);
+
+            request("GET", base + "/api/automation/profile", 404); // no engine attached
+            AutomationEngine engine = new AutomationEngine(home);
+            engine.addRule(new Rule("Always", ctx -> true).addCondition(ctx -> false));
+            server.setAutomationEngine(engine);
+            request("POST", base + "/api/automation/profile/on", 200);
+            engine.tick(0);
+            JsonObject profile = JsonParser.parseString(request("GET", base + "/api/automation/profile", 200)).getAsJsonObject();
+            assertTrue(profile.get("profiling").getAsBoolean());
+            JsonObject rule = profile.get("rules").getAsJsonArray().get(0).getAsJsonObject();
+            assertEquals("Always", rule.get("name").getAsString());
+            assertEquals(1, rule.get("evaluations").getAsLong());
+            assertEquals(1, rule.get("conditions").getAsJsonArray().get(0).getAsJsonObject().get("failures").getAsLong());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void batchCommandsResolveOnceAndReportPerItem() throws Exception {
+        Home home = new Home("BatchHome", "Addr");
+        Room living = new Room("Living", "Floor", 20);
+        Room hall = new Room("Hall", "Floor", 10);
+        home.addRoom(living);
+        home.addRoom(hall);
+        SmartLight a = new SmartLight("Lamp A", living.getName());
+        SmartLight b = new SmartLight("Lamp B", hall.getName());
+        SmartLight c = new SmartLight("Lamp C", living.getName());
+        living.addDevice(a);
+        hall.addDevice(b);
+        living.addDevice(c);
+        HttpApiServer server = new HttpApiServer(home, 2);
+        server.start(18195);
+        String url = "http://localhost:" + server.getPort() + "/api/devices/batch";
+        try {
+            String body = "[{\"id\":\"" + a.getId() + "\",\"action\":\"on\"},"
+                + "{\"name\":\"lamp b\",\"action\":\"toggle\"},"
+                + "{\"name\":\"Nowhere\",\"action\":\"on\"},"
+                + "{\"name\":\"Lamp C\",\"action\":\"dance\"}]";
+            JsonObject response = JsonParser.parseString(post(url, body, 200)).getAsJsonObject();
+            assertEquals(2, response.get("applied").getAsInt());
+            assertEquals(2, response.get("failed").getAsInt());
+            JsonArray results = response.get("results").getAsJsonArray();
+            assertEquals(4, results.size());
+            assertTrue(results.get(0).getAsJsonObject().get("ok").getAsBoolean());
+            assertEquals("Hall", results.get(1).getAsJsonObject().get("room").getAsString());
+            assertFalse(results.get(2).getAsJsonObject().get("ok").getAsBoolean());
+            assertTrue(results.get(3).getAsJsonObject().get("error").getAsString().contains("dance"));
+            assertTrue(a.isOn());
+            assertTrue(b.isOn());
+            assertFalse(c.isOn());
+
+            post(url, "{\"id\":1}", 400);
+            post(url, "[not json", 400);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String post(String url, String body, int expectedStatus) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(expectedStatus, conn.getResponseCode(), "POST " + url);
+        try (InputStream in = expectedStatus < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String request(String method, String url, int expectedStatus) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        assertEquals(expectedStatus, conn.getResponseCode(), method + " " + url);
+        try (InputStream in = expectedStatus < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void readRoutesRevalidateWithETags() throws Exception {
+        Home home = new Home("CacheHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight lamp = new SmartLight("Desk Lamp", r.getName());
+        r.addDevice(lamp);
+        HttpApiServer server = new HttpApiServer(home, 2);
+        server.start(18185);
+        String url = "http://localhost:" + server.getPort() + "/api/devices";
+        try {
+            HttpURLConnection first = (HttpURLConnection) new URL(url).openConnection();
+            assertEquals(200, first.getResponseCode());
+            String etag = first.getHeaderField("ETag");
+            assertNotNull(etag);
+            first.getInputStream().readAllBytes();
+
+            HttpURLConnection again = (HttpURLConnection) new URL(url).openConnection();
+            again.setRequestProperty("If-None-Match", etag);
+            assertEquals(304, again.getResponseCode());
+
+            lamp.turnOn();
+            HttpURLConnection changed = (HttpURLConnection) new URL(url).openConnection();
+            changed.setRequestProperty("If-None-Match", etag);
+            assertEquals(200, changed.getResponseCode());
+            assertNotEquals(etag, changed.getHeaderField("ETag"));
+            assertTrue(new String(changed.getInputStream().readAllBytes(), StandardCharsets.UTF_8).contains("\"isOn\":true"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void eventStreamPushesDeviceChanges() throws Exception {
+        Home home = new Home("PushHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight lamp = new SmartLight("Desk Lamp", r.getName());
+        r.addDevice(lamp);
+        HttpApiServer server = new HttpApiServer(home, 2);
+        server.start(18190);
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/api/events").openConnection();
+            conn.setReadTimeout(5000);
+            assertEquals("text/event-stream", conn.getContentType());
+            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("retry: 3000", in.readLine());
+            lamp.setBrightness(30);
+            lamp.setBrightness(55); // coalesced with the first change unless a publish falls between
+            String line;
+            String data = null;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("data: ")) data = line.substring(6);
+                if (data != null && data.contains("\"brightness\":\"55\"")) break;
+            }
+            JsonObject event = JsonParser.parseString(data).getAsJsonObject();
+            assertEquals("Desk Lamp", event.get("name").getAsString());
+            assertEquals("Living", event.get("room").getAsString());
+            conn.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void slowSubscriberKeepsOnlyLatestStatePerDevice() throws Exception {
+        Home home = new Home("SlowHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight[] lights = new SmartLight[3];
+        for (int i = 0; i < lights.length; i++) r.addDevice(lights[i] = new SmartLight("Light " + i, r.getName()));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        OutputStream stalled = new OutputStream() { // a client whose socket is not being read
+            @Override public void write(int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            @Override public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (received) {
+                    received.write(b, off, len);
+                }
+            }
+        };
+        try (ChangeStream stream = new ChangeStream(home, 2, 5)) {
+            ChangeStream.Client client = stream.subscribe(stalled, null);
+            // Once the retry frame is being written the queue is empty, so two devices fit
+            assertTrue(writing.await(2, TimeUnit.SECONDS));
+            for (int n = 1; n <= 200; n++) {
+                lights[0].setBrightness(n % 100 + 1);
+                lights[1].setBrightness(n % 100 + 1);
+                if (n % 20 == 0) TimeUnit.MILLISECONDS.sleep(10); // let publishes interleave
+            }
+            assertTrue(eventually(() -> client.getCoalescedCount() > 0), "repeated changes should merge into queued frames");
+            assertEquals(0, client.getResyncCount());
+            lights[2].turnOn(); // a third distinct device overflows the two-frame queue
+            assertTrue(eventually(() -> client.getResyncCount() > 0));
+            release.countDown();
+            assertTrue(eventually(() -> {
+                synchronized (received) {
+                    return received.toString(StandardCharsets.UTF_8).contains("Light 2");
+                }
+            }));
+        }
+        String text;
+        synchronized (received) {
+            text = received.toString(StandardCharsets.UTF_8);
+        }
+        assertTrue(text.contains("event: resync"), text);
+        assertTrue(text.indexOf("event: resync") < text.indexOf("Light 2"), text);
+    }
+
+    /** Poll {@code condition} until it holds or two seconds pass */
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) return false;
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    void stalledSubscribersAreDroppedWithoutStarvingOthers() throws Exception {
+        Home home = new Home("StallHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        SmartLight light = new SmartLight("Lamp", r.getName());
+        r.addDevice(light);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() { // never drained by its reader
+            @Override public void write(int b) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (ChangeStream stream = new ChangeStream(home, 16, 5, 100)) {
+            List<ChangeStream.Client> stuck = new ArrayList<>();
+            for (int i = 0; i < 5; i++) stuck.add(stream.subscribe(stalled, null)); // more than the writer pool
+            ChangeStream.Client healthy = stream.subscribe(new OutputStream() {
+                @Override public void write(int b) {
+                    synchronized (received) {
+                        received.write(b);
+                    }
+                }
+            }, null);
+            assertTrue(eventually(() -> stuck.stream().allMatch(ChangeStream.Client::wasDropped)));
+            assertTrue(eventually(() -> stream.getClientCount() == 1));
+            light.turnOn();
+            assertTrue(eventually(() -> {
+                synchronized (received) {
+                    return received.toString(StandardCharsets.UTF_8).contains("Lamp");
+                }
+            }));
+            assertFalse(healthy.wasDropped());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void metricsAreServedInPrometheusFormat() throws Exception {
+        Metrics.Histogram h = new Metrics.Histogram();
+        for (int i = 1; i <= 100; i++) h.record(i * 1000L);
+        assertEquals(100, h.getCount());
+        assertTrue(Math.abs(h.quantile(0.5) - 50_000) <= 50_000 / 4, "p50 " + h.quantile(0.5));
+        assertTrue(h.quantile(1.0) >= 100_000, "max " + h.quantile(1.0));
+
+        Home home = new Home("MetricsHome", "Addr");
+        Room r = new Room("Living", "Floor", 20);
+        home.addRoom(r);
+        r.addDevice(new SmartLight("Desk Lamp", r.getName()));
+        long before = Metrics.DEVICE_COMMANDS.labels("Smart Light", "on").sum();
+        HttpApiServer server = new HttpApiServer(home, 2);
+        server.start(18200);
+        String base = "http://localhost:" + server.getPort();
+        try {
+            request("GET", base + "/api/rooms", 200);
+            request("POST", base + "/api/devices/Desk%20Lamp/on", 200);
+            assertEquals(before + 1, Metrics.DEVICE_COMMANDS.labels("Smart Light", "on").sum());
+
+            HttpURLConnection conn = (HttpURLConnection) new URL(base + "/api/metrics").openConnection();
+            assertEquals(200, conn.getResponseCode());
+            assertTrue(conn.getContentType().startsWith("text/plain; version=0.0.4"), conn.getContentType());
+            String text = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(text.contains("# TYPE smarthome_http_request_seconds histogram"), text);
+            assertTrue(text.contains("smarthome_http_request_seconds_bucket{method=\"GET\",route=\"/api/rooms\",le=\"+Inf\"}"), text);
+            assertTrue(text.contains("smarthome_device_commands_total{type=\"Smart Light\",command=\"on\"} " + (before + 1)), text);
+            assertTrue(text.contains("smarthome_automation_tick_seconds_count "), text);
+        } finally {
+            server.stop();
+        }
+    }
+}
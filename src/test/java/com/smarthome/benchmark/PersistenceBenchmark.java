@@ -0,0 +1,178 @@
+package com.smarthome.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.model.devices.DoorLock;
+import com.smarthome.model.devices.SmartBlinds;
+import com.smarthome.model.devices.SmartLight;
+import com.smarthome.model.devices.SmartPlug;
+import com.smarthome.model.devices.Thermostat;
+import com.smarthome.util.BinarySnapshot;
+import com.smarthome.util.DataPersistence;
+import com.smarthome.util.DeviceFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Compares the original tree-based, pretty-printed save/load (reproduced here) with the
+ * streaming {@link DataPersistence} and {@link BinarySnapshot} (eager, and lazy where only the
+ * room index is read) on homes of 1,000 to 100,000 devices. Reports wall time, bytes
+ * allocated by the benchmark thread and the peak heap across the operation.
+ * Run after {@code mvn test-compile} with target/classes, target/test-classes and the
+ * dependency classpath ({@code mvn dependency:build-classpath}) on the java classpath.
+ */
+public class PersistenceBenchmark {
+    private static final int DEVICES_PER_ROOM = 50;
+
+    @FunctionalInterface
+    interface IoTask {
+        void run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("home-bench", ".json");
+        file.deleteOnExit();
+        String path = file.getPath();
+        System.out.printf("%8s %-10s %10s %10s %12s %12s %10s%n",
+            "devices", "mode", "save ms", "load ms", "alloc MB", "peak MB", "file KB");
+        for (int devices : new int[] {1_000, 10_000, 100_000}) {
+            Home home = buildHome(devices);
+            for (int round = 0; round < 2; round++) { // first round warms up
+                boolean print = round == 1;
+                measure(print, devices, "tree", path,
+                    () -> treeSave(home, path), () -> treeLoad(path));
+                measure(print, devices, "streaming", path,
+                    () -> DataPersistence.saveHome(home, path), () -> DataPersistence.loadHome(path));
+                measure(print, devices, "binary", path,
+                    () -> BinarySnapshot.save(home, path), () -> BinarySnapshot.load(path));
+                measure(print, devices, "lazy", path,
+                    () -> BinarySnapshot.save(home, path), () -> BinarySnapshot.load(path, true));
+            }
+        }
+    }
+
+    private static void measure(boolean print, int devices, String mode, String path, IoTask save, IoTask load) throws IOException {
+        System.gc();
+        resetPeaks();
+        long alloc = allocatedBytes();
+        long t0 = System.nanoTime();
+        save.run();
+        long t1 = System.nanoTime();
+        load.run();
+        long t2 = System.nanoTime();
+        alloc = allocatedBytes() - alloc;
+        if (!print) return;
+        System.out.printf("%8d %-10s %10.1f %10.1f %12.1f %12.1f %10d%n", devices, mode,
+            (t1 - t0) / 1e6, (t2 - t1) / 1e6, alloc / 1048576.0, peakHeap() / 1048576.0,
+            new File(path).length() / 1024);
+    }
+
+    /**
+     * A home of exactly {@code devices} devices, in rooms of up to 50, cycling through five types
+     */
+    static Home buildHome(int devices) {
+        Home home = new Home("Bench", "Addr");
+        int rooms = Math.max(1, (devices + DEVICES_PER_ROOM - 1) / DEVICES_PER_ROOM);
+        for (int r = 0; r < rooms; r++) {
+            Room room = new Room("Room " + r, "Floor " + (r % 3), 20);
+            home.addRoom(room);
+            for (int d = 0; d < Math.min(DEVICES_PER_ROOM, devices - r * DEVICES_PER_ROOM); d++) {
+                String name = "Device " + r + "-" + d;
+                SmartDevice device;
+                switch (d % 5) {
+                    case 0: device = new SmartLight(name, room.getName()); break;
+                    case 1: device = new Thermostat(name, room.getName(), 20.0); break;
+                    case 2: device = new DoorLock(name, room.getName()); break;
+                    case 3: device = new SmartBlinds(name, room.getName()); break;
+                    default: device = new SmartPlug(name, room.getName()); break;
+                }
+                room.addDevice(device);
+            }
+        }
+        return home;
+    }
+
+    // The original implementation: a full JsonObject tree, pretty printed
+    private static void treeSave(Home home, String path) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        JsonObject root = new JsonObject();
+        root.addProperty("name", home.getName());
+        root.addProperty("address", home.getAddress());
+        JsonArray roomsArr = new JsonArray();
+        for (Room r : home.getRooms()) {
+            JsonObject rObj = new JsonObject();
+            rObj.addProperty("name", r.getName());
+            rObj.addProperty("floor", r.getFloor());
+            rObj.addProperty("area", r.getArea());
+            JsonArray devicesArr = new JsonArray();
+            for (SmartDevice d : r.getDevices()) {
+                JsonObject dObj = new JsonObject();
+                dObj.addProperty("type", d.getType());
+                dObj.addProperty("name", d.getName());
+                dObj.addProperty("room", r.getName());
+                dObj.addProperty("on", d.isOn());
+                if (d instanceof SmartLight) dObj.addProperty("brightness", ((SmartLight) d).getBrightness());
+                else if (d instanceof Thermostat) {
+                    dObj.addProperty("currentTemp", ((Thermostat) d).getCurrentTemperature());
+                    dObj.addProperty("targetTemp", ((Thermostat) d).getTargetTemperature());
+                } else if (d instanceof DoorLock) dObj.addProperty("locked", ((DoorLock) d).isLocked());
+                else if (d instanceof SmartBlinds) dObj.addProperty("position", ((SmartBlinds) d).getPosition());
+                devicesArr.add(dObj);
+            }
+            rObj.add("devices", devicesArr);
+            rObj.add("sensors", new JsonArray());
+            roomsArr.add(rObj);
+        }
+        root.add("rooms", roomsArr);
+        try (FileWriter fw = new FileWriter(path)) {
+            gson.toJson(root, fw);
+        }
+    }
+
+    private static void treeLoad(String path) throws IOException {
+        try (FileReader fr = new FileReader(path)) {
+            JsonObject root = JsonParser.parseReader(fr).getAsJsonObject();
+            Home home = new Home(root.get("name").getAsString(), root.get("address").getAsString());
+            for (JsonElement re : root.get("rooms").getAsJsonArray()) {
+                JsonObject rObj = re.getAsJsonObject();
+                Room room = new Room(rObj.get("name").getAsString(), rObj.get("floor").getAsString(), rObj.get("area").getAsDouble());
+                home.addRoom(room);
+                for (JsonElement de : rObj.get("devices").getAsJsonArray()) {
+                    room.addDevice(DeviceFactory.fromJson(de.getAsJsonObject()));
+                }
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
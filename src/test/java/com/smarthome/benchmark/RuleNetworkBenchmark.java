@@ -0,0 +1,67 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.automation.Context;
+import com.smarthome.automation.Rule;
+import com.smarthome.automation.RuleNetwork;
+import com.smarthome.automation.builtins.DarkCondition;
+import com.smarthome.automation.builtins.TimeAfterTrigger;
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.model.sensors.LightSensor;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the linear {@link AutomationEngine#tick} loop with a compiled {@link RuleNetwork}
+ * for 10 to 10,000 rules built from a small pool of shared triggers and conditions.
+ * Run after {@code mvn test-compile} with target/classes, target/test-classes and the
+ * dependency classpath ({@code mvn dependency:build-classpath}) on the java classpath.
+ */
+public class RuleNetworkBenchmark {
+    static final int ROOMS = 20;
+
+    public static void main(String[] args) {
+        Home home = new Home("Bench", "Addr");
+        for (int r = 0; r < ROOMS; r++) {
+            Room room = new Room("Room " + r, "Floor", 10);
+            home.addRoom(room);
+            room.addSensor(new LightSensor("Sensor " + r, room.getName()));
+        }
+        System.out.printf("%8s %8s %16s %16s %8s%n", "rules", "nodes", "linear ns/tick", "compiled ns/tick", "speedup");
+        for (int count : new int[] {10, 100, 1_000, 10_000}) {
+            List<Rule> rules = buildRules(count);
+            AutomationEngine engine = new AutomationEngine(home);
+            rules.forEach(engine::addRule);
+            RuleNetwork network = RuleNetwork.compile(rules);
+            Context ctx = new Context(home, 0);
+
+            int iterations = Math.max(50, 200_000 / count);
+            long linear = measure(iterations, () -> engine.tick(0));
+            long compiled = measure(iterations, () -> network.tick(ctx));
+            System.out.printf("%8d %8d %16d %16d %7.1fx%n",
+                count, network.getNodeCount(), linear, compiled, (double) linear / compiled);
+        }
+    }
+
+    static List<Rule> buildRules(int count) {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Triggers always pass and sensors read ~300 lux, so every rule checks its
+            // DarkCondition but no actions fire and the measurement is pure evaluation
+            rules.add(new Rule("Rule " + i, new TimeAfterTrigger(LocalTime.of(0, 0, 1)))
+                .addCondition(new DarkCondition("Room " + (i % ROOMS)))
+                .addAction(ctx -> { }));
+        }
+        return rules;
+    }
+
+    private static long measure(int iterations, Runnable body) {
+        for (int i = 0; i < iterations; i++) body.run(); // warm-up
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) body.run();
+        return (System.nanoTime() - start) / iterations;
+    }
+}
@@ -0,0 +1,39 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.model.Home;
+import com.smarthome.model.SmartDevice;
+import com.smarthome.service.SceneManager;
+import com.smarthome.util.EventLog;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Times {@code SceneManager.apply("away")} on a home of 10,000 devices that are all on, so
+ * every device reports its change through {@link EventLog}. Timings go to stderr; stdout
+ * carries the device messages and should be sent to a terminal, file or /dev/null to compare
+ * sinks. The count of messages dropped by a full log buffer is printed at the end. Set
+ * {@code -Dsmarthome.log.level=WARN} to measure with per-device messages gated off. Run with
+ * the same classpath as {@link PersistenceBenchmark}.
+ */
+public class SceneBenchmark {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        PrintStream report = System.err;
+        Home home = PersistenceBenchmark.buildHome(devices);
+        List<SmartDevice> all = home.getAllDevices();
+        SceneManager scenes = new SceneManager(home);
+        for (int round = 0; round < ROUNDS; round++) {
+            home.disarmSecuritySystem();
+            for (SmartDevice d : all) d.turnOn();
+            long t0 = System.nanoTime();
+            scenes.apply("away");
+            long elapsed = System.nanoTime() - t0;
+            if (round >= ROUNDS / 2) report.printf("%8d devices  away %8.1f ms%n", devices, elapsed / 1e6); // first half warms up
+        }
+        EventLog.flush();
+        report.printf("%d log messages dropped%n", EventLog.getDroppedCount());
+    }
+}
@@ -0,0 +1,112 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.automation.builtins.MotionLightRule;
+import com.smarthome.controller.AutomationEngine;
+import com.smarthome.model.Home;
+import com.smarthome.model.Room;
+import com.smarthome.service.HomeGenerator;
+import com.smarthome.service.LoadSimulator;
+import com.smarthome.util.DataPersistence;
+import com.smarthome.util.EventLog;
+import com.smarthome.util.Metrics;
+import com.smarthome.web.HttpApiServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Soak test of the whole stack on a {@link HomeGenerator} home: an event-mode automation
+ * engine with a motion rule per room plus ticked rules, a {@link LoadSimulator} toggling
+ * devices, firing motion and sampling sensors, periodic JSON saves and a client polling the
+ * JDK server's read routes. Prints the load achieved and latency percentiles from
+ * {@link Metrics}. Arguments: rooms, devices per room, seconds, toggles/s, motion/s,
+ * samples/s (defaults 500 20 30 2000 200 500). Run with the same classpath as
+ * {@link PersistenceBenchmark}.
+ */
+public class SoakBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rooms = arg(args, 0, 500);
+        int perRoom = arg(args, 1, 20);
+        int seconds = arg(args, 2, 30);
+        EventLog.setLevel(EventLog.Level.ERROR);
+
+        long t0 = System.nanoTime();
+        Home home = new HomeGenerator(42).rooms(rooms).devicesPerRoom(perRoom).sensorsPerRoom(2).generate();
+        System.out.printf("generated %d rooms, %d devices in %.0f ms%n",
+            rooms, home.getDeviceCount(), (System.nanoTime() - t0) / 1e6);
+
+        AutomationEngine engine = new AutomationEngine(home);
+        for (Room r : home.getRooms()) engine.addRule(new MotionLightRule(r.getName()));
+        RuleNetworkBenchmark.buildRules(1000).forEach(engine::addRule);
+        engine.setCompiled(true);
+        engine.setProfiling(true);
+        engine.startEventMode();
+
+        HttpApiServer server = new HttpApiServer(home);
+        server.setAutomationEngine(engine);
+        server.start(18300);
+        String base = "http://localhost:" + server.getPort();
+        File saved = File.createTempFile("soak", ".json");
+        saved.deleteOnExit();
+
+        ScheduledExecutorService background = Executors.newScheduledThreadPool(3);
+        background.scheduleAtFixedRate(() -> engine.tick(System.currentTimeMillis() / 1000L), 0, 1, TimeUnit.SECONDS);
+        background.scheduleWithFixedDelay(() -> {
+            try {
+                DataPersistence.saveHome(home, saved.getPath());
+            } catch (IOException e) {
+                System.err.println("save failed: " + e.getMessage());
+            }
+        }, 1, 5, TimeUnit.SECONDS);
+        background.scheduleWithFixedDelay(() -> {
+            get(base + "/api/home/status");
+            get(base + "/api/devices");
+        }, 0, 200, TimeUnit.MILLISECONDS);
+
+        LoadSimulator load = new LoadSimulator(home, 42)
+            .toggles(arg(args, 3, 2000)).motion(arg(args, 4, 200)).samples(arg(args, 5, 500));
+        load.start();
+        Thread.sleep(seconds * 1000L);
+        load.stop();
+        background.shutdownNow();
+        background.awaitTermination(10, TimeUnit.SECONDS);
+        engine.stopEventMode();
+        server.stop();
+
+        System.out.println(load.report());
+        print("automation tick", Metrics.AUTOMATION_TICK);
+        print("sensor sample", Metrics.SENSOR_SAMPLE);
+        print("json save", Metrics.PERSISTENCE_SAVE.labels("json"));
+        print("GET /api/devices", Metrics.HTTP_REQUESTS.labels("GET", "/api/devices"));
+        print("GET /api/home/status", Metrics.HTTP_REQUESTS.labels("GET", "/api/home/status"));
+        engine.getRulesByCost().stream().limit(3).forEach(r -> System.out.printf("%-24s %8d evaluations %10.2f ms%n",
+            r.getName(), r.getProfile().getEvaluations(), r.getProfile().getTotalNanos() / 1e6));
+        System.out.printf("%d log messages dropped%n", EventLog.getDroppedCount());
+    }
+
+    private static void get(String url) {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            try (InputStream in = conn.getInputStream()) {
+                in.readAllBytes();
+            }
+        } catch (IOException e) {
+            System.err.println("GET " + url + " failed: " + e.getMessage());
+        }
+    }
+
+    private static void print(String what, Metrics.Histogram h) {
+        System.out.printf("%-22s n=%-7d p50 %9.3f ms  p99 %9.3f ms  max %9.3f ms%n", what, h.getCount(),
+            h.quantile(0.5) / 1e6, h.quantile(0.99) / 1e6, h.quantile(1.0) / 1e6);
+    }
+
+    private static int arg(String[] args, int i, int fallback) {
+        return args.length > i ? Integer.parseInt(args[i]) : fallback;
+    }
+}
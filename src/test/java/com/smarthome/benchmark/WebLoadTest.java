@@ -0,0 +1,122 @@
+package com.smarthome.benchmark;
+
+import com.smarthome.model.Home;
+import com.smarthome.web.HttpApiServer;
+import com.smarthome.web.WebServer;
+import spark.Spark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of the REST API: at each concurrency level, that many clients
+ * poll {@code /api/home/status} and, one request in ten, {@code /api/devices}, each sending
+ * its next request as soon as the last one completes. Reports throughput and p50/p99/max
+ * latency for the Spark server and the JDK {@link HttpApiServer}. With {@code etag}, clients
+ * revalidate with {@code If-None-Match} as browsers do, so unchanged views cost a 304.
+ * Usage: {@code WebLoadTest [spark|jdk|both] [devices] [seconds per level] [etag]}; run with
+ * the same classpath as {@link PersistenceBenchmark}.
+ */
+public class WebLoadTest {
+    private static final int[] CONCURRENCY = {1, 4, 16, 64, 256};
+    private static final int PORT = 18080;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "both";
+        int devices = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        boolean conditional = args.length > 3 && args[3].equals("etag");
+        System.setProperty("http.maxConnections", String.valueOf(CONCURRENCY[CONCURRENCY.length - 1]));
+        Home home = PersistenceBenchmark.buildHome(devices);
+        System.out.printf("%-6s %6s %10s %10s %10s %10s %8s%n", "server", "conc", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+
+        if (mode.equals("spark") || mode.equals("both")) {
+            WebServer web = new WebServer(home);
+            web.start(PORT);
+            Spark.awaitInitialization();
+            run("spark", web.getPort(), seconds, conditional);
+            web.stop();
+        }
+        if (mode.equals("jdk") || mode.equals("both")) {
+            HttpApiServer jdk = new HttpApiServer(home);
+            jdk.start(PORT);
+            run("jdk", jdk.getPort(), seconds, conditional);
+            jdk.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void run(String server, int port, int seconds, boolean conditional) throws Exception {
+        URL status = new URL("http://localhost:" + port + "/api/home/status");
+        URL devices = new URL("http://localhost:" + port + "/api/devices");
+        get(status, null); // connect and warm up the route
+        for (int clients : CONCURRENCY) {
+            long warmupEnd = System.nanoTime() + 1_000_000_000L;
+            long end = warmupEnd + seconds * 1_000_000_000L;
+            long[][] samples = new long[clients][];
+            AtomicLong errors = new AtomicLong();
+            CountDownLatch done = new CountDownLatch(clients);
+            for (int c = 0; c < clients; c++) {
+                int id = c;
+                Thread t = new Thread(() -> {
+                    long[] lat = new long[1024];
+                    int n = 0;
+                    String[] etags = conditional ? new String[2] : null; // per URL, as a browser cache keeps them
+                    for (long i = id; ; i++) {
+                        long t0 = System.nanoTime();
+                        if (t0 >= end) break;
+                        try {
+                            boolean all = i % 10 == 0;
+                            String etag = get(all ? devices : status, etags == null ? null : etags[all ? 1 : 0]);
+                            if (etags != null) etags[all ? 1 : 0] = etag;
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (t0 < warmupEnd) continue;
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = System.nanoTime() - t0;
+                    }
+                    samples[id] = Arrays.copyOf(lat, n);
+                    done.countDown();
+                }, "load-client-" + c);
+                t.setDaemon(true);
+                t.start();
+            }
+            done.await();
+            report(server, clients, seconds, samples, errors.get());
+        }
+    }
+
+    /** @return the response's ETag */
+    private static String get(URL url, String etag) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        if (etag != null) conn.setRequestProperty("If-None-Match", etag);
+        int code = conn.getResponseCode();
+        try (InputStream in = code < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) in.readAllBytes(); // drain so the connection is reused
+        }
+        if (code == 304) return etag;
+        if (code != 200) throw new IOException("HTTP " + code);
+        return conn.getHeaderField("ETag");
+    }
+
+    private static void report(String server, int clients, int seconds, long[][] samples, long errors) {
+        long[] all = Arrays.stream(samples).flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            System.out.printf("%-6s %6d %10s %10s %10s %10s %8d%n", server, clients, "-", "-", "-", "-", errors);
+            return;
+        }
+        System.out.printf("%-6s %6d %10.0f %10.2f %10.2f %10.2f %8d%n", server, clients,
+            all.length / (double) seconds,
+            all[(int) (all.length * 0.50)] / 1e6,
+            all[Math.min(all.length - 1, (int) (all.length * 0.99))] / 1e6,
+            all[all.length - 1] / 1e6,
+            errors);
+    }
+}